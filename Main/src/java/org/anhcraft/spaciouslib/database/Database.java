@@ -1,5 +1,7 @@
 package org.anhcraft.spaciouslib.database;
 
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
+import org.anhcraft.spaciouslib.utils.Histogram;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
@@ -7,6 +9,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents a database implementation.
@@ -14,6 +17,9 @@ import java.sql.Statement;
 public abstract class Database {
     protected Connection conn;
     protected Statement state;
+    protected Histogram updateLatency = new Histogram();
+    protected Histogram queryLatency = new Histogram();
+    protected LongAdder errors = new LongAdder();
 
     /**
      * Disconnects from this database
@@ -38,7 +44,15 @@ public abstract class Database {
         if(state == null){
             return 0;
         }
-        return state.executeUpdate(sql);
+        long start = System.nanoTime();
+        try {
+            return state.executeUpdate(sql);
+        } catch(SQLException e){
+            errors.increment();
+            throw e;
+        } finally {
+            updateLatency.record(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -51,7 +65,15 @@ public abstract class Database {
         if(state == null){
             return null;
         }
-        return state.executeQuery(sql);
+        long start = System.nanoTime();
+        try {
+            return state.executeQuery(sql);
+        } catch(SQLException e){
+            errors.increment();
+            throw e;
+        } finally {
+            queryLatency.record(System.nanoTime() - start);
+        }
     }
 
     /**
@@ -70,6 +92,21 @@ public abstract class Database {
         return state;
     }
 
+    /**
+     * Registers the statistics of this database to the given registry.<br>
+     * All metrics have the label "database" which is the given name.
+     * @param registry the registry
+     * @param name the name of this database
+     */
+    public void registerMetrics(MetricsRegistry registry, String name){
+        registry.histogram("spaciouslib_database_statement_duration_seconds", "The time which SQL statements took to be executed",
+                new String[]{"database", name, "type", "update"}, updateLatency)
+                .histogram("spaciouslib_database_statement_duration_seconds", "The time which SQL statements took to be executed",
+                        new String[]{"database", name, "type", "query"}, queryLatency)
+                .counter("spaciouslib_database_errors_total", "The amount of SQL statements which failed",
+                        new String[]{"database", name}, errors::sum);
+    }
+
     @Override
     public boolean equals(Object o){
         if(o != null && o.getClass() == this.getClass()){
@@ -0,0 +1,322 @@
+package org.anhcraft.spaciouslib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A class helps you to read and write files without blocking the current thread (e.g: the main thread of the server).<br>
+ * The operations are run by an executor and return a CompletableFuture. At most a given amount of operations
+ * run at the same time, the others wait in a queue, so the caller is never blocked.<br>
+ * The operations on the same file are run one after another in the order they were called,
+ * so a write is never overtaken by an earlier write or read of the same file.<br>
+ * Unlike FileManager, a failure isn't ignored: the returned future is completed exceptionally.<br>
+ * The manager should be closed when it isn't needed anymore, so its threads are stopped.
+ */
+public class AsyncFileManager implements Closeable {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private Executor executor;
+    // the executor which was created by this manager, it is shut down when this manager is closed
+    private ThreadPoolExecutor ownExecutor;
+    private Semaphore permits;
+    private ConcurrentLinkedQueue<Operation<?>> pending = new ConcurrentLinkedQueue<>();
+    // the last operation of each file, the next operation of that file starts after it
+    private HashMap<Path, CompletableFuture<?>> tails = new HashMap<>();
+    // the operations which don't belong to any file
+    private Set<CompletableFuture<?>> others = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    /**
+     * Creates a new AsyncFileManager instance which runs at most 4 operations at the same time
+     */
+    public AsyncFileManager(){
+        this(4);
+    }
+
+    /**
+     * Creates a new AsyncFileManager instance which has its own threads
+     * @param maxInFlight the maximum amount of operations which run at the same time
+     */
+    public AsyncFileManager(int maxInFlight){
+        this(createExecutor(maxInFlight), maxInFlight);
+        this.ownExecutor = (ThreadPoolExecutor) this.executor;
+    }
+
+    /**
+     * Creates a new AsyncFileManager instance
+     * @param executor the executor which runs the operations
+     * @param maxInFlight the maximum amount of operations which are passed to the executor at the same time
+     */
+    public AsyncFileManager(Executor executor, int maxInFlight){
+        this.executor = executor;
+        this.permits = new Semaphore(Math.max(1, maxInFlight));
+    }
+
+    private static ThreadPoolExecutor createExecutor(int threads){
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "SpaciousLib file I/O #" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the threads stop if there is nothing to do
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Reads the given file
+     * @param file a file
+     * @return the future of the content
+     */
+    public CompletableFuture<byte[]> read(File file){
+        return submit(() -> new FileManager(file).read(), file);
+    }
+
+    /**
+     * Reads the given file as an UTF-8 string
+     * @param file a file
+     * @return the future of the content
+     */
+    public CompletableFuture<String> readAsString(File file){
+        return submit(() -> new String(new FileManager(file).read(), StandardCharsets.UTF_8), file);
+    }
+
+    /**
+     * Overwrites the given file with the given content, the file is created if it doesn't exist
+     * @param file a file
+     * @param content an array of bytes (binary content)
+     * @return the future which is completed after the content was written
+     */
+    public CompletableFuture<Void> write(File file, byte[] content){
+        return submit(() -> {
+            Files.write(file.toPath(), content);
+            return null;
+        }, file);
+    }
+
+    /**
+     * Overwrites the given file with the given content, the file is created if it doesn't exist
+     * @param file a file
+     * @param content a string
+     * @return the future which is completed after the content was written
+     */
+    public CompletableFuture<Void> write(File file, String content){
+        return write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replaces the given file with the given content atomically and durably (see {@link FileManager#writeAtomic(byte[])})
+     * @param file a file
+     * @param content an array of bytes (binary content)
+     * @return the future which is completed after the content is on the disk
+     */
+    public CompletableFuture<Void> writeAtomic(File file, byte[] content){
+        return submit(() -> {
+            new FileManager(file).writeAtomic(content);
+            return null;
+        }, file);
+    }
+
+    /**
+     * Replaces the given file with the given content atomically and durably
+     * @param file a file
+     * @param content a string
+     * @return the future which is completed after the content is on the disk
+     */
+    public CompletableFuture<Void> writeAtomic(File file, String content){
+        return writeAtomic(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends the given content at the end of the given file, the file is created if it doesn't exist
+     * @param file a file
+     * @param content an array of bytes (binary content)
+     * @return the future which is completed after the content was written
+     */
+    public CompletableFuture<Void> append(File file, byte[] content){
+        return submit(() -> {
+            Files.write(file.toPath(), content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return null;
+        }, file);
+    }
+
+    /**
+     * Appends the given content at the end of the given file, the file is created if it doesn't exist
+     * @param file a file
+     * @param content a string
+     * @return the future which is completed after the content was written
+     */
+    public CompletableFuture<Void> append(File file, String content){
+        return append(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies a file to another file (see {@link FileManager#copy(File)})
+     * @param source the source file
+     * @param target the target file, it is created or overwritten
+     * @return the future which is completed after the file was copied
+     */
+    public CompletableFuture<Void> copy(File source, File target){
+        return submit(() -> {
+            new FileManager(source).copy(target);
+            return null;
+        }, source, target);
+    }
+
+    /**
+     * Commits the given batch (see {@link FileWriteBatch#commit()}).<br>
+     * The batch shouldn't be changed until the future is completed.
+     * @param batch a batch
+     * @return the future which is completed after all files are on the disk
+     */
+    public CompletableFuture<Void> commit(FileWriteBatch batch){
+        // ordered with the other operations of the same files
+        return submit(() -> {
+            batch.commit();
+            return null;
+        }, batch.getFiles());
+    }
+
+    /**
+     * Gets a future which is completed after all operations which were called before have finished
+     * (e.g: to wait for the pending writes when the plugin is being disabled)
+     * @return the future
+     */
+    public CompletableFuture<Void> flush(){
+        List<CompletableFuture<?>> futures;
+        synchronized(this){
+            futures = new ArrayList<>(tails.values());
+        }
+        futures.addAll(others);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                // the failures belong to their own operations
+                .handle((r, e) -> null);
+    }
+
+    /**
+     * Closes this manager after all operations which were called before have finished.<br>
+     * The operations which are called afterwards fail. The threads are only stopped
+     * if this manager created them, a given executor is left running.
+     */
+    @Override
+    public void close(){
+        closed = true;
+        ThreadPoolExecutor executor = this.ownExecutor;
+        if(executor != null){
+            flush().whenComplete((r, e) -> executor.shutdown());
+        }
+    }
+
+    /**
+     * Gets the amount of operations which are waiting because too many operations are running
+     * @return the amount
+     */
+    public int getPendingOperations(){
+        return pending.size();
+    }
+
+    private <T> CompletableFuture<T> submit(Task<T> task, File... files){
+        Operation<T> operation = new Operation<>(task);
+        if(closed){
+            operation.future.completeExceptionally(new RejectedExecutionException("The manager was closed"));
+            return operation.future;
+        }
+        if(files.length == 0){
+            others.add(operation.future);
+            operation.future.whenComplete((r, e) -> others.remove(operation.future));
+            enqueue(operation);
+            return operation.future;
+        }
+        Path[] paths = new Path[files.length];
+        List<CompletableFuture<?>> previous = new ArrayList<>(files.length);
+        synchronized(this){
+            for(int i = 0; i < files.length; i++){
+                paths[i] = files[i].toPath().toAbsolutePath().normalize();
+                CompletableFuture<?> tail = tails.put(paths[i], operation.future);
+                if(tail != null){
+                    previous.add(tail);
+                }
+            }
+        }
+        operation.future.whenComplete((r, e) -> {
+            synchronized(this){
+                for(Path path : paths){
+                    tails.remove(path, operation.future);
+                }
+            }
+        });
+        if(previous.isEmpty()){
+            enqueue(operation);
+        } else {
+            CompletableFuture.allOf(previous.toArray(new CompletableFuture<?>[0])).whenComplete((r, e) -> enqueue(operation));
+        }
+        return operation.future;
+    }
+
+    private void enqueue(Operation<?> operation){
+        pending.add(operation);
+        drain();
+    }
+
+    // starts the waiting operations while there are free permits
+    private void drain(){
+        while(!pending.isEmpty() && permits.tryAcquire()){
+            Operation<?> operation = pending.poll();
+            if(operation == null){
+                permits.release();
+                continue;
+            }
+            try {
+                executor.execute(operation);
+            } catch(RejectedExecutionException e){
+                permits.release();
+                operation.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private interface Task<T> {
+        T call() throws IOException;
+    }
+
+    private class Operation<T> implements Runnable {
+        private Task<T> task;
+        private CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Operation(Task<T> task){
+            this.task = task;
+        }
+
+        @Override
+        public void run(){
+            try {
+                future.complete(task.call());
+            } catch(Throwable e){
+                future.completeExceptionally(e);
+            } finally {
+                permits.release();
+                drain();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.anhcraft.spaciouslib.io;
+
+public interface CopyProgressListener {
+    /**
+     * This method will be called after each file was copied.<br>
+     * Files are copied by many threads at the same time, so this method can be called concurrently
+     * and it should return quickly.
+     * @param copiedFiles the amount of files which have been copied
+     * @param totalFiles the amount of files which are copied
+     * @param copiedBytes the amount of bytes which have been copied
+     * @param totalBytes the amount of bytes which are copied
+     */
+    void progress(long copiedFiles, long totalFiles, long copiedBytes, long totalBytes);
+}
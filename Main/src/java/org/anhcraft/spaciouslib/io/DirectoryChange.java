@@ -0,0 +1,56 @@
+package org.anhcraft.spaciouslib.io;
+
+import java.nio.file.Path;
+
+/**
+ * Represents a change of a file or a directory which was noticed by a {@link DirectoryWatcher}
+ */
+public class DirectoryChange {
+    public enum Type {
+        /**
+         * The file was created
+         */
+        CREATED,
+        /**
+         * The content of the file was changed, or the file was deleted then created again
+         */
+        MODIFIED,
+        /**
+         * The file was deleted, if it was a directory then all of its files were deleted too
+         */
+        DELETED,
+        /**
+         * Some events were lost, all files under the path may have been changed
+         */
+        OVERFLOW
+    }
+
+    private Path path;
+    private Type type;
+
+    DirectoryChange(Path path, Type type){
+        this.path = path;
+        this.type = type;
+    }
+
+    /**
+     * Gets the absolute path of the changed file
+     * @return the path
+     */
+    public Path getPath(){
+        return this.path;
+    }
+
+    /**
+     * Gets the type of this change
+     * @return the type
+     */
+    public Type getType(){
+        return this.type;
+    }
+
+    @Override
+    public String toString(){
+        return this.type + " " + this.path;
+    }
+}
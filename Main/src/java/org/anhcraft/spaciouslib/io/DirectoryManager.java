@@ -3,6 +3,14 @@ package org.anhcraft.spaciouslib.io;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class helps you to manage directories
@@ -81,13 +89,7 @@ public class DirectoryManager {
      * @return this object
      */
     public DirectoryManager copy(File output) throws IOException {
-        handleCopy(this.directory, output, new FileFilter() {
-            @Override
-            public boolean accept(File pathname) {
-                return true;
-            }
-        });
-        return this;
+        return copy(output, pathname -> true);
     }
 
     /**
@@ -98,6 +100,21 @@ public class DirectoryManager {
      * @return this object
      */
     public DirectoryManager copy(File output, FileFilter filter) throws IOException {
+        return copy(output, filter, FileWorkers.DEFAULT_THREADS, null);
+    }
+
+    /**
+     * Copies this directory its child directories into another directory.<br>
+     * The tree is walked first, then the files are copied by a pool of threads at the same time.
+     * Each file is transferred between file channels, so the data doesn't go through the heap.<br>
+     * If a file can't be copied, the remaining files are skipped and the error is thrown.
+     * @param output an output directory
+     * @param filter a file filter, the rejected directories are skipped with all their files
+     * @param threads the maximum amount of files which are copied at the same time
+     * @param listener a listener which is notified after each file was copied, or null
+     * @return this object
+     */
+    public DirectoryManager copy(File output, FileFilter filter, int threads, CopyProgressListener listener) throws IOException {
         if(output.exists() && !output.isDirectory()){
             try {
                 throw new Exception("The output file object doesn't represents for a directory");
@@ -106,31 +123,74 @@ public class DirectoryManager {
             }
         }
         mkdir();
-        new DirectoryManager(output).mkdir();
-        handleCopy(this.directory, output, filter);
-        return this;
-    }
+        Path source = this.directory.toPath();
+        Path target = output.toPath();
+        // the directories are created while walking, the files are collected to be copied later
+        List<Path> files = new ArrayList<>();
+        long[] totalBytes = new long[1];
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if(!dir.equals(source) && !filter.accept(dir.toFile())){
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                Files.createDirectories(target.resolve(source.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
 
-    private static void handleCopy(File directory, File output, FileFilter filter) throws IOException {
-        // gets list of files in that directory
-        for(File f : directory.listFiles(filter)){
-            // gets the child output file object which is located at that output directory
-            // and named same as the name of this file
-            File out = new File(output, f.getName());
-            // checks whether this file object represents for a normal file
-            if(f.isFile()){
-                // copies this file to the child output file
-                // the child output file will be created automatically if it doesn't exist
-                new FileManager(f).copy(out);
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+                if(!attrs.isDirectory() && filter.accept(file.toFile())){
+                    files.add(file);
+                    totalBytes[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
             }
-            // checks whether this file object represents for a directory
-            else if(f.isDirectory()){
-                // creates the child output directory
-                new DirectoryManager(out).mkdir();
-                // calls this method again which is handled in the child output directory
-                handleCopy(f, out, filter);
+        });
+        long total = totalBytes[0];
+        AtomicLong copiedFiles = new AtomicLong();
+        AtomicLong copiedBytes = new AtomicLong();
+        FileWorkers.run(files, threads, file -> {
+            File out = target.resolve(source.relativize(file)).toFile();
+            new FileManager(file.toFile()).copy(out);
+            long bytes = copiedBytes.addAndGet(out.length());
+            long count = copiedFiles.incrementAndGet();
+            if(listener != null){
+                listener.progress(count, files.size(), bytes, total);
             }
-        }
+        });
+        return this;
+    }
+
+    /**
+     * Copies the new and changed files of this directory into another directory.<br>
+     * Use {@link DirectorySync} for more options (e.g: a manifest, deleting orphans)
+     * @param output an output directory
+     * @return this object
+     */
+    public DirectoryManager sync(File output) throws IOException {
+        new DirectorySync(this.directory, output).sync();
+        return this;
+    }
+
+    /**
+     * Watches this directory and its child directories, the changes are passed to the listener
+     * after nothing has happened for 100 milliseconds
+     * @param listener the listener
+     * @return the watcher, close it to stop watching
+     */
+    public DirectoryWatcher watch(DirectoryWatchListener listener) throws IOException {
+        return watch(listener, 100);
+    }
+
+    /**
+     * Watches this directory and its child directories
+     * @param listener the listener
+     * @param debounce the time in milliseconds which must pass without any event before the changes are passed to the listener
+     * @return the watcher, close it to stop watching
+     */
+    public DirectoryWatcher watch(DirectoryWatchListener listener, long debounce) throws IOException {
+        return new DirectoryWatcher(this.directory, listener, debounce);
     }
 
     /**
@@ -0,0 +1,399 @@
+package org.anhcraft.spaciouslib.io;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * A class helps you to keep a copy of a directory up to date (e.g: for backups).<br>
+ * Only the new and changed files are copied. A file is changed if its size or its last modified time is different,
+ * or its content hash if hashing is enabled. The copied files get the last modified time of their source files.<br>
+ * If there is a manifest, the state of the last sync is read from it instead of scanning the target directory,
+ * so the target directory should only be changed by syncing.
+ */
+public class DirectorySync {
+    private static final int MANIFEST_VERSION = 1;
+    private static final Gson GSON = new Gson();
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(65536));
+
+    private Path source;
+    private Path target;
+    private FileFilter filter = pathname -> true;
+    private boolean hash;
+    private boolean deleteOrphans;
+    private File manifest;
+    private int threads = FileWorkers.DEFAULT_THREADS;
+    private CopyProgressListener listener;
+    private AtomicLong copiedFiles = new AtomicLong();
+    private AtomicLong copiedBytes = new AtomicLong();
+    private AtomicLong unchangedFiles = new AtomicLong();
+    private AtomicLong deletedFiles = new AtomicLong();
+
+    /**
+     * Creates a new DirectorySync instance
+     * @param source the directory which is copied
+     * @param target the directory which the copy is kept in
+     */
+    public DirectorySync(File source, File target){
+        this.source = source.toPath();
+        this.target = target.toPath();
+    }
+
+    /**
+     * Sets the filter of files and directories, the rejected directories are skipped with all their files
+     * @param filter a file filter
+     * @return this object
+     */
+    public DirectorySync setFilter(FileFilter filter){
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Compares the content hash (CRC-32) of files too, so changes which kept the size and the last modified time are found.<br>
+     * Every source file is read on each sync, the hash of the target file is taken from the manifest if possible.
+     * @param hash true if the content should be compared
+     * @return this object
+     */
+    public DirectorySync setHashEnabled(boolean hash){
+        this.hash = hash;
+        return this;
+    }
+
+    /**
+     * Deletes the files and directories of the target directory which don't exist in the source directory
+     * (or are rejected by the filter)
+     * @param deleteOrphans true if orphans should be deleted
+     * @return this object
+     */
+    public DirectorySync setDeleteOrphans(boolean deleteOrphans){
+        this.deleteOrphans = deleteOrphans;
+        return this;
+    }
+
+    /**
+     * Sets the file which keeps the state of the last sync.<br>
+     * The target directory isn't scanned if the manifest exists, it is created or updated after each sync.
+     * @param manifest a file, or null to compare with the target directory directly
+     * @return this object
+     */
+    public DirectorySync setManifest(File manifest){
+        this.manifest = manifest;
+        return this;
+    }
+
+    /**
+     * Sets the maximum amount of files which are compared and copied at the same time
+     * @param threads the amount of threads
+     * @return this object
+     */
+    public DirectorySync setThreads(int threads){
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Sets the listener which is notified after each file was checked (and copied if it was changed)
+     * @param listener a listener, or null
+     * @return this object
+     */
+    public DirectorySync setListener(CopyProgressListener listener){
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Copies the new and changed files, then deletes the orphans and saves the manifest if they are enabled
+     * @return this object
+     */
+    public DirectorySync sync() throws IOException {
+        copiedFiles.set(0);
+        copiedBytes.set(0);
+        unchangedFiles.set(0);
+        deletedFiles.set(0);
+        Manifest last = loadManifest();
+        List<Path> files = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        Set<String> directories = new HashSet<>();
+        Files.createDirectories(target);
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if(dir.equals(source)){
+                    return FileVisitResult.CONTINUE;
+                }
+                if(!filter.accept(dir.toFile())){
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                String key = getKey(dir);
+                if(last == null || !last.directorySet.contains(key)){
+                    Files.createDirectories(target.resolve(source.relativize(dir)));
+                }
+                directories.add(key);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+                if(!attrs.isDirectory() && filter.accept(file.toFile())){
+                    files.add(file);
+                    attributes.add(attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        long totalBytes = 0;
+        List<Integer> indexes = new ArrayList<>(files.size());
+        for(int i = 0; i < files.size(); i++){
+            totalBytes += attributes.get(i).size();
+            indexes.add(i);
+        }
+        long total = totalBytes;
+        ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+        AtomicLong checkedFiles = new AtomicLong();
+        AtomicLong checkedBytes = new AtomicLong();
+        FileWorkers.run(indexes, threads, i -> {
+            BasicFileAttributes attrs = attributes.get(i);
+            syncFile(files.get(i), attrs, last, entries);
+            long bytes = checkedBytes.addAndGet(attrs.size());
+            long count = checkedFiles.incrementAndGet();
+            if(listener != null){
+                listener.progress(count, files.size(), bytes, total);
+            }
+        });
+        if(deleteOrphans){
+            if(last == null){
+                deleteOrphans(entries.keySet(), directories);
+            } else {
+                deleteOrphans(last, entries.keySet(), directories);
+            }
+        }
+        if(manifest != null){
+            Manifest now = new Manifest();
+            now.version = MANIFEST_VERSION;
+            now.target = target.toAbsolutePath().toString();
+            now.files = new TreeMap<>(entries);
+            now.directories = new ArrayList<>(directories);
+            Collections.sort(now.directories);
+            saveManifest(now);
+        }
+        return this;
+    }
+
+    private void syncFile(Path file, BasicFileAttributes attrs, Manifest last, Map<String, Entry> entries) throws IOException {
+        String key = getKey(file);
+        Path out = target.resolve(source.relativize(file));
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        Entry known = null;
+        if(last != null){
+            known = last.files.get(key);
+        } else if(Files.exists(out)){
+            BasicFileAttributes outAttrs = Files.readAttributes(out, BasicFileAttributes.class);
+            known = new Entry(outAttrs.size(), outAttrs.lastModifiedTime().toMillis(), null);
+        }
+        boolean same = known != null && known.size == size && known.modified == modified;
+        boolean changed = !same;
+        String hash = null;
+        if(this.hash && known != null){
+            hash = hash(file);
+            // the target is only read if the manifest doesn't have its hash (e.g: it was saved without hashing)
+            String knownHash = known.hash != null ? known.hash : (Files.exists(out) ? hash(out) : null);
+            changed = knownHash == null || known.size != size || !hash.equals(knownHash);
+        }
+        if(changed){
+            new FileManager(file.toFile()).copy(out.toFile());
+            copiedFiles.incrementAndGet();
+            copiedBytes.addAndGet(size);
+        } else {
+            unchangedFiles.incrementAndGet();
+        }
+        if(changed || !same){
+            // the next sync compares with this time
+            Files.setLastModifiedTime(out, FileTime.fromMillis(modified));
+        }
+        if(this.hash && manifest != null && hash == null){
+            hash = hash(file);
+        }
+        entries.put(key, new Entry(size, modified, hash));
+    }
+
+    // the manifest knows all files which were copied, so the target directory isn't scanned
+    private void deleteOrphans(Manifest last, Set<String> files, Set<String> directories) throws IOException {
+        for(String key : last.files.keySet()){
+            if(!files.contains(key) && Files.deleteIfExists(target.resolve(key))){
+                deletedFiles.incrementAndGet();
+            }
+        }
+        List<String> orphans = new ArrayList<>();
+        for(String key : last.directories){
+            if(!directories.contains(key)){
+                orphans.add(key);
+            }
+        }
+        // the children are deleted before their parents
+        orphans.sort((a, b) -> b.length() - a.length());
+        for(String key : orphans){
+            try {
+                Files.deleteIfExists(target.resolve(key));
+            } catch(DirectoryNotEmptyException ignored){
+                // it has files which weren't synced
+            }
+        }
+    }
+
+    private void deleteOrphans(Set<String> files, Set<String> directories) throws IOException {
+        Files.walkFileTree(target, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if(!files.contains(getKey(target, file)) && !isManifest(file)){
+                    Files.delete(file);
+                    deletedFiles.incrementAndGet();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if(e != null){
+                    throw e;
+                }
+                if(!dir.equals(target) && !directories.contains(getKey(target, dir))){
+                    try {
+                        Files.delete(dir);
+                    } catch(DirectoryNotEmptyException ignored){
+                        // it contains the manifest
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean isManifest(Path file) throws IOException {
+        return manifest != null && manifest.exists() && Files.isSameFile(file, manifest.toPath());
+    }
+
+    private Manifest loadManifest() throws IOException {
+        if(manifest == null || !manifest.exists()){
+            return null;
+        }
+        Manifest last;
+        try {
+            last = GSON.fromJson(new String(new FileManager(manifest).read(), StandardCharsets.UTF_8), Manifest.class);
+        } catch(JsonParseException e){
+            e.printStackTrace();
+            return null;
+        }
+        // the manifest can't be trusted if it was made for another target directory
+        if(last == null || last.version != MANIFEST_VERSION || last.files == null || last.directories == null
+                || !target.toAbsolutePath().toString().equals(last.target)){
+            return null;
+        }
+        last.directorySet = new HashSet<>(last.directories);
+        return last;
+    }
+
+    private void saveManifest(Manifest now) throws IOException {
+        new FileManager(manifest).writeAtomic(GSON.toJson(now));
+    }
+
+    private String getKey(Path path){
+        return getKey(source, path);
+    }
+
+    private static String getKey(Path root, Path path){
+        return root.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private static String hash(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = HASH_BUFFER.get();
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer.clear();
+            while(channel.read(buffer) != -1){
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Gets the amount of files which were copied by the last sync
+     * @return the amount
+     */
+    public long getCopiedFiles(){
+        return this.copiedFiles.get();
+    }
+
+    /**
+     * Gets the amount of bytes which were copied by the last sync
+     * @return the amount
+     */
+    public long getCopiedBytes(){
+        return this.copiedBytes.get();
+    }
+
+    /**
+     * Gets the amount of files which were skipped by the last sync because they didn't change
+     * @return the amount
+     */
+    public long getUnchangedFiles(){
+        return this.unchangedFiles.get();
+    }
+
+    /**
+     * Gets the amount of orphan files which were deleted by the last sync
+     * @return the amount
+     */
+    public long getDeletedFiles(){
+        return this.deletedFiles.get();
+    }
+
+    private static class Manifest {
+        private int version;
+        private String target;
+        private Map<String, Entry> files;
+        private List<String> directories;
+        // the directories for lookups, it isn't saved
+        private transient Set<String> directorySet;
+    }
+
+    private static class Entry {
+        private long size;
+        private long modified;
+        private String hash;
+
+        private Entry(long size, long modified, String hash){
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
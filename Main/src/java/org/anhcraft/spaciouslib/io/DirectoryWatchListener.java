@@ -0,0 +1,14 @@
+package org.anhcraft.spaciouslib.io;
+
+import java.util.List;
+
+public interface DirectoryWatchListener {
+    /**
+     * This method will be called after the files were changed and nothing else happened for a while.<br>
+     * Each path is only listed once, its events are merged (e.g: a file which was created then modified is CREATED,
+     * a file which was created then deleted isn't listed).<br>
+     * It is called by the thread of the watcher, so it should return quickly.
+     * @param changes the changes in the order they happened
+     */
+    void changed(List<DirectoryChange> changes);
+}
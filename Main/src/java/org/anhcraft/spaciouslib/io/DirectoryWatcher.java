@@ -0,0 +1,228 @@
+package org.anhcraft.spaciouslib.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class helps you to get notified when the files of a directory are changed (e.g: to invalidate a cache).<br>
+ * The directory and all of its child directories are watched, the new child directories are watched automatically.<br>
+ * The events are collected until nothing happens for the debounce time, then they are merged and passed
+ * to the listener at once. A file which is written many times in a row is therefore only reported once.
+ */
+public class DirectoryWatcher implements Closeable {
+    private Path root;
+    private DirectoryWatchListener listener;
+    private long debounce;
+    private WatchService service;
+    // only used by the thread of this watcher after it was started
+    private HashMap<WatchKey, Path> keys = new HashMap<>();
+    private Thread thread;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new DirectoryWatcher instance and starts watching
+     * @param directory a directory
+     * @param listener the listener
+     * @param debounce the time in milliseconds which must pass without any event before the changes are passed to the listener
+     */
+    public DirectoryWatcher(File directory, DirectoryWatchListener listener, long debounce) throws IOException {
+        this.root = directory.toPath().toAbsolutePath().normalize();
+        this.listener = listener;
+        this.debounce = Math.max(1, debounce);
+        this.service = this.root.getFileSystem().newWatchService();
+        try {
+            register(this.root, null);
+        } catch(IOException e) {
+            this.service.close();
+            throw e;
+        }
+        this.thread = new Thread(this::run, "SpaciousLib directory watcher: " + this.root.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Gets the watched directory
+     * @return the absolute path of the directory
+     */
+    public Path getDirectory(){
+        return this.root;
+    }
+
+    /**
+     * Checks whether this watcher is still watching.<br>
+     * A watcher stops if it was closed or the directory was deleted.
+     * @return true if it is
+     */
+    public boolean isWatching(){
+        return !this.closed && this.thread.isAlive();
+    }
+
+    /**
+     * Stops watching, the changes which haven't been passed to the listener yet are discarded
+     */
+    @Override
+    public void close() throws IOException {
+        this.closed = true;
+        this.service.close();
+    }
+
+    // registers the given directory and its child directories,
+    // the files which are found are new if they are in a directory which has just been created
+    private void register(Path directory, Map<Path, DirectoryChange.Type> changes) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                keys.put(dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+                if(changes != null && !dir.equals(directory)){
+                    merge(changes, dir, DirectoryChange.Type.CREATED);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs){
+                if(changes != null){
+                    merge(changes, file, DirectoryChange.Type.CREATED);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e){
+                // the file may have been deleted while walking
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void merge(Map<Path, DirectoryChange.Type> changes, Path path, DirectoryChange.Type type){
+        DirectoryChange.Type old = changes.get(path);
+        if(old == null){
+            changes.put(path, type);
+        } else if(old == DirectoryChange.Type.CREATED){
+            // a new file which was modified is still new, a new file which was deleted has never existed
+            if(type == DirectoryChange.Type.DELETED){
+                changes.remove(path);
+            }
+        } else if(old == DirectoryChange.Type.DELETED){
+            if(type == DirectoryChange.Type.CREATED){
+                changes.put(path, DirectoryChange.Type.MODIFIED);
+            }
+        } else if(type == DirectoryChange.Type.DELETED){
+            changes.put(path, DirectoryChange.Type.DELETED);
+        }
+    }
+
+    private void run(){
+        LinkedHashMap<Path, DirectoryChange.Type> changes = new LinkedHashMap<>();
+        boolean overflow = false;
+        long first = 0;
+        long last = 0;
+        // a file which is written all the time would delay the changes forever
+        long maxDelay = TimeUnit.MILLISECONDS.toNanos(this.debounce * 10);
+        long debounce = TimeUnit.MILLISECONDS.toNanos(this.debounce);
+        try {
+            while(!this.closed){
+                WatchKey key;
+                if(changes.isEmpty() && !overflow){
+                    key = this.service.take();
+                } else {
+                    long wait = Math.min(last + debounce, first + maxDelay) - System.nanoTime();
+                    key = wait <= 0 ? null : this.service.poll(wait, TimeUnit.NANOSECONDS);
+                    if(key == null){
+                        deliver(changes, overflow);
+                        changes.clear();
+                        overflow = false;
+                        continue;
+                    }
+                }
+                boolean idle = changes.isEmpty() && !overflow;
+                Path directory = this.keys.get(key);
+                for(WatchEvent<?> event : key.pollEvents()){
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null){
+                        overflow = true;
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE){
+                        merge(changes, path, DirectoryChange.Type.CREATED);
+                        if(Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)){
+                            try {
+                                register(path, changes);
+                            } catch(IOException e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    } else if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE){
+                        merge(changes, path, DirectoryChange.Type.DELETED);
+                    } else if(!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)){
+                        // a directory is "modified" when its files are changed, which are reported by themselves
+                        merge(changes, path, DirectoryChange.Type.MODIFIED);
+                    }
+                }
+                if(!key.reset()){
+                    // the directory was deleted
+                    this.keys.remove(key);
+                    if(this.keys.isEmpty()){
+                        deliver(changes, overflow);
+                        return;
+                    }
+                }
+                last = System.nanoTime();
+                if(idle){
+                    first = last;
+                }
+            }
+        } catch(InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private void deliver(Map<Path, DirectoryChange.Type> changes, boolean overflow){
+        if(this.closed){
+            return;
+        }
+        List<DirectoryChange> list;
+        if(overflow){
+            // the new directories may have been missed too
+            try {
+                register(this.root, null);
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+            list = Collections.singletonList(new DirectoryChange(this.root, DirectoryChange.Type.OVERFLOW));
+        } else if(changes.isEmpty()){
+            return;
+        } else {
+            list = new ArrayList<>(changes.size());
+            for(Map.Entry<Path, DirectoryChange.Type> change : changes.entrySet()){
+                list.add(new DirectoryChange(change.getKey(), change.getValue()));
+            }
+        }
+        try {
+            this.listener.changed(list);
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package org.anhcraft.spaciouslib.io;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A class helps you to manage files
  */
 public class FileManager {
+    // some VMs reserve a few header words in an array
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     private File file;
 
     /**
@@ -82,7 +94,9 @@ public class FileManager {
     }
 
     /**
-     * Writes the given content to this file
+     * Writes the given content to this file.<br>
+     * The file is changed in place, so it may be corrupted if the process crashes while writing.
+     * Use {@link #writeAtomic(byte[])} for important files.
      * @param content an array of bytes (binary content)
      * @param append if true the content will be appended at the end of the file
      * @return this object
@@ -126,15 +140,146 @@ public class FileManager {
     }
 
     /**
-     * Reads this file
+     * Replaces this file with the given content atomically and durably.<br>
+     * The content is written to a temporary file next to this file and flushed to the disk,
+     * then the temporary file is renamed to this file. If the process crashes, this file has either
+     * the old or the new content. The file is created if it doesn't exist.<br>
+     * Use {@link FileWriteBatch} to write many files with fewer waits for the disk.
+     * @param content an array of bytes (binary content)
+     * @return this object
+     */
+    public FileManager writeAtomic(byte[] content) throws IOException {
+        Path path = this.file.toPath().toAbsolutePath();
+        Path temp = writeTemp(path, content, true);
+        try {
+            moveAtomic(temp, path);
+        } catch(IOException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        // the rename is only durable after the directory was flushed
+        syncDirectory(path.getParent());
+        return this;
+    }
+
+    /**
+     * Replaces this file with the given content atomically and durably
+     * @param content a string
+     * @return this object
+     */
+    public FileManager writeAtomic(String content) throws IOException {
+        return writeAtomic(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the given content to a new temporary file in the directory of the given file
+     * @param file the file which will be replaced by the temporary file
+     * @param content the content
+     * @param sync true if the content should be flushed to the disk
+     * @return the path of the temporary file
+     */
+    static Path writeTemp(Path file, byte[] content, boolean sync) throws IOException {
+        // the temporary file is created as a normal file, so it keeps the default permissions after the rename
+        Path temp = file.resolveSibling("." + file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            if(sync){
+                channel.force(true);
+            }
+        } catch(IOException e){
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    static void moveAtomic(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e){
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static void syncDirectory(Path directory){
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)){
+            channel.force(true);
+        } catch(IOException ignored){
+            // directories can't be opened on some platforms (e.g: Windows), their renames are durable anyway
+        }
+    }
+
+    /**
+     * Reads this file.<br>
+     * The whole file is loaded into an array, so it can't be larger than 2 GB.
+     * Use {@link #read(ByteBuffer, long)} or {@link #mapReadOnly()} for large files.
      * @return the content as an array of bytes
      */
     public byte[] read() throws IOException {
-        byte[] content = new byte[(int) this.file.length()];
-        FileInputStream stream = new FileInputStream(this.file);
-        stream.read(content);
-        stream.close();
-        return content;
+        try(FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)){
+            long size = channel.size();
+            if(MAX_ARRAY_SIZE < size){
+                throw new IOException("The file is too large to be read into an array (" + size + " bytes)");
+            }
+            ByteBuffer content = ByteBuffer.allocate((int) size);
+            // a read may return fewer bytes than requested
+            while(content.hasRemaining()){
+                if(channel.read(content) == -1){
+                    throw new EOFException("The file was truncated while being read");
+                }
+            }
+            return content.array();
+        }
+    }
+
+    /**
+     * Reads a part of this file into the given buffer, until the buffer is full or the end of the file is reached.<br>
+     * The same buffer can be reused to read a large file part by part with constant memory.
+     * @param buffer the buffer, the data is put from its position
+     * @param position the position in this file where the reading starts
+     * @return the amount of bytes which were read, or -1 if the position is at the end of the file
+     */
+    public int read(ByteBuffer buffer, long position) throws IOException {
+        try(FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)){
+            int total = 0;
+            while(buffer.hasRemaining()){
+                int n = channel.read(buffer, position + total);
+                if(n == -1){
+                    return total == 0 ? -1 : total;
+                }
+                total += n;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Maps this file into the memory as a read-only buffer.<br>
+     * The content is loaded by the operating system when it is accessed and isn't kept in the heap.
+     * A buffer can map at most 2 GB, use {@link #mapReadOnly(long, long)} to map larger files in parts.
+     * @return the mapped buffer
+     */
+    public MappedByteBuffer mapReadOnly() throws IOException {
+        return mapReadOnly(0, this.file.length());
+    }
+
+    /**
+     * Maps a part of this file into the memory as a read-only buffer
+     * @param position the position in this file where the mapped part starts
+     * @param size the size of the part, at most {@link Integer#MAX_VALUE} bytes
+     * @return the mapped buffer
+     */
+    public MappedByteBuffer mapReadOnly(long position, long size) throws IOException {
+        if(Integer.MAX_VALUE < size){
+            throw new IOException("A mapped buffer can't be larger than 2 GB (" + size + " bytes)");
+        }
+        // the mapping stays valid after the channel was closed
+        try(FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)){
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
     }
 
     /**
@@ -146,10 +291,29 @@ public class FileManager {
     }
 
     /**
-     * Copies this file into another directory
-     * @param output an another file
+     * Copies this file to another file.<br>
+     * The data is transferred between the channels of the files (by the operating system if possible),
+     * so it doesn't go through the heap and files of any size can be copied.
+     * @param output an another file, it is created or overwritten
      */
     public void copy(File output) throws IOException {
-        new FileManager(output).create().write(read());
+        try(FileChannel in = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+            FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            long size = in.size();
+            long position = 0;
+            // a transfer may move fewer bytes than requested
+            while(position < size){
+                long n = in.transferTo(position, size - position, out);
+                if(n <= 0){
+                    // the file was truncated while being copied
+                    if(in.size() <= position){
+                        break;
+                    }
+                    throw new IOException("Failed to copy the file at the position " + position);
+                }
+                position += n;
+            }
+        }
     }
 }
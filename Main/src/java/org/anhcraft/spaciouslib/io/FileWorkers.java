@@ -0,0 +1,79 @@
+package org.anhcraft.spaciouslib.io;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs an I/O action for many files on a bounded pool of threads
+ */
+final class FileWorkers {
+    // copying is mostly waiting for the disk, a few threads are enough to keep it busy
+    static final int DEFAULT_THREADS = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    private FileWorkers(){ }
+
+    /**
+     * Runs the given action for each item and waits until all of them were done.<br>
+     * If an action fails, the remaining items are skipped and the first error is thrown.
+     * @param items the items
+     * @param threads the maximum amount of actions which run at the same time
+     * @param action the action
+     */
+    static <T> void run(List<T> items, int threads, Action<T> action) throws IOException {
+        if(items.isEmpty()){
+            return;
+        }
+        AtomicReference<IOException> error = new AtomicReference<>();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(threads, items.size())));
+        try {
+            pool.invoke(new Part<>(items, 0, items.size(), action, error));
+        } finally {
+            pool.shutdown();
+        }
+        if(error.get() != null){
+            throw error.get();
+        }
+    }
+
+    interface Action<T> {
+        void run(T item) throws IOException;
+    }
+
+    // a range of items which is split in halves until each part is a single item, so idle threads can steal them
+    private static class Part<T> extends RecursiveAction {
+        private static final long serialVersionUID = 2150391823645276017L;
+
+        private List<T> items;
+        private int from;
+        private int to;
+        private Action<T> action;
+        private AtomicReference<IOException> error;
+
+        private Part(List<T> items, int from, int to, Action<T> action, AtomicReference<IOException> error){
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+            this.error = error;
+        }
+
+        @Override
+        protected void compute(){
+            if(to - from == 1){
+                if(error.get() == null){
+                    try {
+                        action.run(items.get(from));
+                    } catch(IOException e){
+                        error.compareAndSet(null, e);
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Part<>(items, from, middle, action, error), new Part<>(items, middle, to, action, error));
+        }
+    }
+}
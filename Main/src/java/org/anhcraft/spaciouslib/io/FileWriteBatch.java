@@ -0,0 +1,119 @@
+package org.anhcraft.spaciouslib.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class helps you to write many files atomically and durably at once (e.g: when auto-saving).<br>
+ * All files are written to temporary files first, then they are flushed to the disk together,
+ * so the waits for the disk overlap instead of adding up. After that, each temporary file is renamed
+ * to its target file and each directory is flushed once.<br>
+ * Every file is replaced atomically as by {@link FileManager#writeAtomic(byte[])}, but the batch isn't:
+ * if the process crashes while committing, some files may have the new content and the others the old one.
+ */
+public class FileWriteBatch {
+    private LinkedHashMap<Path, byte[]> writes = new LinkedHashMap<>();
+    private int threads = FileWorkers.DEFAULT_THREADS;
+
+    /**
+     * Adds a file to this batch, the earlier content of the same file is replaced
+     * @param file a file
+     * @param content an array of bytes (binary content)
+     * @return this object
+     */
+    public FileWriteBatch add(File file, byte[] content){
+        writes.put(file.toPath().toAbsolutePath(), content);
+        return this;
+    }
+
+    /**
+     * Adds a file to this batch, the earlier content of the same file is replaced
+     * @param file a file
+     * @param content a string
+     * @return this object
+     */
+    public FileWriteBatch add(File file, String content){
+        return add(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets the maximum amount of files which are flushed at the same time
+     * @param threads the amount of threads
+     * @return this object
+     */
+    public FileWriteBatch setThreads(int threads){
+        this.threads = threads;
+        return this;
+    }
+
+    // the files which are waiting to be committed
+    File[] getFiles(){
+        File[] files = new File[writes.size()];
+        int i = 0;
+        for(Path path : writes.keySet()){
+            files[i++] = path.toFile();
+        }
+        return files;
+    }
+
+    /**
+     * Gets the amount of files which are waiting to be committed
+     * @return the amount
+     */
+    public int size(){
+        return writes.size();
+    }
+
+    /**
+     * Writes all files which were added, then this batch is empty again.<br>
+     * If a file can't be written, none of the files are replaced (unless the error happens while renaming)
+     * and the files stay in this batch, so it can be committed again.
+     * @return this object
+     */
+    public FileWriteBatch commit() throws IOException {
+        if(writes.isEmpty()){
+            return this;
+        }
+        List<Path> targets = new ArrayList<>(writes.keySet());
+        List<Path> temps = new ArrayList<>(targets.size());
+        try {
+            // the content goes to the page cache first, which is fast
+            for(Map.Entry<Path, byte[]> write : writes.entrySet()){
+                temps.add(FileManager.writeTemp(write.getKey(), write.getValue(), false));
+            }
+            // the file system can merge the flushes which are waiting at the same time
+            FileWorkers.run(temps, threads, temp -> {
+                try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)){
+                    channel.force(true);
+                }
+            });
+            LinkedHashSet<Path> directories = new LinkedHashSet<>();
+            for(int i = 0; i < targets.size(); i++){
+                FileManager.moveAtomic(temps.get(i), targets.get(i));
+                temps.set(i, null);
+                directories.add(targets.get(i).getParent());
+            }
+            for(Path directory : directories){
+                FileManager.syncDirectory(directory);
+            }
+            writes.clear();
+        } finally {
+            for(Path temp : temps){
+                if(temp != null){
+                    Files.deleteIfExists(temp);
+                }
+            }
+        }
+        return this;
+    }
+}
@@ -0,0 +1,329 @@
+package org.anhcraft.spaciouslib.metrics;
+
+import org.anhcraft.spaciouslib.utils.Histogram;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * A class helps you to collect metrics and render them in the Prometheus text format.<br>
+ * Metrics are registered once with a supplier which is only called when the metrics are rendered,
+ * so the registry doesn't slow down the code which is measured.<br>
+ * Metrics with the same name but different labels belong to the same family (e.g: the same metric of two servers).<br>
+ * All names and labels are encoded when they are registered, the rendering reuses its buffer.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    /**
+     * Gets the registry which the metrics of SpaciousLib are registered to
+     * @return the default registry
+     */
+    public static MetricsRegistry getDefault(){
+        return DEFAULT;
+    }
+
+    private final LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+    private byte[] buffer = new byte[4096];
+    private int length;
+
+    /**
+     * Registers a counter (a value which only goes up, e.g: the amount of received bytes)
+     * @param name the name of the metric (e.g: "spaciouslib_socket_received_bytes_total")
+     * @param help the description
+     * @param labels the labels as pairs of names and values (e.g: "server", "web")
+     * @param value the supplier of the value
+     * @return this object
+     */
+    public MetricsRegistry counter(String name, String help, String[] labels, LongSupplier value){
+        add(name, help, "counter", new Series(encodeLabels(labels, null, null), value, null, null));
+        return this;
+    }
+
+    /**
+     * Registers a gauge (a value which can go up and down, e.g: the amount of open connections)
+     * @param name the name of the metric
+     * @param help the description
+     * @param labels the labels as pairs of names and values
+     * @param value the supplier of the value
+     * @return this object
+     */
+    public MetricsRegistry gauge(String name, String help, String[] labels, DoubleSupplier value){
+        add(name, help, "gauge", new Series(encodeLabels(labels, null, null), null, value, null));
+        return this;
+    }
+
+    /**
+     * Registers a histogram of durations.<br>
+     * The durations are recorded in nanoseconds but rendered in seconds, as Prometheus expects.
+     * @param name the name of the metric (e.g: "spaciouslib_tick_duration_seconds")
+     * @param help the description
+     * @param labels the labels as pairs of names and values
+     * @param histogram the histogram
+     * @return this object
+     */
+    public MetricsRegistry histogram(String name, String help, String[] labels, Histogram histogram){
+        Series series = new Series(encodeLabels(labels, null, null), null, null, histogram);
+        long[] bounds = histogram.getBounds();
+        series.buckets = new byte[bounds.length + 1][];
+        for(int i = 0; i <= bounds.length; i++){
+            String le = i < bounds.length ? BigDecimal.valueOf(bounds[i], 9).stripTrailingZeros().toPlainString() : "+Inf";
+            series.buckets[i] = (name + "_bucket" + new String(encodeLabels(labels, "le", le), StandardCharsets.UTF_8) + " ")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        series.counts = new long[bounds.length + 1];
+        series.sumPrefix = (name + "_sum" + new String(series.labels, StandardCharsets.UTF_8) + " ").getBytes(StandardCharsets.UTF_8);
+        series.countPrefix = (name + "_count" + new String(series.labels, StandardCharsets.UTF_8) + " ").getBytes(StandardCharsets.UTF_8);
+        add(name, help, "histogram", series);
+        return this;
+    }
+
+    /**
+     * Removes all metrics which have the given name
+     * @param name the name of a metric
+     */
+    public synchronized void unregister(String name){
+        families.remove(name);
+    }
+
+    /**
+     * Removes the metric which has the given name and labels
+     * @param name the name of a metric
+     * @param labels the labels as pairs of names and values
+     */
+    public synchronized void unregister(String name, String[] labels){
+        Family family = families.get(name);
+        if(family == null){
+            return;
+        }
+        byte[] encoded = encodeLabels(labels, null, null);
+        Iterator<Series> it = family.series.iterator();
+        while(it.hasNext()){
+            if(Arrays.equals(it.next().labels, encoded)){
+                it.remove();
+            }
+        }
+        if(family.series.isEmpty()){
+            families.remove(name);
+        }
+    }
+
+    /**
+     * Removes all metrics which have the given label (e.g: all metrics of a server which was closed)
+     * @param label the name of a label
+     * @param value the value of that label
+     */
+    public synchronized void unregisterAll(String label, String value){
+        byte[] pair = (label + "=\"" + escape(value) + "\"").getBytes(StandardCharsets.UTF_8);
+        Iterator<Family> families = this.families.values().iterator();
+        while(families.hasNext()){
+            Family family = families.next();
+            family.series.removeIf(series -> indexOf(series.labels, pair) >= 0);
+            if(family.series.isEmpty()){
+                families.remove();
+            }
+        }
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text format (version 0.0.4)
+     * @return the rendered metrics
+     */
+    public synchronized byte[] render(){
+        length = 0;
+        for(Family family : families.values()){
+            write(family.header);
+            for(Series series : family.series){
+                if(series.histogram != null){
+                    renderHistogram(series);
+                } else {
+                    write(family.name);
+                    write(series.labels);
+                    write((byte) ' ');
+                    if(series.longValue != null){
+                        writeLong(series.longValue.getAsLong());
+                    } else {
+                        writeDouble(series.doubleValue.getAsDouble());
+                    }
+                    write((byte) '\n');
+                }
+            }
+        }
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void renderHistogram(Series series){
+        long[] counts = series.counts;
+        // the sum and the buckets are copied at the same moment
+        long sum = series.histogram.copy(counts);
+        long cumulative = 0;
+        for(int i = 0; i < counts.length; i++){
+            cumulative += counts[i];
+            write(series.buckets[i]);
+            writeLong(cumulative);
+            write((byte) '\n');
+        }
+        write(series.sumPrefix);
+        writeDouble(sum / 1e9);
+        write((byte) '\n');
+        write(series.countPrefix);
+        writeLong(cumulative);
+        write((byte) '\n');
+    }
+
+    private synchronized void add(String name, String help, String type, Series series){
+        if(!NAME.matcher(name).matches()){
+            throw new IllegalArgumentException("Invalid metric name: " + name);
+        }
+        Family family = families.get(name);
+        if(family == null){
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if(!family.type.equals(type)){
+            throw new IllegalArgumentException("The metric " + name + " was already registered as a " + family.type);
+        }
+        // replaces the series which has the same labels
+        family.series.removeIf(s -> Arrays.equals(s.labels, series.labels));
+        family.series.add(series);
+    }
+
+    private static byte[] encodeLabels(String[] labels, String extraName, String extraValue){
+        if(labels != null && labels.length % 2 != 0){
+            throw new IllegalArgumentException("Labels must be pairs of names and values");
+        }
+        if((labels == null || labels.length == 0) && extraName == null){
+            return new byte[0];
+        }
+        StringBuilder str = new StringBuilder("{");
+        if(labels != null){
+            for(int i = 0; i < labels.length; i += 2){
+                if(!LABEL.matcher(labels[i]).matches()){
+                    throw new IllegalArgumentException("Invalid label name: " + labels[i]);
+                }
+                if(1 < str.length()){
+                    str.append(',');
+                }
+                str.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+        }
+        if(extraName != null){
+            if(1 < str.length()){
+                str.append(',');
+            }
+            str.append(extraName).append("=\"").append(extraValue).append('"');
+        }
+        return str.append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String value){
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static int indexOf(byte[] array, byte[] target){
+        outer:
+        for(int i = 0; i <= array.length - target.length; i++){
+            for(int j = 0; j < target.length; j++){
+                if(array[i + j] != target[j]){
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int extra){
+        if(buffer.length < length + extra){
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    private void write(byte b){
+        ensureCapacity(1);
+        buffer[length++] = b;
+    }
+
+    private void write(byte[] b){
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buffer, length, b.length);
+        length += b.length;
+    }
+
+    // writes the digits directly without creating a string
+    private void writeLong(long value){
+        if(value == Long.MIN_VALUE){
+            write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        ensureCapacity(20);
+        if(value < 0){
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while(value != 0);
+        // the digits were written in reverse order
+        for(int i = start, j = length - 1; i < j; i++, j--){
+            byte t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+    }
+
+    private void writeDouble(double value){
+        if(Double.isNaN(value)){
+            write(new byte[]{'N', 'a', 'N'});
+        } else if(Double.isInfinite(value)){
+            write((value < 0 ? "-Inf" : "+Inf").getBytes(StandardCharsets.US_ASCII));
+        } else if(value == (long) value && Math.abs(value) < 1e15){
+            writeLong((long) value);
+        } else {
+            write(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private static class Family {
+        private byte[] name;
+        private String type;
+        private byte[] header;
+        private List<Series> series = new ArrayList<>();
+
+        private Family(String name, String help, String type){
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.type = type;
+            this.header = ("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n"
+                    + "# TYPE " + name + " " + type + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Series {
+        private byte[] labels;
+        private LongSupplier longValue;
+        private DoubleSupplier doubleValue;
+        private Histogram histogram;
+        private byte[][] buckets;
+        private long[] counts;
+        private byte[] sumPrefix;
+        private byte[] countPrefix;
+
+        private Series(byte[] labels, LongSupplier longValue, DoubleSupplier doubleValue, Histogram histogram){
+            this.labels = labels;
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+            this.histogram = histogram;
+        }
+    }
+}
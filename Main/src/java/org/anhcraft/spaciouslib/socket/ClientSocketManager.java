@@ -3,7 +3,9 @@ package org.anhcraft.spaciouslib.socket;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.PushbackInputStream;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
@@ -24,7 +26,20 @@ public class ClientSocketManager extends SocketHandler {
      * @param requestHandler a handler for this client socket
      */
     public ClientSocketManager(String address, int port, ClientSocketHandler requestHandler){
+        this(address, port, requestHandler, false);
+    }
+
+    /**
+     * Creates a new client socket and starts a new thread for handling the requests.
+     * @param address the IP address or hostname of a socket server
+     * @param port the TCP/IP port which is listening by a socket server
+     * @param requestHandler a handler for this client socket
+     * @param framed true if the data is sent and read in frames, the server must use the same mode (see {@link #setFramed(boolean)})
+     */
+    public ClientSocketManager(String address, int port, ClientSocketHandler requestHandler, boolean framed){
         this.requestHandler = requestHandler;
+        setFramed(framed);
+        this.metrics = new SocketMetrics();
         try{
             server = new Socket(address, port);
         } catch(Exception e){
@@ -32,7 +47,7 @@ public class ClientSocketManager extends SocketHandler {
         }
         this.data = new ArrayList<>();
         try {
-            this.in = server.getInputStream();
+            this.in = new PushbackInputStream(server.getInputStream(), 1024);
             this.out = server.getOutputStream();
         } catch(IOException e) {
             e.printStackTrace();
@@ -66,15 +81,25 @@ public class ClientSocketManager extends SocketHandler {
     public void run() {
         try {
             while(!this.isStopped){
-                if(0 < this.in.available()) {
-                    byte[] data = new byte[1024];
-                    this.in.read(data);
+                byte[] data = read();
+                // null means a file was received
+                if(data != null) {
+                    long start = System.nanoTime();
                     this.requestHandler.response(this, data);
+                    this.metrics.handled(System.nanoTime() - start);
                     this.data.add(data);
                 }
             }
+        } catch(EOFException e) {
+            // the other side closed the connection
+            try {
+                close();
+            } catch(IOException ignored) { }
         } catch(IOException e) {
-            e.printStackTrace();
+            // the connection was closed by this side
+            if(!this.isStopped) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -0,0 +1,25 @@
+package org.anhcraft.spaciouslib.socket;
+
+import java.nio.file.Path;
+
+public interface FileTransferHandler {
+    /**
+     * This method will be called if the other side starts sending a file.<br>
+     * The content will be written into the returned file, starting at the given offset.
+     * @param connection the manager of the connection
+     * @param name the name of the sent file
+     * @param size the full size of the sent file
+     * @param offset the position where the transfer starts (0 if it isn't resumed)
+     * @return the file which the content will be written to, or null to discard the content
+     */
+    Path receive(SocketHandler connection, String name, long size, long offset);
+
+    /**
+     * This method will be called if a file was received completely.
+     * @param connection the manager of the connection
+     * @param name the name of the sent file
+     * @param file the file which the content was written to
+     * @param verified true if the checksum of the received file is same as the sent file
+     */
+    void complete(SocketHandler connection, String name, Path file, boolean verified);
+}
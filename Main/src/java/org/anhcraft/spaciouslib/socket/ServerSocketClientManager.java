@@ -3,11 +3,21 @@ package org.anhcraft.spaciouslib.socket;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.PushbackInputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class helps you to manage the connections between a server socket and a socket client.<br>
@@ -18,6 +28,11 @@ public class ServerSocketClientManager extends SocketHandler {
     private ServerSocketManager manager;
     private ServerSocketHandler requestHandler;
     private List<byte[]> data;
+    protected Set<String> topics = ConcurrentHashMap.newKeySet();
+    // the published data which hasn't been sent yet
+    private ConcurrentLinkedQueue<byte[]> outgoing = new ConcurrentLinkedQueue<>();
+    private AtomicLong queuedBytes = new AtomicLong();
+    private AtomicBoolean sending = new AtomicBoolean();
 
     /**
      * Gets the manager of this server socket
@@ -31,15 +46,23 @@ public class ServerSocketClientManager extends SocketHandler {
         this.requestHandler = requestHandler;
         this.manager = manager;
         this.client = client;
+        this.metrics = new SocketMetrics(manager.metrics);
         this.data = new ArrayList<>();
         try {
-            this.in = client.getInputStream();
+            this.in = new PushbackInputStream(client.getInputStream(), 1024);
             this.out = client.getOutputStream();
         } catch(IOException e) {
             e.printStackTrace();
         }
         this.isStopped = false;
-        this.start();
+    }
+
+    /**
+     * Gets the socket of this connection
+     * @return the socket
+     */
+    public Socket getSocket(){
+        return this.client;
     }
 
     /**
@@ -50,19 +73,122 @@ public class ServerSocketClientManager extends SocketHandler {
         return this.client.getInetAddress();
     }
 
+    /**
+     * Subscribes this client to the given topic
+     * @param topic the topic
+     */
+    public void subscribe(String topic){
+        this.manager.subscribe(this, topic);
+    }
+
+    /**
+     * Unsubscribes this client from the given topic
+     * @param topic the topic
+     */
+    public void unsubscribe(String topic){
+        this.manager.unsubscribe(this, topic);
+    }
+
+    /**
+     * Gets all topics which this client subscribed
+     * @return an unmodifiable set of topics
+     */
+    public Set<String> getTopics(){
+        return Collections.unmodifiableSet(this.topics);
+    }
+
+    @Override
+    public long getQueuedBytes(){
+        return this.queuedBytes.get();
+    }
+
+    /**
+     * Queues the given data, it is sent by a background thread of the server after the data which was queued before.<br>
+     * Unlike {@link #send(byte[])}, this method doesn't wait for the data to be sent, so a slow client can't block the caller.
+     * @param data an array of bytes
+     * @return false if the data was dropped because this client is closed or too slow (see {@link ServerSocketManager#setMaxQueuedBytes(long)})
+     */
+    public boolean queue(byte[] data){
+        return queue(data, this.manager.getPublisher(), this.manager.getMaxQueuedBytes());
+    }
+
+    /**
+     * Queues the given data, it is sent by the given executor after the data which was queued before
+     * @param data an array of bytes
+     * @param executor the executor
+     * @param maxQueuedBytes the maximum amount of bytes which can wait to be sent
+     * @return false if the data was dropped because this client is closed or too slow
+     */
+    boolean queue(byte[] data, Executor executor, long maxQueuedBytes){
+        if(this.isStopped){
+            return false;
+        }
+        if(maxQueuedBytes < queuedBytes.addAndGet(data.length)){
+            queuedBytes.addAndGet(-data.length);
+            return false;
+        }
+        outgoing.add(data);
+        if(sending.compareAndSet(false, true)){
+            try {
+                executor.execute(() -> sendQueue(executor));
+            } catch(RejectedExecutionException e) {
+                // the server is being closed
+                sending.set(false);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void sendQueue(Executor executor){
+        byte[] data;
+        while((data = outgoing.poll()) != null){
+            queuedBytes.addAndGet(-data.length);
+            if(this.isStopped){
+                continue;
+            }
+            try {
+                send(data);
+            } catch(IOException e) {
+                if(!this.isStopped){
+                    e.printStackTrace();
+                }
+            }
+        }
+        sending.set(false);
+        // the data which was queued while finishing is sent by another task
+        if(!outgoing.isEmpty() && sending.compareAndSet(false, true)){
+            try {
+                executor.execute(() -> sendQueue(executor));
+            } catch(RejectedExecutionException e) {
+                sending.set(false);
+            }
+        }
+    }
+
     @Override
     public void run() {
         try {
             while(!this.isStopped){
-                if(0 < this.in.available()) {
-                    byte[] data = new byte[1024];
-                    this.in.read(data);
+                byte[] data = read();
+                // null means a file was received
+                if(data != null) {
+                    long start = System.nanoTime();
                     this.requestHandler.request(this, data);
+                    this.metrics.handled(System.nanoTime() - start);
                     this.data.add(data);
                 }
             }
+        } catch(EOFException e) {
+            // the other side closed the connection
+            try {
+                close();
+            } catch(IOException ignored) { }
         } catch(IOException e) {
-            e.printStackTrace();
+            // the connection was closed by this side
+            if(!this.isStopped) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -85,14 +211,17 @@ public class ServerSocketClientManager extends SocketHandler {
         in.close();
         client.close();
         manager.clients.remove(this);
+        manager.unsubscribeAll(this);
+        outgoing.clear();
     }
 
     @Override
     public boolean equals(Object o){
         if(o != null && o.getClass() == this.getClass()){
             ServerSocketClientManager h = (ServerSocketClientManager) o;
+            // many connections can come from the same address, so the port is also compared
             return new EqualsBuilder()
-                    .append(h.client.getInetAddress(), this.client.getInetAddress())
+                    .append(h.client.getRemoteSocketAddress(), this.client.getRemoteSocketAddress())
                     .build();
         }
         return false;
@@ -100,7 +229,7 @@ public class ServerSocketClientManager extends SocketHandler {
 
     @Override
     public int hashCode(){
-        return new HashCodeBuilder(28, 12)
-                .append(this.client.getInetAddress()).toHashCode();
+        return new HashCodeBuilder(25, 13)
+                .append(this.client.getRemoteSocketAddress()).toHashCode();
     }
 }
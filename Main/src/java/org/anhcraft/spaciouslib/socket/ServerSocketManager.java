@@ -1,13 +1,25 @@
 package org.anhcraft.spaciouslib.socket;
 
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class helps you to manage the connections between a server socket and multiple socket clients.<br>
@@ -17,6 +29,13 @@ public class ServerSocketManager extends Thread {
     private ServerSocket socket;
     private ServerSocketHandler requestHandler;
     protected List<ServerSocketClientManager> clients;
+    protected ConcurrentHashMap<String, Set<ServerSocketClientManager>> subscriptions = new ConcurrentHashMap<>();
+    protected SocketMetrics metrics = new SocketMetrics();
+    // sends the published data, so a slow client doesn't block the publisher
+    private ExecutorService publisher;
+    private volatile long maxQueuedBytes = 8388608;
+    private volatile int maxConnections = Integer.MAX_VALUE;
+    private volatile boolean framed;
     private boolean isStopped;
 
     /**
@@ -25,10 +44,21 @@ public class ServerSocketManager extends Thread {
      * @param requestHandler a handler for the server socket
      */
     public ServerSocketManager(int port, ServerSocketHandler requestHandler){
+        this(null, port, requestHandler);
+    }
+
+    /**
+     * Creates a new server socket which only accepts the connections to the given address
+     * and starts a new thread for handling the requests.
+     * @param host the local address (e.g: "127.0.0.1" to only accept the connections from this machine), or null for all addresses
+     * @param port the TCP/IP port which is listening by this socket server
+     * @param requestHandler a handler for the server socket
+     */
+    public ServerSocketManager(String host, int port, ServerSocketHandler requestHandler){
         this.requestHandler = requestHandler;
-        clients = new ArrayList<>();
+        clients = new CopyOnWriteArrayList<>();
         try{
-            socket = new ServerSocket(port);
+            socket = new ServerSocket(port, 50, host == null ? null : InetAddress.getByName(host));
         } catch(Exception e){
             e.printStackTrace();
         }
@@ -47,6 +77,12 @@ public class ServerSocketManager extends Thread {
         }
         socket.close();
         clients.clear();
+        subscriptions.clear();
+        synchronized(this){
+            if(publisher != null){
+                publisher.shutdownNow();
+            }
+        }
     }
 
     /**
@@ -57,6 +93,223 @@ public class ServerSocketManager extends Thread {
         return this.clients;
     }
 
+    /**
+     * Gets the current statistics of this server.<br>
+     * They include the statistics of all connections which have been accepted by this server.
+     * @return the snapshot of the statistics
+     */
+    public SocketMetricsSnapshot getMetrics(){
+        long queueDepth = 0;
+        for(ServerSocketClientManager client : clients){
+            try {
+                queueDepth += client.getInput().available();
+            } catch(IOException ignored) { }
+        }
+        return this.metrics.snapshot(queueDepth, getQueuedBytes(), clients.size());
+    }
+
+    /**
+     * Gets the amount of queued bytes which haven't been sent to the clients yet
+     * @return the amount
+     */
+    public long getQueuedBytes(){
+        long bytes = 0;
+        for(ServerSocketClientManager client : clients){
+            bytes += client.getQueuedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Registers the statistics of this server to the given registry.<br>
+     * All metrics have the label "server" which is the given name.
+     * @param registry the registry
+     * @param name the name of this server
+     */
+    public void registerMetrics(MetricsRegistry registry, String name){
+        String[] labels = new String[]{"server", name};
+        registry.counter("spaciouslib_socket_received_bytes_total", "The amount of bytes which were received", labels, metrics::getBytesIn)
+                .counter("spaciouslib_socket_sent_bytes_total", "The amount of bytes which were sent", labels, metrics::getBytesOut)
+                .counter("spaciouslib_socket_received_messages_total", "The amount of messages which were received", labels, metrics::getMessagesIn)
+                .counter("spaciouslib_socket_sent_messages_total", "The amount of messages which were sent", labels, metrics::getMessagesOut)
+                .counter("spaciouslib_socket_accepted_connections_total", "The amount of connections which were accepted", labels, metrics::getAcceptedConnections)
+                .gauge("spaciouslib_socket_open_connections", "The amount of open connections", labels, () -> clients.size())
+                .gauge("spaciouslib_socket_queued_bytes", "The amount of queued bytes which haven't been sent yet", labels, this::getQueuedBytes)
+                .histogram("spaciouslib_socket_handler_duration_seconds", "The time which the handler took to handle a message", labels, metrics.getHandlerLatency());
+    }
+
+    /**
+     * Subscribes the given client to a topic.<br>
+     * After that, all data which is published on that topic will be sent to the client.
+     * @param client the manager of a client connection
+     * @param topic the topic
+     */
+    public void subscribe(ServerSocketClientManager client, String topic){
+        // the client is added atomically, otherwise an unsubscription could remove the set at the same time
+        subscriptions.compute(topic, (k, v) -> {
+            if(v == null){
+                v = ConcurrentHashMap.newKeySet();
+            }
+            v.add(client);
+            return v;
+        });
+        client.topics.add(topic);
+    }
+
+    /**
+     * Unsubscribes the given client from a topic
+     * @param client the manager of a client connection
+     * @param topic the topic
+     */
+    public void unsubscribe(ServerSocketClientManager client, String topic){
+        client.topics.remove(topic);
+        subscriptions.computeIfPresent(topic, (k, v) -> {
+            v.remove(client);
+            // removes the topic if nobody listens to it anymore
+            return v.isEmpty() ? null : v;
+        });
+    }
+
+    /**
+     * Unsubscribes the given client from all topics which it subscribed
+     * @param client the manager of a client connection
+     */
+    public void unsubscribeAll(ServerSocketClientManager client){
+        for(String topic : client.topics){
+            unsubscribe(client, topic);
+        }
+    }
+
+    /**
+     * Gets all clients which subscribed the given topic
+     * @param topic the topic
+     * @return an unmodifiable set of clients
+     */
+    public Set<ServerSocketClientManager> getSubscribers(String topic){
+        Set<ServerSocketClientManager> subscribers = subscriptions.get(topic);
+        return subscribers == null ? Collections.emptySet() : Collections.unmodifiableSet(subscribers);
+    }
+
+    /**
+     * Gets all topics which have at least one subscriber
+     * @return an unmodifiable set of topics
+     */
+    public Set<String> getTopics(){
+        return Collections.unmodifiableSet(subscriptions.keySet());
+    }
+
+    /**
+     * Sets the maximum amount of open connections.<br>
+     * The connections over the limit are closed immediately, before any thread is started for them.
+     * @param amount the amount
+     */
+    public void setMaxConnections(int amount){
+        this.maxConnections = amount;
+    }
+
+    /**
+     * Gets the maximum amount of open connections
+     * @return the amount
+     */
+    public int getMaxConnections(){
+        return this.maxConnections;
+    }
+
+    /**
+     * Sets whether the new connections send and read the data in frames (see {@link SocketHandler#setFramed(boolean)}).<br>
+     * The clients must use the same mode.
+     * @param framed true to use frames
+     */
+    public void setFramed(boolean framed){
+        this.framed = framed;
+    }
+
+    /**
+     * Checks whether the new connections send and read the data in frames
+     * @return true if yes
+     */
+    public boolean isFramed(){
+        return this.framed;
+    }
+
+    /**
+     * Closes a new connection which is over the limit of open connections
+     * @param client the socket of the connection
+     */
+    protected void reject(Socket client){
+        try {
+            client.close();
+        } catch(IOException ignored) { }
+    }
+
+    /**
+     * Sets the maximum amount of queued data (e.g: published data) which can wait to be sent to a client.<br>
+     * If a client is too slow to receive it, the new data isn't sent to that client.
+     * @param bytes the amount of bytes
+     */
+    public void setMaxQueuedBytes(long bytes){
+        this.maxQueuedBytes = bytes;
+    }
+
+    /**
+     * Gets the maximum amount of queued data which can wait to be sent to a client
+     * @return the amount of bytes
+     */
+    public long getMaxQueuedBytes(){
+        return this.maxQueuedBytes;
+    }
+
+    synchronized ExecutorService getPublisher(){
+        if(publisher == null){
+            AtomicInteger counter = new AtomicInteger();
+            // each client is sent by at most one thread at the same time, so the queue can't grow more than the clients
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "SpaciousLib publisher #" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            publisher = executor;
+        }
+        return publisher;
+    }
+
+    /**
+     * Publishes the given data on a topic.<br>
+     * The data will only be sent to the clients which subscribed that topic.<br>
+     * This method doesn't wait for the data to be sent, each client has a queue which is sent by a background thread
+     * in the order the data was published.
+     * @param topic the topic
+     * @param data an array of bytes
+     * @return the amount of clients which the data was queued for
+     */
+    public int publish(String topic, byte[] data){
+        Set<ServerSocketClientManager> subscribers = subscriptions.get(topic);
+        if(subscribers == null){
+            return 0;
+        }
+        ExecutorService publisher = getPublisher();
+        int sent = 0;
+        for(ServerSocketClientManager client : subscribers){
+            if(client.queue(data, publisher, maxQueuedBytes)){
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Publishes the given data on a topic.<br>
+     * The data will only be sent to the clients which subscribed that topic.
+     * @param topic the topic
+     * @param data a string
+     * @return the amount of clients which the data was queued for
+     */
+    public int publish(String topic, String data){
+        // encodes the data only once for all subscribers
+        return publish(topic, data.getBytes(StandardCharsets.UTF_8));
+    }
+
     @Override
     public void run() {
         try {
@@ -66,9 +319,20 @@ public class ServerSocketManager extends Thread {
                 }
                 Socket client = socket.accept();
                 if(client != null) {
+                    metrics.accepted();
+                    // checked before a thread is started for the connection
+                    if(maxConnections <= clients.size()){
+                        reject(client);
+                        continue;
+                    }
                     ServerSocketClientManager c = new ServerSocketClientManager(this, client, requestHandler);
-                    requestHandler.connect(c);
+                    c.setFramed(framed);
+                    // the client is added first, so it is removed again if the handler closes it
                     clients.add(c);
+                    requestHandler.connect(c);
+                    if(!c.isClosed()){
+                        c.start();
+                    }
                 }
             }
         } catch(Exception ignored){ }
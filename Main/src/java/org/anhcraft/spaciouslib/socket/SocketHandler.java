@@ -1,16 +1,52 @@
 package org.anhcraft.spaciouslib.socket;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
 
 public abstract class SocketHandler extends Thread {
-    protected boolean isStopped;
-    protected InputStream in;
+    // the first byte of every frame (see setFramed)
+    private static final int DATA_FRAME = 0;
+    private static final int FILE_FRAME = 1;
+    private static final int BUFFER_SIZE = 1024;
+
+    protected volatile boolean isStopped;
+    protected PushbackInputStream in;
     protected OutputStream out;
+    protected SocketMetrics metrics;
+    // the data may be sent from many threads at the same time (e.g: publishing on a topic)
+    private final Object sendLock = new Object();
+    private FileTransferHandler fileTransferHandler;
+    private volatile boolean framed;
+    // the bytes of the current data frame which haven't been read yet
+    private long frameRemaining;
+    // the bytes of the current file which have been received or skipped
+    private long fileReceived;
     public abstract void close() throws IOException;
 
+    /**
+     * Checks is this connection closed
+     * @return true if yes
+     */
+    public boolean isClosed(){
+        return this.isStopped;
+    }
+
     public OutputStream getOutput(){
         return this.out;
     }
@@ -19,13 +55,272 @@ public abstract class SocketHandler extends Thread {
         return this.in;
     }
 
+    /**
+     * Gets the current statistics of this connection
+     * @return the snapshot of the statistics
+     */
+    public SocketMetricsSnapshot getMetrics(){
+        long queueDepth = 0;
+        try {
+            queueDepth = this.in.available();
+        } catch(IOException ignored) { }
+        return this.metrics.snapshot(queueDepth, getQueuedBytes(), this.isStopped ? 0 : 1);
+    }
+
+    /**
+     * Gets the amount of queued bytes which haven't been sent yet
+     * @return the amount
+     */
+    public long getQueuedBytes(){
+        return 0;
+    }
+
     public void send(byte[] data) throws IOException {
-        this.out.write(data);
-        this.out.flush();
+        synchronized(this.sendLock) {
+            if(this.framed) {
+                writeFrameHeader(DATA_FRAME, data.length);
+            }
+            this.out.write(data);
+            this.out.flush();
+        }
+        this.metrics.sent(data.length);
     }
 
     public void send(String data) throws IOException {
-        this.out.write(data.getBytes(StandardCharsets.UTF_8));
-        this.out.flush();
+        send(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sets whether the data is sent and read in frames.<br>
+     * In this mode, each data has a header which tells its type and its length, so a file can be told apart
+     * from normal data. Both sides must use the same mode and it must be set before any data is sent
+     * (e.g: when the server accepts the connection, see {@link ServerSocketManager#setFramed(boolean)}).<br>
+     * By default, the data is sent as it is.
+     * @param framed true to use frames
+     */
+    public void setFramed(boolean framed){
+        this.framed = framed;
+    }
+
+    /**
+     * Checks whether the data is sent and read in frames (see {@link #setFramed(boolean)})
+     * @return true if yes
+     */
+    public boolean isFramed(){
+        return this.framed;
+    }
+
+    /**
+     * Sets the handler for receiving files from the other side.<br>
+     * Files can only be received if this connection uses frames (see {@link #setFramed(boolean)}).
+     * If there is no handler, all received files are discarded.
+     * @param handler a file transfer handler
+     */
+    public void setFileTransferHandler(FileTransferHandler handler){
+        this.fileTransferHandler = handler;
+    }
+
+    /**
+     * Sends the given file to the other side.<br>
+     * The file is streamed directly from the disk, so it won't be loaded into the memory.
+     * @param file the path of a file
+     */
+    public void sendFile(Path file) throws IOException {
+        sendFile(file, 0);
+    }
+
+    /**
+     * Sends the given file to the other side, starting at the given offset.<br>
+     * This method can be used to resume a transfer which was interrupted.
+     * @param file the path of a file
+     * @param offset the position where the transfer starts
+     * @throws IllegalStateException if this connection doesn't use frames (see {@link #setFramed(boolean)})
+     */
+    public void sendFile(Path file, long offset) throws IOException {
+        if(!this.framed) {
+            throw new IllegalStateException("Files can only be sent in frames");
+        }
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(offset < 0 || offset > size){
+                throw new IOException("The offset is out of the file: " + offset);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeByte(FILE_FRAME);
+            header.writeUTF(file.getFileName().toString());
+            header.writeLong(size);
+            header.writeLong(offset);
+            header.writeLong(checksum(channel, size));
+            send(bytes.toByteArray(), channel, offset, size - offset, false);
+        }
+    }
+
+    /**
+     * Sends the given data followed by a region of a file.<br>
+     * Unlike {@link #sendFile(Path)}, the content of the file is sent as raw data,
+     * it is streamed directly from the disk, so it won't be loaded into the memory.
+     * If this connection uses frames, the data and the region are sent as one frame.
+     * @param data an array of bytes which is sent before the file (e.g: a header)
+     * @param file the path of a file
+     * @param offset the position of the region
+     * @param length the length of the region
+     */
+    public void send(byte[] data, Path file, long offset, long length) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            send(data, channel, offset, length, this.framed);
+        }
+    }
+
+    private void send(byte[] data, FileChannel channel, long offset, long length, boolean frame) throws IOException {
+        synchronized(this.sendLock) {
+            if(frame) {
+                writeFrameHeader(DATA_FRAME, data.length + length);
+            }
+            this.out.write(data);
+            WritableByteChannel target = Channels.newChannel(this.out);
+            long position = offset;
+            long end = offset + length;
+            while(position < end) {
+                long sent = channel.transferTo(position, end - position, target);
+                if(sent <= 0) {
+                    throw new EOFException("The file was truncated while sending");
+                }
+                position += sent;
+            }
+            this.out.flush();
+        }
+        this.metrics.sent(data.length + length);
+    }
+
+    private void writeFrameHeader(int type, long length) throws IOException {
+        DataOutputStream header = new DataOutputStream(this.out);
+        header.writeByte(type);
+        header.writeLong(length);
+    }
+
+    /**
+     * Reads the next data which was sent by the other side, this method blocks until the data is available.<br>
+     * If that is a file, it will be received by the file transfer handler and this method returns null.
+     * @return an array of bytes which has the same length as the received data
+     * @throws EOFException if the other side closed the connection
+     */
+    protected byte[] read() throws IOException {
+        if(this.framed) {
+            return readFrame();
+        }
+        byte[] data = new byte[BUFFER_SIZE];
+        int length = this.in.read(data);
+        if(length < 0) {
+            throw new EOFException();
+        }
+        this.metrics.received(length);
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    // a big data frame is read in parts
+    private byte[] readFrame() throws IOException {
+        DataInputStream input = new DataInputStream(this.in);
+        if(this.frameRemaining == 0) {
+            int type = this.in.read();
+            if(type < 0) {
+                throw new EOFException();
+            }
+            if(type == FILE_FRAME) {
+                receiveFile(input);
+                return null;
+            }
+            if(type != DATA_FRAME) {
+                throw new IOException("Unknown frame type: " + type);
+            }
+            long length = input.readLong();
+            if(length < 0) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            this.frameRemaining = length;
+        }
+        byte[] data = new byte[(int) Math.min(BUFFER_SIZE, this.frameRemaining)];
+        input.readFully(data);
+        this.frameRemaining -= data.length;
+        this.metrics.received(data.length);
+        return data;
+    }
+
+    private void receiveFile(DataInputStream header) throws IOException {
+        String name = header.readUTF();
+        long size = header.readLong();
+        long offset = header.readLong();
+        long checksum = header.readLong();
+        if(offset < 0 || size < offset) {
+            throw new IOException("Invalid file frame: " + name);
+        }
+
+        this.fileReceived = 0;
+        try {
+            receiveFile(name, size, offset, checksum);
+        } finally {
+            // only the content which was actually transferred is counted
+            this.metrics.received(this.fileReceived);
+        }
+    }
+
+    private void receiveFile(String name, long size, long offset, long checksum) throws IOException {
+        long length = size - offset;
+        FileTransferHandler handler = this.fileTransferHandler;
+        Path file = handler == null ? null : handler.receive(this, name, size, offset);
+        if(file == null) {
+            skip(length);
+            return;
+        }
+        boolean verified;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // a transfer can't be resumed if the previous part is missing
+            if(channel.size() < offset) {
+                skip(length);
+                handler.complete(this, name, file, false);
+                return;
+            }
+            ReadableByteChannel source = Channels.newChannel(this.in);
+            long position = offset;
+            while(position < size) {
+                long received = channel.transferFrom(source, position, size - position);
+                if(received <= 0) {
+                    throw new EOFException("The connection was closed while receiving: " + name);
+                }
+                position += received;
+                this.fileReceived += received;
+            }
+            channel.truncate(size);
+            verified = checksum(channel, size) == checksum;
+        }
+        handler.complete(this, name, file, verified);
+    }
+
+    private void skip(long length) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while(0 < length) {
+            int n = this.in.read(buffer, 0, (int) Math.min(buffer.length, length));
+            if(n < 0) {
+                throw new EOFException();
+            }
+            length -= n;
+            this.fileReceived += n;
+        }
+    }
+
+    private static long checksum(FileChannel channel, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = 0;
+        while(position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if(n < 0) {
+                break;
+            }
+            crc.update(buffer.array(), 0, n);
+            position += n;
+        }
+        return crc.getValue();
     }
-}
\ No newline at end of file
+}
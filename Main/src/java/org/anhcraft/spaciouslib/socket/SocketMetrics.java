@@ -0,0 +1,176 @@
+package org.anhcraft.spaciouslib.socket;
+
+import org.anhcraft.spaciouslib.utils.Histogram;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A class collects the statistics of a socket connection or a socket server.<br>
+ * The statistics of a connection are also added to the statistics of its server.
+ */
+public class SocketMetrics {
+    // the window of the accept rate (in seconds)
+    private static final int RATE_WINDOW = 60;
+
+    private SocketMetrics parent;
+    private LongAdder bytesIn = new LongAdder();
+    private LongAdder bytesOut = new LongAdder();
+    private LongAdder messagesIn = new LongAdder();
+    private LongAdder messagesOut = new LongAdder();
+    private LongAdder accepted = new LongAdder();
+    private Histogram handlerLatency = new Histogram();
+    // the amount of accepted connections in each second of the window
+    private AtomicLongArray acceptSlots = new AtomicLongArray(RATE_WINDOW);
+    private AtomicLongArray acceptSlotTimes = new AtomicLongArray(RATE_WINDOW);
+
+    /**
+     * Creates a new SocketMetrics instance
+     */
+    public SocketMetrics(){ }
+
+    /**
+     * Creates a new SocketMetrics instance
+     * @param parent the metrics which all statistics will also be added to
+     */
+    public SocketMetrics(SocketMetrics parent){
+        this.parent = parent;
+    }
+
+    /**
+     * Records a received message
+     * @param bytes the size of the message
+     */
+    public void received(long bytes){
+        bytesIn.add(bytes);
+        messagesIn.increment();
+        if(parent != null){
+            parent.received(bytes);
+        }
+    }
+
+    /**
+     * Records a sent message
+     * @param bytes the size of the message
+     */
+    public void sent(long bytes){
+        bytesOut.add(bytes);
+        messagesOut.increment();
+        if(parent != null){
+            parent.sent(bytes);
+        }
+    }
+
+    /**
+     * Records the time which a handler took to handle a message
+     * @param nanos the duration in nanoseconds
+     */
+    public void handled(long nanos){
+        handlerLatency.record(nanos);
+        if(parent != null){
+            parent.handled(nanos);
+        }
+    }
+
+    /**
+     * Records an accepted connection
+     */
+    public void accepted(){
+        accepted.increment();
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % RATE_WINDOW);
+        long time = acceptSlotTimes.get(slot);
+        if(time != second && acceptSlotTimes.compareAndSet(slot, time, second)){
+            acceptSlots.set(slot, 0);
+        }
+        acceptSlots.incrementAndGet(slot);
+        if(parent != null){
+            parent.accepted();
+        }
+    }
+
+    /**
+     * Gets the average amount of accepted connections per second in the last minute
+     * @return the accept rate
+     */
+    public double getAcceptRate(){
+        long second = System.currentTimeMillis() / 1000;
+        long total = 0;
+        for(int i = 0; i < RATE_WINDOW; i++){
+            if(second - RATE_WINDOW < acceptSlotTimes.get(i)){
+                total += acceptSlots.get(i);
+            }
+        }
+        return total / (double) RATE_WINDOW;
+    }
+
+    /**
+     * Gets the amount of received bytes
+     * @return the amount
+     */
+    public long getBytesIn(){
+        return this.bytesIn.sum();
+    }
+
+    /**
+     * Gets the amount of sent bytes
+     * @return the amount
+     */
+    public long getBytesOut(){
+        return this.bytesOut.sum();
+    }
+
+    /**
+     * Gets the amount of received messages
+     * @return the amount
+     */
+    public long getMessagesIn(){
+        return this.messagesIn.sum();
+    }
+
+    /**
+     * Gets the amount of sent messages
+     * @return the amount
+     */
+    public long getMessagesOut(){
+        return this.messagesOut.sum();
+    }
+
+    /**
+     * Gets the amount of accepted connections
+     * @return the amount
+     */
+    public long getAcceptedConnections(){
+        return this.accepted.sum();
+    }
+
+    /**
+     * Gets the live histogram of the time which handlers took to handle messages
+     * @return the histogram
+     */
+    public Histogram getHandlerLatency(){
+        return this.handlerLatency;
+    }
+
+    /**
+     * Takes a snapshot of the current statistics
+     * @param queueDepth the amount of bytes which are waiting to be read
+     * @param openConnections the amount of open connections
+     * @return the snapshot
+     */
+    public SocketMetricsSnapshot snapshot(long queueDepth, int openConnections){
+        return snapshot(queueDepth, 0, openConnections);
+    }
+
+    /**
+     * Takes a snapshot of the current statistics
+     * @param queueDepth the amount of bytes which are waiting to be read
+     * @param queuedBytes the amount of bytes which are waiting to be sent
+     * @param openConnections the amount of open connections
+     * @return the snapshot
+     */
+    public SocketMetricsSnapshot snapshot(long queueDepth, long queuedBytes, int openConnections){
+        return new SocketMetricsSnapshot(bytesIn.sum(), bytesOut.sum(), messagesIn.sum(), messagesOut.sum(),
+                queueDepth, queuedBytes, handlerLatency.snapshot(), accepted.sum(), getAcceptRate(), openConnections);
+    }
+}
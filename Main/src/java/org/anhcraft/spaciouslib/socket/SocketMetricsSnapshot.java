@@ -0,0 +1,157 @@
+package org.anhcraft.spaciouslib.socket;
+
+import org.anhcraft.spaciouslib.utils.Histogram;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+/**
+ * The statistics of a socket connection or a socket server at a specific time.<br>
+ * The received data which waits to be read ({@link #getQueueDepth()}) and the queued data which waits to be sent
+ * ({@link #getQueuedBytes()}) are counted separately.
+ */
+public class SocketMetricsSnapshot {
+    private long bytesIn;
+    private long bytesOut;
+    private long messagesIn;
+    private long messagesOut;
+    private long queueDepth;
+    private long queuedBytes;
+    private Histogram handlerLatency;
+    private long acceptedConnections;
+    private double acceptRate;
+    private int openConnections;
+    private long time;
+
+    protected SocketMetricsSnapshot(long bytesIn, long bytesOut, long messagesIn, long messagesOut, long queueDepth, long queuedBytes, Histogram handlerLatency, long acceptedConnections, double acceptRate, int openConnections){
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.messagesIn = messagesIn;
+        this.messagesOut = messagesOut;
+        this.queueDepth = queueDepth;
+        this.queuedBytes = queuedBytes;
+        this.handlerLatency = handlerLatency;
+        this.acceptedConnections = acceptedConnections;
+        this.acceptRate = acceptRate;
+        this.openConnections = openConnections;
+        this.time = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the amount of received bytes
+     * @return the amount
+     */
+    public long getBytesIn(){
+        return this.bytesIn;
+    }
+
+    /**
+     * Gets the amount of sent bytes
+     * @return the amount
+     */
+    public long getBytesOut(){
+        return this.bytesOut;
+    }
+
+    /**
+     * Gets the amount of received messages
+     * @return the amount
+     */
+    public long getMessagesIn(){
+        return this.messagesIn;
+    }
+
+    /**
+     * Gets the amount of sent messages
+     * @return the amount
+     */
+    public long getMessagesOut(){
+        return this.messagesOut;
+    }
+
+    /**
+     * Gets the amount of received bytes which are waiting to be read.<br>
+     * The bytes which are waiting to be sent aren't included (see {@link #getQueuedBytes()}).
+     * @return the amount
+     */
+    public long getQueueDepth(){
+        return this.queueDepth;
+    }
+
+    /**
+     * Gets the amount of queued bytes which are waiting to be sent (e.g: published data which a slow client hasn't received yet)
+     * @return the amount
+     */
+    public long getQueuedBytes(){
+        return this.queuedBytes;
+    }
+
+    /**
+     * Gets the histogram of the time which handlers took to handle messages
+     * @return the histogram
+     */
+    public Histogram getHandlerLatency(){
+        return this.handlerLatency;
+    }
+
+    /**
+     * Gets the amount of accepted connections since the server started
+     * @return the amount
+     */
+    public long getAcceptedConnections(){
+        return this.acceptedConnections;
+    }
+
+    /**
+     * Gets the average amount of accepted connections per second in the last minute
+     * @return the accept rate
+     */
+    public double getAcceptRate(){
+        return this.acceptRate;
+    }
+
+    /**
+     * Gets the amount of open connections
+     * @return the amount
+     */
+    public int getOpenConnections(){
+        return this.openConnections;
+    }
+
+    /**
+     * Gets the time when this snapshot was taken
+     * @return the time in milliseconds
+     */
+    public long getTime(){
+        return this.time;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(o != null && o.getClass() == this.getClass()){
+            SocketMetricsSnapshot s = (SocketMetricsSnapshot) o;
+            return new EqualsBuilder()
+                    .append(s.bytesIn, this.bytesIn)
+                    .append(s.bytesOut, this.bytesOut)
+                    .append(s.messagesIn, this.messagesIn)
+                    .append(s.messagesOut, this.messagesOut)
+                    .append(s.queueDepth, this.queueDepth)
+                    .append(s.queuedBytes, this.queuedBytes)
+                    .append(s.handlerLatency, this.handlerLatency)
+                    .append(s.acceptedConnections, this.acceptedConnections)
+                    .append(s.openConnections, this.openConnections)
+                    .append(s.time, this.time)
+                    .build();
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode(){
+        return new HashCodeBuilder(33, 21)
+                .append(this.bytesIn).append(this.bytesOut)
+                .append(this.messagesIn).append(this.messagesOut)
+                .append(this.queueDepth).append(this.queuedBytes).append(this.handlerLatency)
+                .append(this.acceptedConnections).append(this.openConnections)
+                .append(this.time).toHashCode();
+    }
+}
@@ -0,0 +1,172 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stream of Server-Sent Events which was opened by {@link ServerSentEvents}.<br>
+ * All methods which send events are thread-safe.
+ */
+public class EventStream {
+    private ServerSentEvents endpoint;
+    private HTTPRequestReader request;
+    private HTTPConnection connection;
+    private volatile boolean closed;
+    private volatile long lastSent = System.currentTimeMillis();
+
+    EventStream(ServerSentEvents endpoint, HTTPRequestReader request){
+        this.endpoint = endpoint;
+        this.request = request;
+    }
+
+    /**
+     * Gets the request which opened this stream
+     * @return the request
+     */
+    public HTTPRequestReader getRequest(){
+        return this.request;
+    }
+
+    /**
+     * Gets the identifier of the last event which the client received before it reconnected
+     * @return the identifier, or null if the client didn't reconnect
+     */
+    public String getLastEventId(){
+        return this.request.getField("Last-Event-ID");
+    }
+
+    /**
+     * Gets the manager of the underlying connection
+     * @return the manager of the connection
+     */
+    public ServerSocketClientManager getClient(){
+        return this.connection.getClient();
+    }
+
+    /**
+     * Checks is this stream open
+     * @return true if yes
+     */
+    public boolean isOpen(){
+        return !this.closed && !this.connection.isClosed();
+    }
+
+    /**
+     * Sends an event without a name (the "message" event of browsers)
+     * @param data the data
+     */
+    public void send(String data) throws IOException {
+        send(null, data, null);
+    }
+
+    /**
+     * Sends an event
+     * @param event the name of the event
+     * @param data the data
+     */
+    public void send(String event, String data) throws IOException {
+        send(event, data, null);
+    }
+
+    /**
+     * Sends an event
+     * @param event the name of the event, or null
+     * @param data the data
+     * @param id the identifier of the event, or null
+     */
+    public void send(String event, String data, String id) throws IOException {
+        sendRaw(encode(event, data, id));
+    }
+
+    /**
+     * Closes this stream
+     */
+    public void close(){
+        connection.close();
+    }
+
+    // doesn't wait for the data to be sent, returns false if it was dropped
+    boolean queueRaw(byte[] data){
+        if(closed || !connection.getClient().queue(data)){
+            return false;
+        }
+        lastSent = System.currentTimeMillis();
+        return true;
+    }
+
+    void sendRaw(byte[] data) throws IOException {
+        if(closed){
+            throw new IOException("The stream was closed");
+        }
+        try {
+            connection.getClient().send(data);
+            lastSent = System.currentTimeMillis();
+        } catch(IOException e){
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Encodes an event
+     * @param event the name of the event, or null
+     * @param data the data
+     * @param id the identifier of the event, or null
+     * @return the encoded event
+     */
+    static byte[] encode(String event, String data, String id){
+        StringBuilder str = new StringBuilder(data.length() + 32);
+        if(event != null){
+            str.append("event: ").append(event).append('\n');
+        }
+        if(id != null){
+            str.append("id: ").append(id).append('\n');
+        }
+        // each line of the data needs its own field
+        int start = 0;
+        while(true){
+            int end = data.indexOf('\n', start);
+            str.append("data: ").append(data, start, end < 0 ? data.length() : end).append('\n');
+            if(end < 0){
+                break;
+            }
+            start = end + 1;
+        }
+        str.append('\n');
+        return str.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    final HTTPUpgrade upgrade = new HTTPUpgrade() {
+        @Override
+        public void open(HTTPConnection connection){
+            EventStream.this.connection = connection;
+            endpoint.open(EventStream.this);
+        }
+
+        @Override
+        public void receive(ByteBuffer data){
+            // the client doesn't send anything through the stream
+            data.position(data.limit());
+        }
+
+        @Override
+        public void checkTimeout(long now){
+            long interval = endpoint.getHeartbeatInterval() * 1000L;
+            if(0 < interval && interval < now - lastSent){
+                try {
+                    // a comment keeps the connection alive and detects the clients which are gone
+                    sendRaw(new byte[]{':', '\n', '\n'});
+                } catch(IOException ignored) { }
+            }
+        }
+
+        @Override
+        public void closed(){
+            closed = true;
+            endpoint.remove(EventStream.this);
+        }
+    };
+}
@@ -0,0 +1,389 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * The header compression of HTTP/2 (HPACK, RFC 7541).<br>
+ * This class contains the static table, the Huffman code, the primitive types and the dynamic table
+ * which are shared by {@link HPACKEncoder} and {@link HPACKDecoder}.
+ */
+final class HPACK {
+    /**
+     * The static table, the first entry has the index 1
+     */
+    static final String[][] STATIC_TABLE = {
+            null,
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""}
+    };
+
+    private static final int[] HUFFMAN_CODES = {
+            0x1ff8, 0x7fffd8, 0xfffffe2, 0xfffffe3, 0xfffffe4, 0xfffffe5, 0xfffffe6, 0xfffffe7,
+            0xfffffe8, 0xffffea, 0x3ffffffc, 0xfffffe9, 0xfffffea, 0x3ffffffd, 0xfffffeb, 0xfffffec,
+            0xfffffed, 0xfffffee, 0xfffffef, 0xffffff0, 0xffffff1, 0xffffff2, 0x3ffffffe, 0xffffff3,
+            0xffffff4, 0xffffff5, 0xffffff6, 0xffffff7, 0xffffff8, 0xffffff9, 0xffffffa, 0xffffffb,
+            0x14, 0x3f8, 0x3f9, 0xffa, 0x1ff9, 0x15, 0xf8, 0x7fa,
+            0x3fa, 0x3fb, 0xf9, 0x7fb, 0xfa, 0x16, 0x17, 0x18,
+            0x0, 0x1, 0x2, 0x19, 0x1a, 0x1b, 0x1c, 0x1d,
+            0x1e, 0x1f, 0x5c, 0xfb, 0x7ffc, 0x20, 0xffb, 0x3fc,
+            0x1ffa, 0x21, 0x5d, 0x5e, 0x5f, 0x60, 0x61, 0x62,
+            0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x6b, 0x6c, 0x6d, 0x6e, 0x6f, 0x70, 0x71, 0x72,
+            0xfc, 0x73, 0xfd, 0x1ffb, 0x7fff0, 0x1ffc, 0x3ffc, 0x22,
+            0x7ffd, 0x3, 0x23, 0x4, 0x24, 0x5, 0x25, 0x26,
+            0x27, 0x6, 0x74, 0x75, 0x28, 0x29, 0x2a, 0x7,
+            0x2b, 0x76, 0x2c, 0x8, 0x9, 0x2d, 0x77, 0x78,
+            0x79, 0x7a, 0x7b, 0x7ffe, 0x7fc, 0x3ffd, 0x1ffd, 0xffffffc,
+            0xfffe6, 0x3fffd2, 0xfffe7, 0xfffe8, 0x3fffd3, 0x3fffd4, 0x3fffd5, 0x7fffd9,
+            0x3fffd6, 0x7fffda, 0x7fffdb, 0x7fffdc, 0x7fffdd, 0x7fffde, 0xffffeb, 0x7fffdf,
+            0xffffec, 0xffffed, 0x3fffd7, 0x7fffe0, 0xffffee, 0x7fffe1, 0x7fffe2, 0x7fffe3,
+            0x7fffe4, 0x1fffdc, 0x3fffd8, 0x7fffe5, 0x3fffd9, 0x7fffe6, 0x7fffe7, 0xffffef,
+            0x3fffda, 0x1fffdd, 0xfffe9, 0x3fffdb, 0x3fffdc, 0x7fffe8, 0x7fffe9, 0x1fffde,
+            0x7fffea, 0x3fffdd, 0x3fffde, 0xfffff0, 0x1fffdf, 0x3fffdf, 0x7fffeb, 0x7fffec,
+            0x1fffe0, 0x1fffe1, 0x3fffe0, 0x1fffe2, 0x7fffed, 0x3fffe1, 0x7fffee, 0x7fffef,
+            0xfffea, 0x3fffe2, 0x3fffe3, 0x3fffe4, 0x7ffff0, 0x3fffe5, 0x3fffe6, 0x7ffff1,
+            0x3ffffe0, 0x3ffffe1, 0xfffeb, 0x7fff1, 0x3fffe7, 0x7ffff2, 0x3fffe8, 0x1ffffec,
+            0x3ffffe2, 0x3ffffe3, 0x3ffffe4, 0x7ffffde, 0x7ffffdf, 0x3ffffe5, 0xfffff1, 0x1ffffed,
+            0x7fff2, 0x1fffe3, 0x3ffffe6, 0x7ffffe0, 0x7ffffe1, 0x3ffffe7, 0x7ffffe2, 0xfffff2,
+            0x1fffe4, 0x1fffe5, 0x3ffffe8, 0x3ffffe9, 0xffffffd, 0x7ffffe3, 0x7ffffe4, 0x7ffffe5,
+            0xfffec, 0xfffff3, 0xfffed, 0x1fffe6, 0x3fffe9, 0x1fffe7, 0x1fffe8, 0x7ffff3,
+            0x3fffea, 0x3fffeb, 0x1ffffee, 0x1ffffef, 0xfffff4, 0xfffff5, 0x3ffffea, 0x7ffff4,
+            0x3ffffeb, 0x7ffffe6, 0x3ffffec, 0x3ffffed, 0x7ffffe7, 0x7ffffe8, 0x7ffffe9, 0x7ffffea,
+            0x7ffffeb, 0xffffffe, 0x7ffffec, 0x7ffffed, 0x7ffffee, 0x7ffffef, 0x7fffff0, 0x3ffffee
+    };
+
+    private static final byte[] HUFFMAN_LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26
+    };
+
+    // the static table as bytes, so the decoder doesn't need to encode the strings again
+    private static final byte[][] STATIC_NAMES = new byte[STATIC_TABLE.length][];
+    private static final byte[][] STATIC_VALUES = new byte[STATIC_TABLE.length][];
+    // the index of the first entry which has the given name, and of the entry which has the given name and value
+    private static final HashMap<String, Integer> STATIC_NAME_INDEX = new HashMap<>();
+    private static final HashMap<String, Integer> STATIC_FIELD_INDEX = new HashMap<>();
+    // the Huffman code as a binary tree, each node has two children
+    // a positive child is the index of another node, a negative child is a leaf which contains (-1 - symbol)
+    private static final int[] HUFFMAN_TREE;
+
+    static {
+        for(int i = 1; i < STATIC_TABLE.length; i++){
+            STATIC_NAMES[i] = STATIC_TABLE[i][0].getBytes(StandardCharsets.ISO_8859_1);
+            STATIC_VALUES[i] = STATIC_TABLE[i][1].getBytes(StandardCharsets.ISO_8859_1);
+            STATIC_NAME_INDEX.putIfAbsent(STATIC_TABLE[i][0], i);
+            if(!STATIC_TABLE[i][1].isEmpty()){
+                STATIC_FIELD_INDEX.put(STATIC_TABLE[i][0] + '\0' + STATIC_TABLE[i][1], i);
+            }
+        }
+        // a complete binary tree with 257 leaves has 256 inner nodes
+        int[] tree = new int[256 * 2];
+        int nodes = 1;
+        for(int symbol = 0; symbol <= 256; symbol++){
+            int code = symbol == 256 ? 0x3fffffff : HUFFMAN_CODES[symbol];
+            int length = symbol == 256 ? 30 : HUFFMAN_LENGTHS[symbol];
+            int node = 0;
+            for(int i = length - 1; 0 < i; i--){
+                int child = node * 2 + ((code >>> i) & 1);
+                if(tree[child] == 0){
+                    tree[child] = nodes++;
+                }
+                node = tree[child];
+            }
+            tree[node * 2 + (code & 1)] = -1 - symbol;
+        }
+        HUFFMAN_TREE = tree;
+    }
+
+    private HPACK(){ }
+
+    /**
+     * Gets the index of the static entry which has the given name and value
+     * @param name the name
+     * @param value the value
+     * @return the index, or 0 if there is no such entry
+     */
+    static int getStaticIndex(String name, String value){
+        Integer index = STATIC_FIELD_INDEX.get(name + '\0' + value);
+        return index == null ? 0 : index;
+    }
+
+    /**
+     * Gets the index of the first static entry which has the given name
+     * @param name the name
+     * @return the index, or 0 if there is no such entry
+     */
+    static int getStaticNameIndex(String name){
+        Integer index = STATIC_NAME_INDEX.get(name);
+        return index == null ? 0 : index;
+    }
+
+    static byte[] getStaticName(int index){
+        return STATIC_NAMES[index];
+    }
+
+    static byte[] getStaticValue(int index){
+        return STATIC_VALUES[index];
+    }
+
+    /**
+     * Writes an integer which starts with a prefix of the given amount of bits (RFC 7541, section 5.1)
+     * @param out the output
+     * @param flags the bits before the prefix in the first byte
+     * @param prefixBits the size of the prefix
+     * @param value the integer
+     */
+    static void writeInteger(ByteArrayOutputStream out, int flags, int prefixBits, int value){
+        int max = (1 << prefixBits) - 1;
+        if(value < max){
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | max);
+        value -= max;
+        while(128 <= value){
+            out.write((value & 127) | 128);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Writes a string literal, it is encoded by the Huffman code if that makes it shorter
+     * @param out the output
+     * @param str the string
+     */
+    static void writeString(ByteArrayOutputStream out, byte[] str){
+        long bits = 0;
+        for(byte b : str){
+            bits += HUFFMAN_LENGTHS[b & 255];
+        }
+        int length = (int) ((bits + 7) / 8);
+        if(str.length <= length){
+            writeInteger(out, 0, 7, str.length);
+            out.write(str, 0, str.length);
+            return;
+        }
+        writeInteger(out, 128, 7, length);
+        long current = 0;
+        int count = 0;
+        for(byte b : str){
+            int symbol = b & 255;
+            current = (current << HUFFMAN_LENGTHS[symbol]) | HUFFMAN_CODES[symbol];
+            count += HUFFMAN_LENGTHS[symbol];
+            while(8 <= count){
+                count -= 8;
+                out.write((int) (current >>> count));
+            }
+        }
+        if(0 < count){
+            // the padding is the most significant bits of the EOS symbol
+            out.write((int) ((current << (8 - count)) | (255 >>> count)));
+        }
+    }
+
+    /**
+     * Decodes a string which was encoded by the Huffman code
+     * @param data the data
+     * @param offset the position of the string
+     * @param length the length of the string
+     * @return the decoded string
+     * @throws HTTP2Exception if the string is invalid
+     */
+    static byte[] decodeHuffman(byte[] data, int offset, int length) throws HTTP2Exception {
+        // the shortest code has 5 bits
+        byte[] out = new byte[length * 8 / 5 + 1];
+        int size = 0;
+        int node = 0;
+        int depth = 0;
+        // true if all bits since the last symbol were 1
+        boolean ones = true;
+        for(int i = offset; i < offset + length; i++){
+            for(int bit = 7; 0 <= bit; bit--){
+                int b = (data[i] >>> bit) & 1;
+                int child = HUFFMAN_TREE[node * 2 + b];
+                depth++;
+                ones &= b == 1;
+                if(child < 0){
+                    int symbol = -1 - child;
+                    if(symbol == 256){
+                        throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, 0, "The EOS symbol is in a string");
+                    }
+                    out[size++] = (byte) symbol;
+                    node = 0;
+                    depth = 0;
+                    ones = true;
+                } else {
+                    node = child;
+                }
+            }
+        }
+        // the padding must be shorter than 8 bits and consist of 1 only
+        if(7 < depth || !ones){
+            throw new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, 0, "Invalid padding of a Huffman-encoded string");
+        }
+        byte[] result = new byte[size];
+        System.arraycopy(out, 0, result, 0, size);
+        return result;
+    }
+
+    /**
+     * The dynamic table, the newest entry has the lowest index
+     */
+    static class DynamicTable {
+        private byte[][] names = new byte[16][];
+        private byte[][] values = new byte[16][];
+        // the position of the newest entry in the ring buffer
+        private int head;
+        private int count;
+        private int size;
+        private int maxSize;
+
+        DynamicTable(int maxSize){
+            this.maxSize = maxSize;
+        }
+
+        int getCount(){
+            return this.count;
+        }
+
+        int getMaxSize(){
+            return this.maxSize;
+        }
+
+        /**
+         * Gets the name of an entry
+         * @param index the index in the dynamic table, starts from 0
+         * @return the name
+         */
+        byte[] getName(int index){
+            return names[(head + index) & (names.length - 1)];
+        }
+
+        /**
+         * Gets the value of an entry
+         * @param index the index in the dynamic table, starts from 0
+         * @return the value
+         */
+        byte[] getValue(int index){
+            return values[(head + index) & (names.length - 1)];
+        }
+
+        void setMaxSize(int maxSize){
+            this.maxSize = maxSize;
+            evict(0);
+        }
+
+        void add(byte[] name, byte[] value){
+            int entrySize = name.length + value.length + 32;
+            if(maxSize < entrySize){
+                // an entry which is bigger than the table empties it
+                evict(maxSize);
+                return;
+            }
+            evict(entrySize);
+            if(count == names.length){
+                byte[][] newNames = new byte[names.length * 2][];
+                byte[][] newValues = new byte[names.length * 2][];
+                for(int i = 0; i < count; i++){
+                    newNames[i] = getName(i);
+                    newValues[i] = getValue(i);
+                }
+                names = newNames;
+                values = newValues;
+                head = 0;
+            }
+            head = (head - 1) & (names.length - 1);
+            names[head] = name;
+            values[head] = value;
+            count++;
+            size += entrySize;
+        }
+
+        // removes the oldest entries until the given amount of space is free
+        private void evict(int space){
+            while(0 < count && maxSize - space < size){
+                int last = (head + count - 1) & (names.length - 1);
+                size -= names[last].length + values[last].length + 32;
+                names[last] = null;
+                values[last] = null;
+                count--;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the header blocks which were received through an HTTP/2 connection.<br>
+ * A connection has one decoder, the blocks must be decoded in the order they were received
+ * since each of them may change the dynamic table.
+ */
+class HPACKDecoder {
+    private HPACK.DynamicTable table;
+    // the limit which was announced to the peer by SETTINGS_HEADER_TABLE_SIZE
+    private int maxTableSize;
+    private byte[] data;
+    private int position;
+    private int end;
+
+    /**
+     * Creates a new HPACKDecoder instance
+     * @param maxTableSize the maximum size of the dynamic table
+     */
+    HPACKDecoder(int maxTableSize){
+        this.maxTableSize = maxTableSize;
+        this.table = new HPACK.DynamicTable(maxTableSize);
+    }
+
+    /**
+     * Decodes a header block
+     * @param block the data
+     * @param offset the position of the block
+     * @param length the length of the block
+     * @return the names and the values of the header fields one after another
+     * @throws HTTP2Exception if the block is invalid, the connection can't be used anymore
+     */
+    List<byte[]> decode(byte[] block, int offset, int length) throws HTTP2Exception {
+        List<byte[]> fields = new ArrayList<>();
+        data = block;
+        position = offset;
+        end = offset + length;
+        boolean first = true;
+        try {
+            while(position < end){
+                int b = data[position] & 255;
+                if((b & 128) != 0){
+                    // indexed header field
+                    int index = readInteger(7);
+                    fields.add(getName(index));
+                    fields.add(getValue(index));
+                } else if((b & 64) != 0){
+                    // literal header field with incremental indexing
+                    byte[] name = readName(6);
+                    byte[] value = readString();
+                    table.add(name, value);
+                    fields.add(name);
+                    fields.add(value);
+                } else if((b & 32) != 0){
+                    // dynamic table size update, it is only allowed at the beginning of a block
+                    if(!first){
+                        throw error("A dynamic table size update is after a header field");
+                    }
+                    int size = readInteger(5);
+                    if(maxTableSize < size){
+                        throw error("The dynamic table size exceeds the limit");
+                    }
+                    table.setMaxSize(size);
+                    continue;
+                } else {
+                    // literal header field without indexing or never indexed
+                    fields.add(readName(4));
+                    fields.add(readString());
+                }
+                first = false;
+            }
+        } finally {
+            data = null;
+        }
+        return fields;
+    }
+
+    private byte[] readName(int prefixBits) throws HTTP2Exception {
+        int index = readInteger(prefixBits);
+        return index == 0 ? readString() : getName(index);
+    }
+
+    private byte[] getName(int index) throws HTTP2Exception {
+        if(index < HPACK.STATIC_TABLE.length){
+            if(index == 0){
+                throw error("Invalid index 0");
+            }
+            return HPACK.getStaticName(index);
+        }
+        index -= HPACK.STATIC_TABLE.length;
+        if(table.getCount() <= index){
+            throw error("The index is out of the table");
+        }
+        return table.getName(index);
+    }
+
+    private byte[] getValue(int index){
+        if(index < HPACK.STATIC_TABLE.length){
+            return HPACK.getStaticValue(index);
+        }
+        return table.getValue(index - HPACK.STATIC_TABLE.length);
+    }
+
+    private int readInteger(int prefixBits) throws HTTP2Exception {
+        int max = (1 << prefixBits) - 1;
+        int value = data[position++] & max;
+        if(value < max){
+            return value;
+        }
+        for(int shift = 0; ; shift += 7){
+            if(end <= position){
+                throw error("Incomplete integer");
+            }
+            // larger integers can't be a valid index or length, and the next byte could overflow
+            if(28 <= shift){
+                throw error("The integer is too big");
+            }
+            int b = data[position++] & 255;
+            value += (b & 127) << shift;
+            if(value < 0){
+                throw error("The integer is too big");
+            }
+            if((b & 128) == 0){
+                return value;
+            }
+        }
+    }
+
+    private byte[] readString() throws HTTP2Exception {
+        if(end <= position){
+            throw error("Incomplete string");
+        }
+        boolean huffman = (data[position] & 128) != 0;
+        int length = readInteger(7);
+        if(end - position < length){
+            throw error("Incomplete string");
+        }
+        byte[] str;
+        if(huffman){
+            str = HPACK.decodeHuffman(data, position, length);
+        } else {
+            str = new byte[length];
+            System.arraycopy(data, position, str, 0, length);
+        }
+        position += length;
+        return str;
+    }
+
+    private static HTTP2Exception error(String message){
+        return new HTTP2Exception(HTTP2Exception.COMPRESSION_ERROR, 0, message);
+    }
+}
@@ -0,0 +1,114 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes the header blocks which are sent through an HTTP/2 connection.<br>
+ * A connection has one encoder, the blocks must be sent in the order they were encoded
+ * since each of them may change the dynamic table of the peer.
+ */
+class HPACKEncoder {
+    // the table of the peer may be bigger, but a small table is enough for the fields of responses
+    private static final int MAX_TABLE_SIZE = 4096;
+
+    private HPACK.DynamicTable table = new HPACK.DynamicTable(MAX_TABLE_SIZE);
+    // the smallest size which the table had since the last block, and the size which it has now
+    // the peer must be told about both if the table was shrunk and then enlarged (RFC 7541, section 4.2)
+    private int minTableSize = -1;
+    private int newTableSize = -1;
+
+    /**
+     * Applies the maximum size of the dynamic table which was announced by the peer
+     * @param size the size from SETTINGS_HEADER_TABLE_SIZE
+     */
+    void setMaxTableSize(int size){
+        size = Math.min(size, MAX_TABLE_SIZE);
+        if(size == table.getMaxSize() && newTableSize < 0){
+            return;
+        }
+        minTableSize = minTableSize < 0 ? size : Math.min(minTableSize, size);
+        newTableSize = size;
+        table.setMaxSize(size);
+    }
+
+    /**
+     * Encodes a header block
+     * @param fields the names and the values of the header fields one after another, the names must be in lower case
+     * @return the encoded block
+     */
+    byte[] encode(List<String> fields){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(fields.size() * 16);
+        if(0 <= newTableSize){
+            if(minTableSize < newTableSize){
+                HPACK.writeInteger(out, 32, 5, minTableSize);
+            }
+            HPACK.writeInteger(out, 32, 5, newTableSize);
+            minTableSize = -1;
+            newTableSize = -1;
+        }
+        for(int i = 0; i < fields.size(); i += 2){
+            encode(out, fields.get(i), fields.get(i + 1));
+        }
+        return out.toByteArray();
+    }
+
+    private void encode(ByteArrayOutputStream out, String name, String value){
+        int index = HPACK.getStaticIndex(name, value);
+        if(0 < index){
+            HPACK.writeInteger(out, 128, 7, index);
+            return;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int nameIndex = HPACK.getStaticNameIndex(name);
+        for(int i = 0; i < table.getCount(); i++){
+            if(Arrays.equals(table.getName(i), nameBytes)){
+                if(Arrays.equals(table.getValue(i), valueBytes)){
+                    HPACK.writeInteger(out, 128, 7, HPACK.STATIC_TABLE.length + i);
+                    return;
+                }
+                if(nameIndex == 0){
+                    nameIndex = HPACK.STATIC_TABLE.length + i;
+                }
+            }
+        }
+        if(isSensitive(name)){
+            // never indexed, so intermediaries don't index it either
+            HPACK.writeInteger(out, 16, 4, nameIndex);
+        } else if(isIndexable(name)){
+            HPACK.writeInteger(out, 64, 6, nameIndex);
+            table.add(nameBytes, valueBytes);
+        } else {
+            HPACK.writeInteger(out, 0, 4, nameIndex);
+        }
+        if(nameIndex == 0){
+            HPACK.writeString(out, nameBytes);
+        }
+        HPACK.writeString(out, valueBytes);
+    }
+
+    private static boolean isSensitive(String name){
+        return name.equals("set-cookie") || name.equals("authorization") || name.equals("proxy-authorization");
+    }
+
+    // the values of these fields are different in almost every response, indexing them would only evict useful entries
+    private static boolean isIndexable(String name){
+        switch(name){
+            case ":status":
+            case "content-length":
+            case "content-range":
+            case "etag":
+            case "last-modified":
+            case "expires":
+            case "age":
+            case "location":
+            case "keep-alive":
+                return false;
+            default:
+                return true;
+        }
+    }
+}
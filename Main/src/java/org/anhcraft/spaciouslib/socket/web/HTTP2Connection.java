@@ -0,0 +1,963 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * An HTTP/2 connection without TLS ("h2c", RFC 7540).<br>
+ * It takes over an HTTP connection either if the client starts with the connection preface ("prior knowledge"),
+ * or after an HTTP/1.1 request asked for "Upgrade: h2c".<br>
+ * The frames are read by the thread of the connection. Each stream is handled by a worker,
+ * so the requests of a connection are answered at the same time and a slow response doesn't hold up the others.
+ */
+class HTTP2Connection implements HTTPUpgrade {
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    // the frames are never bigger than the default size, so the limit of the client doesn't matter
+    static final int MAX_FRAME_SIZE = 16384;
+    private static final int MAX_CONCURRENT_STREAMS = 100;
+    private static final int DEFAULT_WINDOW_SIZE = 65535;
+    // a bigger window than the default one lets clients upload faster
+    private static final int INITIAL_WINDOW_SIZE = 1048576;
+    private static final int HEADER_TABLE_SIZE = 4096;
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    private HTTPServerHandler server;
+    private HTTPConnection connection;
+    private ServerSocketClientManager client;
+    // the request which asked for the upgrade, it is answered on the stream 1
+    private HTTPRequestReader upgradeRequest;
+    private ConcurrentHashMap<Integer, HTTP2Stream> streams = new ConcurrentHashMap<>();
+    private HPACKDecoder decoder = new HPACKDecoder(HEADER_TABLE_SIZE);
+    private HPACKEncoder encoder = new HPACKEncoder();
+    // the data which was received but isn't a whole frame yet
+    private byte[] pending = new byte[9 + MAX_FRAME_SIZE];
+    private int pendingLength;
+    private boolean prefaceReceived;
+    private boolean settingsReceived;
+    private int lastStreamId;
+    private int openedStreams;
+    // the header block which is being received through HEADERS and CONTINUATION frames
+    private ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+    private int headerStreamId;
+    private boolean headerEndStream;
+    private boolean continuing;
+    // the flow control of the data which is received
+    private int receiveWindow = INITIAL_WINDOW_SIZE;
+    private int receivedBytes;
+    // the flow control of the data which is sent, guarded by the lock
+    private final Object lock = new Object();
+    private long sendWindow = DEFAULT_WINDOW_SIZE;
+    private int initialSendWindow = DEFAULT_WINDOW_SIZE;
+    private volatile boolean goingAway;
+    private volatile boolean closed;
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * Creates a new HTTP2Connection instance for a client which started with the connection preface
+     * @param server the server
+     */
+    HTTP2Connection(HTTPServerHandler server){
+        this.server = server;
+    }
+
+    /**
+     * Creates a new HTTP2Connection instance for a client which asked for "Upgrade: h2c"
+     * @param server the server
+     * @param request the request which asked for the upgrade
+     * @return the connection, or null if the request can't be upgraded (e.g: the "HTTP2-Settings" field is invalid)
+     */
+    static HTTP2Connection upgrade(HTTPServerHandler server, HTTPRequestReader request){
+        if(!"HTTP/1.1".equals(request.getHTTPVersion())
+                || !WebSocketEndpoint.hasToken(request.getField("Upgrade"), "h2c")){
+            return null;
+        }
+        String value = request.getField("HTTP2-Settings");
+        if(value == null){
+            return null;
+        }
+        HTTP2Connection connection = new HTTP2Connection(server);
+        try {
+            byte[] settings = Base64.getUrlDecoder().decode(value.trim());
+            if(settings.length % 6 != 0){
+                return null;
+            }
+            // these settings are acknowledged by the response 101
+            connection.applySettings(settings, 0, settings.length);
+        } catch(IllegalArgumentException | HTTP2Exception e){
+            return null;
+        }
+        connection.upgradeRequest = request;
+        return connection;
+    }
+
+    /**
+     * Checks does the given data start like the connection preface
+     * @param data the first data which was received through a connection
+     * @return true if yes
+     */
+    static boolean isPreface(ByteBuffer data){
+        if(data.remaining() < 4){
+            return false;
+        }
+        for(int i = 0; i < 4; i++){
+            if(data.get(data.position() + i) != PREFACE[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void open(HTTPConnection connection){
+        this.connection = connection;
+        this.client = connection.getClient();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        byte[] settings = new byte[18];
+        putSetting(settings, 0, SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+        putSetting(settings, 6, SETTINGS_INITIAL_WINDOW_SIZE, INITIAL_WINDOW_SIZE);
+        putSetting(settings, 12, SETTINGS_ENABLE_PUSH, 0);
+        writeFrame(out, SETTINGS, 0, 0, settings, 0, settings.length);
+        // the connection window can only be enlarged by WINDOW_UPDATE
+        writeFrame(out, WINDOW_UPDATE, 0, 0, toBytes(INITIAL_WINDOW_SIZE - DEFAULT_WINDOW_SIZE), 0, 4);
+        try {
+            client.send(out.toByteArray());
+        } catch(IOException e){
+            connection.close();
+            return;
+        }
+        if(upgradeRequest != null){
+            // the request was already received completely
+            HTTP2Stream stream = new HTTP2Stream(this, 1, INITIAL_WINDOW_SIZE, initialSendWindow);
+            stream.setRemoteClosed();
+            lastStreamId = 1;
+            openedStreams = 1;
+            streams.put(1, stream);
+            dispatch(stream, upgradeRequest);
+            upgradeRequest = null;
+        }
+    }
+
+    @Override
+    public void receive(ByteBuffer data) throws IOException {
+        lastActivity = System.currentTimeMillis();
+        while(data.hasRemaining() && !closed){
+            int n = Math.min(data.remaining(), pending.length - pendingLength);
+            data.get(pending, pendingLength, n);
+            pendingLength += n;
+            try {
+                process();
+            } catch(HTTP2Exception e){
+                goAway(e.getErrorCode(), e.getMessage());
+                throw e;
+            }
+        }
+    }
+
+    private void process() throws HTTP2Exception {
+        int position = 0;
+        if(!prefaceReceived){
+            for(int i = 0; i < Math.min(pendingLength, PREFACE.length); i++){
+                if(pending[i] != PREFACE[i]){
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid connection preface");
+                }
+            }
+            if(pendingLength < PREFACE.length){
+                return;
+            }
+            prefaceReceived = true;
+            position = PREFACE.length;
+        }
+        while(9 <= pendingLength - position && !closed){
+            int length = ((pending[position] & 255) << 16) | ((pending[position + 1] & 255) << 8) | (pending[position + 2] & 255);
+            if(MAX_FRAME_SIZE < length){
+                throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "The frame is too big");
+            }
+            if(pendingLength - position < 9 + length){
+                break;
+            }
+            int type = pending[position + 3] & 255;
+            int flags = pending[position + 4] & 255;
+            int streamId = readInt(pending, position + 5) & 0x7fffffff;
+            try {
+                handleFrame(type, flags, streamId, position + 9, length);
+            } catch(HTTP2Exception e){
+                if(e.getStreamId() == 0){
+                    throw e;
+                }
+                resetStream(e.getStreamId(), e.getErrorCode());
+            }
+            position += 9 + length;
+        }
+        System.arraycopy(pending, position, pending, 0, pendingLength - position);
+        pendingLength -= position;
+    }
+
+    private void handleFrame(int type, int flags, int streamId, int offset, int length) throws HTTP2Exception {
+        if(continuing && type != CONTINUATION){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Expected a CONTINUATION frame");
+        }
+        if(!settingsReceived && type != SETTINGS){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "The first frame must be SETTINGS");
+        }
+        switch(type){
+            case DATA:
+                onData(flags, streamId, offset, length);
+                break;
+            case HEADERS:
+                onHeaders(flags, streamId, offset, length);
+                break;
+            case PRIORITY:
+                // the responses are sent as soon as they are ready, so the priorities are ignored
+                if(streamId == 0){
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "PRIORITY frame on the stream 0");
+                }
+                if(length != 5){
+                    throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, streamId, "Invalid PRIORITY frame");
+                }
+                break;
+            case RST_STREAM:
+                onResetStream(streamId, offset, length);
+                break;
+            case SETTINGS:
+                onSettings(flags, streamId, offset, length);
+                break;
+            case PUSH_PROMISE:
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Clients can't push");
+            case PING:
+                onPing(flags, streamId, offset, length);
+                break;
+            case GOAWAY:
+                if(streamId != 0){
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "GOAWAY frame on a stream");
+                }
+                // the streams which are being answered are finished first
+                goingAway = true;
+                if(streams.isEmpty()){
+                    connection.close();
+                }
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, offset, length);
+                break;
+            case CONTINUATION:
+                if(!continuing || streamId != headerStreamId){
+                    throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Unexpected CONTINUATION frame");
+                }
+                addHeaderBlock(offset, length);
+                if((flags & FLAG_END_HEADERS) != 0){
+                    continuing = false;
+                    endHeaders();
+                }
+                break;
+            default:
+                // unknown frames must be ignored
+                break;
+        }
+    }
+
+    private void onData(int flags, int streamId, int offset, int length) throws HTTP2Exception {
+        if(streamId == 0){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "DATA frame on the stream 0");
+        }
+        // the connection window counts all DATA frames, even the ones of closed streams
+        receiveWindow -= length;
+        if(receiveWindow < 0){
+            throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, 0, "The connection window was exceeded");
+        }
+        receivedBytes += length;
+        if(INITIAL_WINDOW_SIZE / 2 <= receivedBytes){
+            sendWindowUpdate(0, receivedBytes);
+            receiveWindow += receivedBytes;
+            receivedBytes = 0;
+        }
+        HTTP2Stream stream = streams.get(streamId);
+        if(stream == null){
+            if(lastStreamId < streamId){
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "DATA frame on an idle stream");
+            }
+            // the stream was closed or reset recently, the client may not know that yet
+            return;
+        }
+        if(stream.isRemoteClosed()){
+            throw new HTTP2Exception(HTTP2Exception.STREAM_CLOSED, streamId, "DATA frame after the end of the stream");
+        }
+        int start = offset;
+        int end = offset + length;
+        if((flags & FLAG_PADDED) != 0){
+            if(length < 1 || length - 1 < (pending[offset] & 255)){
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid padding");
+            }
+            end -= pending[offset] & 255;
+            start++;
+        }
+        try {
+            stream.receive(pending, start, end - start, length, server.getMaxBodySize());
+        } catch(HTTPParseException e){
+            // answers before the body is complete, the rest of the body is refused by resetting the stream
+            respondStatus(stream, e.getStatusCode(), null, null);
+            return;
+        }
+        if((flags & FLAG_END_STREAM) != 0){
+            stream.setRemoteClosed();
+            complete(stream);
+        } else {
+            int update = stream.takeWindowUpdate(INITIAL_WINDOW_SIZE / 2);
+            if(0 < update){
+                sendWindowUpdate(streamId, update);
+            }
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, int offset, int length) throws HTTP2Exception {
+        if(streamId == 0 || streamId % 2 == 0){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid stream identifier");
+        }
+        int start = offset;
+        int end = offset + length;
+        if((flags & FLAG_PADDED) != 0){
+            if(length < 1 || length - 1 < (pending[offset] & 255)){
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid padding");
+            }
+            end -= pending[offset] & 255;
+            start++;
+        }
+        if((flags & FLAG_PRIORITY) != 0){
+            if(end - start < 5){
+                throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "Invalid HEADERS frame");
+            }
+            start += 5;
+        }
+        headerBlock.reset();
+        headerStreamId = streamId;
+        headerEndStream = (flags & FLAG_END_STREAM) != 0;
+        addHeaderBlock(start, end - start);
+        if((flags & FLAG_END_HEADERS) != 0){
+            endHeaders();
+        } else {
+            continuing = true;
+        }
+    }
+
+    private void addHeaderBlock(int offset, int length) throws HTTP2Exception {
+        // the encoded block is never much bigger than the decoded fields
+        if(server.getMaxHeaderSize() + MAX_FRAME_SIZE < headerBlock.size() + length){
+            throw new HTTP2Exception(HTTP2Exception.ENHANCE_YOUR_CALM, 0, "The header block is too big");
+        }
+        headerBlock.write(pending, offset, length);
+    }
+
+    private void endHeaders() throws HTTP2Exception {
+        byte[] block = headerBlock.toByteArray();
+        headerBlock.reset();
+        // the block must always be decoded since it may change the dynamic table
+        List<byte[]> fields = decoder.decode(block, 0, block.length);
+        int id = headerStreamId;
+        HTTP2Stream stream = streams.get(id);
+        if(stream != null){
+            // trailers, they are ignored
+            if(stream.isRemoteClosed()){
+                throw new HTTP2Exception(HTTP2Exception.STREAM_CLOSED, id, "HEADERS frame after the end of the stream");
+            }
+            if(!headerEndStream){
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, id, "Trailers must end the stream");
+            }
+            stream.setRemoteClosed();
+            complete(stream);
+            return;
+        }
+        if(id <= lastStreamId || goingAway){
+            // the stream was already closed, or the connection is being closed
+            return;
+        }
+        lastStreamId = id;
+        if(MAX_CONCURRENT_STREAMS <= streams.size()){
+            throw new HTTP2Exception(HTTP2Exception.REFUSED_STREAM, id, "Too many concurrent streams");
+        }
+        long window;
+        synchronized(lock){
+            window = initialSendWindow;
+        }
+        stream = new HTTP2Stream(this, id, INITIAL_WINDOW_SIZE, window);
+        int status = parseRequest(stream, fields);
+        openedStreams++;
+        streams.put(id, stream);
+        if(headerEndStream){
+            stream.setRemoteClosed();
+        }
+        if(status != 0){
+            respondStatus(stream, status, null, null);
+        } else if(headerEndStream){
+            complete(stream);
+        }
+        if(server.getMaxKeepAliveRequests() <= openedStreams){
+            // the client has to open a new connection for the next requests
+            goingAway = true;
+            goAway(HTTP2Exception.NO_ERROR, null);
+        }
+    }
+
+    /**
+     * Converts the decoded header fields to the form of the requests which were read by HTTPRequestParser
+     * @param stream the stream
+     * @param fields the names and the values one after another
+     * @return 0 if the request is valid, otherwise the status code which should be responded
+     * @throws HTTP2Exception if the request is malformed
+     */
+    private int parseRequest(HTTP2Stream stream, List<byte[]> fields) throws HTTP2Exception {
+        ByteArrayOutputStream head = new ByteArrayOutputStream(256);
+        int[] headers = new int[fields.size() * 2 + 4];
+        int count = 0;
+        String method = null;
+        byte[] scheme = null;
+        byte[] path = null;
+        byte[] authority = null;
+        List<byte[]> cookies = new ArrayList<>();
+        byte[] contentType = null;
+        boolean regular = false;
+        long size = 0;
+        for(int i = 0; i < fields.size(); i += 2){
+            byte[] name = fields.get(i);
+            byte[] value = fields.get(i + 1);
+            size += name.length + value.length + 4;
+            if(name.length == 0){
+                throw malformed(stream);
+            }
+            if(name[0] == ':'){
+                if(regular){
+                    throw malformed(stream);
+                }
+                String n = new String(name, StandardCharsets.US_ASCII);
+                if(n.equals(":method") && method == null){
+                    method = new String(value, StandardCharsets.US_ASCII);
+                } else if(n.equals(":scheme") && scheme == null){
+                    scheme = value;
+                } else if(n.equals(":path") && path == null){
+                    path = value;
+                } else if(n.equals(":authority") && authority == null){
+                    authority = value;
+                } else {
+                    throw malformed(stream);
+                }
+                continue;
+            }
+            regular = true;
+            for(byte b : name){
+                if('A' <= b && b <= 'Z'){
+                    throw malformed(stream);
+                }
+            }
+            String n = new String(name, StandardCharsets.US_ASCII);
+            if(n.equals("connection") || n.equals("keep-alive") || n.equals("proxy-connection")
+                    || n.equals("transfer-encoding") || n.equals("upgrade")
+                    || (n.equals("te") && !new String(value, StandardCharsets.US_ASCII).equals("trailers"))){
+                throw malformed(stream);
+            }
+            if(n.equals("cookie")){
+                // the cookies may be split into several fields to compress them better
+                cookies.add(value);
+                continue;
+            }
+            if(n.equals("content-type")){
+                contentType = value;
+            }
+            count = addField(head, headers, count, name, value);
+        }
+        if(method == null){
+            throw malformed(stream);
+        }
+        if(!method.equals("CONNECT") && (scheme == null || path == null || path.length == 0)){
+            throw malformed(stream);
+        }
+        if(server.getMaxHeaderSize() < size){
+            return 431;
+        }
+        HTTPRequestMethod requestMethod = null;
+        for(HTTPRequestMethod m : HTTPRequestMethod.values()){
+            if(m.name().equals(method)){
+                requestMethod = m;
+            }
+        }
+        // there is no tunnel through HTTP/2 streams
+        if(requestMethod == null || requestMethod == HTTPRequestMethod.CONNECT){
+            return 501;
+        }
+        if(authority != null){
+            count = addField(head, headers, count, "Host".getBytes(StandardCharsets.US_ASCII), authority);
+        }
+        if(!cookies.isEmpty()){
+            ByteArrayOutputStream cookie = new ByteArrayOutputStream();
+            for(byte[] c : cookies){
+                if(0 < cookie.size()){
+                    cookie.write(';');
+                    cookie.write(' ');
+                }
+                cookie.write(c, 0, c.length);
+            }
+            count = addField(head, headers, count, "cookie".getBytes(StandardCharsets.US_ASCII), cookie.toByteArray());
+        }
+        int[] requestLine = new int[4];
+        requestLine[0] = head.size();
+        head.write(path, 0, path.length);
+        requestLine[1] = head.size();
+        requestLine[2] = head.size();
+        head.write(new byte[]{'H', 'T', 'T', 'P', '/', '2', '.', '0'}, 0, 8);
+        requestLine[3] = head.size();
+        stream.setRequest(requestMethod, head.toByteArray(), requestLine, Arrays.copyOf(headers, count * 4));
+        Path directory = server.getUploadDirectory();
+        if(directory != null && contentType != null && !headerEndStream){
+            String boundary = MultipartFormParser.getBoundary(new String(contentType, StandardCharsets.ISO_8859_1));
+            if(boundary != null){
+                MultipartFormParser multipart = new MultipartFormParser(boundary, directory);
+                multipart.setMaxSize(server.getMaxUploadSize());
+                multipart.setMaxFileSize(server.getMaxUploadFileSize());
+                multipart.setMaxFieldsSize(server.getMaxBodySize());
+                stream.setMultipart(multipart);
+            }
+        }
+        return 0;
+    }
+
+    private static int addField(ByteArrayOutputStream head, int[] headers, int count, byte[] name, byte[] value){
+        int i = count * 4;
+        headers[i] = head.size();
+        head.write(name, 0, name.length);
+        headers[i + 1] = head.size();
+        headers[i + 2] = head.size();
+        head.write(value, 0, value.length);
+        headers[i + 3] = head.size();
+        return count + 1;
+    }
+
+    private static HTTP2Exception malformed(HTTP2Stream stream){
+        return new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, stream.getId(), "Malformed request");
+    }
+
+    private void onResetStream(int streamId, int offset, int length) throws HTTP2Exception {
+        if(length != 4){
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "Invalid RST_STREAM frame");
+        }
+        if(streamId == 0 || lastStreamId < streamId){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "RST_STREAM frame on an idle stream");
+        }
+        HTTP2Stream stream = streams.remove(streamId);
+        if(stream != null){
+            stream.reset();
+            synchronized(lock){
+                lock.notifyAll();
+            }
+            closeIfDone();
+        }
+    }
+
+    private void onSettings(int flags, int streamId, int offset, int length) throws HTTP2Exception {
+        if(streamId != 0){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "SETTINGS frame on a stream");
+        }
+        if((flags & FLAG_ACK) != 0){
+            if(length != 0){
+                throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "Invalid SETTINGS acknowledgement");
+            }
+            return;
+        }
+        if(length % 6 != 0){
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "Invalid SETTINGS frame");
+        }
+        applySettings(pending, offset, length);
+        settingsReceived = true;
+        send(frame(SETTINGS, FLAG_ACK, 0, pending, 0, 0));
+    }
+
+    private void applySettings(byte[] data, int offset, int length) throws HTTP2Exception {
+        for(int i = offset; i < offset + length; i += 6){
+            int id = ((data[i] & 255) << 8) | (data[i + 1] & 255);
+            long value = readInt(data, i + 2) & 0xffffffffL;
+            switch(id){
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    synchronized(encoder){
+                        encoder.setMaxTableSize((int) Math.min(value, Integer.MAX_VALUE));
+                    }
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if(1 < value){
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid SETTINGS_ENABLE_PUSH");
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if(Integer.MAX_VALUE < value){
+                        throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, 0, "Invalid SETTINGS_INITIAL_WINDOW_SIZE");
+                    }
+                    synchronized(lock){
+                        // the change applies to the windows of all open streams, they may become negative
+                        long delta = value - initialSendWindow;
+                        initialSendWindow = (int) value;
+                        for(HTTP2Stream stream : streams.values()){
+                            stream.sendWindow += delta;
+                            if(Integer.MAX_VALUE < stream.sendWindow){
+                                throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, 0, "The window of a stream is too big");
+                            }
+                        }
+                        lock.notifyAll();
+                    }
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if(value < 16384 || 16777215 < value){
+                        throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                    }
+                    break;
+                default:
+                    // the other settings don't matter for a server, unknown settings must be ignored
+                    break;
+            }
+        }
+    }
+
+    private void onPing(int flags, int streamId, int offset, int length) throws HTTP2Exception {
+        if(streamId != 0){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "PING frame on a stream");
+        }
+        if(length != 8){
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "Invalid PING frame");
+        }
+        if((flags & FLAG_ACK) == 0){
+            send(frame(PING, FLAG_ACK, 0, pending, offset, 8));
+        }
+    }
+
+    private void onWindowUpdate(int streamId, int offset, int length) throws HTTP2Exception {
+        if(length != 4){
+            throw new HTTP2Exception(HTTP2Exception.FRAME_SIZE_ERROR, 0, "Invalid WINDOW_UPDATE frame");
+        }
+        int increment = readInt(pending, offset) & 0x7fffffff;
+        if(streamId == 0){
+            if(increment == 0){
+                throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "Invalid window increment");
+            }
+            synchronized(lock){
+                sendWindow += increment;
+                if(Integer.MAX_VALUE < sendWindow){
+                    throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, 0, "The connection window is too big");
+                }
+                lock.notifyAll();
+            }
+            return;
+        }
+        if(lastStreamId < streamId){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, 0, "WINDOW_UPDATE frame on an idle stream");
+        }
+        if(increment == 0){
+            throw new HTTP2Exception(HTTP2Exception.PROTOCOL_ERROR, streamId, "Invalid window increment");
+        }
+        HTTP2Stream stream = streams.get(streamId);
+        if(stream == null){
+            return;
+        }
+        synchronized(lock){
+            stream.sendWindow += increment;
+            if(Integer.MAX_VALUE < stream.sendWindow){
+                throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, streamId, "The stream window is too big");
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Lets a worker handle the request of the given stream
+     * @param stream the stream
+     * @param request the request
+     */
+    private void dispatch(HTTP2Stream stream, HTTPRequestReader request){
+        int wait = server.acquire(client.getInetAddress());
+        if(0 < wait){
+            HTTPConnection.deleteUploads(request);
+            respondStatus(stream, 429, "retry-after", Integer.toString(wait));
+            return;
+        }
+        try {
+            server.submit(() -> handle(stream, request));
+        } catch(RejectedExecutionException e){
+            // fails fast when the server is overloaded
+            HTTPConnection.deleteUploads(request);
+            respondStatus(stream, 503, "retry-after", Integer.toString(server.getRetryAfter()));
+        }
+    }
+
+    // dispatches the request of the given stream after it was received completely
+    private void complete(HTTP2Stream stream){
+        HTTPRequestReader request;
+        try {
+            request = stream.createRequest();
+        } catch(HTTPParseException e){
+            respondStatus(stream, e.getStatusCode(), null, null);
+            return;
+        }
+        dispatch(stream, request);
+    }
+
+    private void handle(HTTP2Stream stream, HTTPRequestReader request){
+        boolean body = request.getRequestMethod() != HTTPRequestMethod.HEAD;
+        HTTPResponseWriter response = new HTTPResponseWriter();
+        response.setStream(stream, !body);
+        try {
+            try {
+                server.getHandler(request).request(client, request, response);
+            } catch(RuntimeException e){
+                e.printStackTrace();
+                if(response.isStreamed()){
+                    // the header was already sent, so the response can't be replaced
+                    resetStream(stream.getId(), HTTP2Exception.INTERNAL_ERROR);
+                    return;
+                }
+                response = new HTTPResponseWriter();
+                response.setStatusCode(500);
+            }
+            if(response.getUpgrade() != null && !response.isStreamed()){
+                // protocols like WebSocket take over a whole connection, the client has to use HTTP/1.1 for them
+                resetStream(stream.getId(), HTTP2Exception.HTTP_1_1_REQUIRED);
+                return;
+            }
+            if(response.isStreamed()){
+                response.finish();
+            } else {
+                stream.send(response, body);
+            }
+        } catch(IOException ignored) {
+            // the stream was reset or the connection was closed
+        } finally {
+            HTTPConnection.deleteUploads(request);
+            if(!stream.isLocalClosed() && !stream.isReset()){
+                resetStream(stream.getId(), HTTP2Exception.INTERNAL_ERROR);
+            }
+        }
+    }
+
+    // responds a status code without a body, by the thread of the connection
+    private void respondStatus(HTTP2Stream stream, int statusCode, String field, String value){
+        HTTPResponseWriter response = new HTTPResponseWriter();
+        response.setStatusCode(statusCode);
+        if(field != null){
+            response.setField(field, value);
+        }
+        try {
+            stream.send(response, false);
+        } catch(IOException ignored) { }
+    }
+
+    /**
+     * Sends the header of a response
+     * @param stream the stream
+     * @param fields the names and the values of the header fields one after another
+     * @param endStream true if the response has no body
+     */
+    void sendHeaders(HTTP2Stream stream, List<String> fields, boolean endStream) throws IOException {
+        // the blocks must be sent in the same order as they were encoded
+        synchronized(encoder){
+            if(stream.isReset() || closed){
+                throw new IOException("The stream was reset");
+            }
+            byte[] block = encoder.encode(fields);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(block.length + 9 * (1 + block.length / MAX_FRAME_SIZE));
+            int flags = endStream ? FLAG_END_STREAM : 0;
+            int length = Math.min(block.length, MAX_FRAME_SIZE);
+            writeFrame(out, HEADERS, length == block.length ? flags | FLAG_END_HEADERS : flags, stream.getId(), block, 0, length);
+            for(int offset = length; offset < block.length; offset += length){
+                length = Math.min(block.length - offset, MAX_FRAME_SIZE);
+                writeFrame(out, CONTINUATION, offset + length == block.length ? FLAG_END_HEADERS : 0, stream.getId(), block, offset, length);
+            }
+            client.send(out.toByteArray());
+        }
+    }
+
+    /**
+     * Sends a part of the body of a response.<br>
+     * The current thread waits until the flow-control windows of the stream and the connection allow the data.
+     * @param stream the stream
+     * @param data the data
+     * @param offset the position of the part
+     * @param length the length of the part
+     * @param endStream true if this is the last part
+     */
+    void sendData(HTTP2Stream stream, byte[] data, int offset, int length, boolean endStream) throws IOException {
+        long timeout = server.getRequestTimeout() * 1000L;
+        do {
+            int n;
+            boolean expired = false;
+            synchronized(lock){
+                long deadline = System.currentTimeMillis() + timeout;
+                while(true){
+                    if(stream.isReset() || closed){
+                        throw new IOException("The stream was reset");
+                    }
+                    n = (int) Math.min(Math.min(length, MAX_FRAME_SIZE), Math.min(sendWindow, stream.sendWindow));
+                    if(0 < n || length == 0){
+                        break;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if(wait <= 0){
+                        expired = true;
+                        break;
+                    }
+                    try {
+                        lock.wait(wait);
+                    } catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if(!expired){
+                    n = Math.max(n, 0);
+                    sendWindow -= n;
+                    stream.sendWindow -= n;
+                }
+            }
+            if(expired){
+                // a client which stops reading can't hold a worker forever,
+                // the stream is reset outside the lock since that sends a frame
+                resetStream(stream.getId(), HTTP2Exception.CANCEL);
+                throw new IOException("The flow-control window stayed closed for too long");
+            }
+            send(frame(DATA, endStream && n == length ? FLAG_END_STREAM : 0, stream.getId(), data, offset, n));
+            offset += n;
+            length -= n;
+        } while(0 < length);
+    }
+
+    /**
+     * Called after the response of the given stream was finished
+     * @param stream the stream
+     */
+    void finished(HTTP2Stream stream){
+        lastActivity = System.currentTimeMillis();
+        if(streams.remove(stream.getId(), stream) && !stream.isRemoteClosed()){
+            // the rest of the request isn't needed anymore
+            sendResetStream(stream.getId(), HTTP2Exception.NO_ERROR);
+        }
+        closeIfDone();
+    }
+
+    private void resetStream(int streamId, int errorCode){
+        HTTP2Stream stream = streams.remove(streamId);
+        if(stream != null){
+            stream.reset();
+            synchronized(lock){
+                lock.notifyAll();
+            }
+        }
+        sendResetStream(streamId, errorCode);
+        closeIfDone();
+    }
+
+    private void sendResetStream(int streamId, int errorCode){
+        send(frame(RST_STREAM, 0, streamId, toBytes(errorCode), 0, 4));
+    }
+
+    private void sendWindowUpdate(int streamId, int increment){
+        send(frame(WINDOW_UPDATE, 0, streamId, toBytes(increment), 0, 4));
+    }
+
+    private void goAway(int errorCode, String message){
+        byte[] debug = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[8 + debug.length];
+        System.arraycopy(toBytes(lastStreamId), 0, payload, 0, 4);
+        System.arraycopy(toBytes(errorCode), 0, payload, 4, 4);
+        System.arraycopy(debug, 0, payload, 8, debug.length);
+        send(frame(GOAWAY, 0, 0, payload, 0, payload.length));
+    }
+
+    private void closeIfDone(){
+        if(goingAway && streams.isEmpty() && !closed){
+            connection.close();
+        }
+    }
+
+    private void send(byte[] frame){
+        try {
+            client.send(frame);
+        } catch(IOException e){
+            connection.close();
+        }
+    }
+
+    @Override
+    public void checkTimeout(long now){
+        if(streams.isEmpty() && server.getKeepAliveTimeout() * 1000L < now - lastActivity){
+            goAway(HTTP2Exception.NO_ERROR, null);
+            connection.close();
+        }
+    }
+
+    @Override
+    public void closed(){
+        closed = true;
+        for(HTTP2Stream stream : streams.values()){
+            stream.reset();
+        }
+        streams.clear();
+        synchronized(lock){
+            lock.notifyAll();
+        }
+    }
+
+    private static byte[] frame(int type, int flags, int streamId, byte[] payload, int offset, int length){
+        ByteArrayOutputStream out = new ByteArrayOutputStream(9 + length);
+        writeFrame(out, type, flags, streamId, payload, offset, length);
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, int type, int flags, int streamId, byte[] payload, int offset, int length){
+        out.write(length >>> 16);
+        out.write(length >>> 8);
+        out.write(length);
+        out.write(type);
+        out.write(flags);
+        out.write(toBytes(streamId), 0, 4);
+        out.write(payload, offset, length);
+    }
+
+    private static void putSetting(byte[] data, int offset, int id, int value){
+        data[offset] = (byte) (id >>> 8);
+        data[offset + 1] = (byte) id;
+        System.arraycopy(toBytes(value), 0, data, offset + 2, 4);
+    }
+
+    private static byte[] toBytes(int value){
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static int readInt(byte[] data, int offset){
+        return ((data[offset] & 255) << 24) | ((data[offset + 1] & 255) << 16) | ((data[offset + 2] & 255) << 8) | (data[offset + 3] & 255);
+    }
+}
@@ -0,0 +1,47 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown if an HTTP/2 peer violated the protocol.<br>
+ * An error of a stream only resets that stream, an error of the connection (stream 0) closes the whole connection.
+ */
+class HTTP2Exception extends IOException {
+    private static final long serialVersionUID = -3818467303532476129L;
+
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int INTERNAL_ERROR = 0x2;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int SETTINGS_TIMEOUT = 0x4;
+    static final int STREAM_CLOSED = 0x5;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+    static final int COMPRESSION_ERROR = 0x9;
+    static final int ENHANCE_YOUR_CALM = 0xb;
+    static final int HTTP_1_1_REQUIRED = 0xd;
+
+    private int errorCode;
+    private int streamId;
+
+    /**
+     * Creates a new HTTP2Exception instance
+     * @param errorCode the error code which is sent to the peer
+     * @param streamId the identifier of the stream which has the error, or 0 if it is an error of the connection
+     * @param message the detail message
+     */
+    HTTP2Exception(int errorCode, int streamId, String message){
+        super(message);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    int getErrorCode(){
+        return this.errorCode;
+    }
+
+    int getStreamId(){
+        return this.streamId;
+    }
+}
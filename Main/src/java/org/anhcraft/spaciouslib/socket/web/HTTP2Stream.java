@@ -0,0 +1,318 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A stream of an HTTP/2 connection, it carries one request and its response.<br>
+ * The request is read by the thread of the connection, the response is sent by the thread which handles the request.
+ */
+class HTTP2Stream {
+    private HTTP2Connection connection;
+    private int id;
+    // the request which is being received, in the same form as the requests which were read by HTTPRequestParser
+    private HTTPRequestMethod method;
+    private byte[] head;
+    private int[] requestLine;
+    private int[] headers;
+    private ByteArrayOutputStream body;
+    // multipart/form-data bodies are stored by this parser instead of being buffered
+    private MultipartFormParser multipart;
+    // true if the client finished sending the request
+    private boolean remoteClosed;
+    // true if the response was finished
+    private volatile boolean localClosed;
+    private volatile boolean reset;
+    // the flow-control windows, the send window is guarded by the lock of the connection
+    private int receiveWindow;
+    private int receivedBytes;
+    long sendWindow;
+
+    HTTP2Stream(HTTP2Connection connection, int id, int receiveWindow, long sendWindow){
+        this.connection = connection;
+        this.id = id;
+        this.receiveWindow = receiveWindow;
+        this.sendWindow = sendWindow;
+    }
+
+    int getId(){
+        return this.id;
+    }
+
+    void setRequest(HTTPRequestMethod method, byte[] head, int[] requestLine, int[] headers){
+        this.method = method;
+        this.head = head;
+        this.requestLine = requestLine;
+        this.headers = headers;
+    }
+
+    void setMultipart(MultipartFormParser multipart){
+        this.multipart = multipart;
+    }
+
+    /**
+     * Creates the request from the header fields and the body which were received
+     * @return the request
+     * @throws HTTPParseException if the multipart body is invalid
+     */
+    HTTPRequestReader createRequest() throws HTTPParseException {
+        HTTPRequestReader request = new HTTPRequestReader(method, head, requestLine, headers, body == null ? new byte[0] : body.toByteArray());
+        if(multipart != null){
+            request.setMultipartForm(multipart.finish());
+            multipart = null;
+        }
+        return request;
+    }
+
+    HTTPRequestMethod getMethod(){
+        return this.method;
+    }
+
+    boolean isRemoteClosed(){
+        return this.remoteClosed;
+    }
+
+    void setRemoteClosed(){
+        this.remoteClosed = true;
+    }
+
+    boolean isLocalClosed(){
+        return this.localClosed;
+    }
+
+    boolean isReset(){
+        return this.reset;
+    }
+
+    /**
+     * Marks this stream as reset, the response can't be sent anymore
+     */
+    void reset(){
+        this.reset = true;
+        // the body may be cut off
+        MultipartFormParser multipart = this.multipart;
+        if(multipart != null){
+            multipart.discard();
+        }
+    }
+
+    /**
+     * Adds a part of the body of the request
+     * @param data the data
+     * @param offset the position of the part
+     * @param length the length of the part
+     * @param frameLength the length of the frame which is counted by the flow control (including the padding)
+     * @param maxBodySize the maximum size of the body if it is buffered
+     * @throws HTTP2Exception if the client sent more than the window allows
+     * @throws HTTPParseException if the body is too large or the multipart body is invalid
+     */
+    void receive(byte[] data, int offset, int length, int frameLength, long maxBodySize) throws HTTP2Exception, HTTPParseException {
+        receiveWindow -= frameLength;
+        if(receiveWindow < 0){
+            throw new HTTP2Exception(HTTP2Exception.FLOW_CONTROL_ERROR, id, "The stream window was exceeded");
+        }
+        receivedBytes += frameLength;
+        if(multipart != null){
+            multipart.parse(ByteBuffer.wrap(data, offset, length));
+            return;
+        }
+        if(body == null){
+            body = new ByteArrayOutputStream(Math.max(32, length));
+        }
+        if(maxBodySize < (long) body.size() + length){
+            throw new HTTPParseException(413, "The request body is too large");
+        }
+        body.write(data, offset, length);
+    }
+
+    /**
+     * Takes the amount of bytes which should be given back to the receive window of this stream
+     * @param threshold the minimum amount which is worth a WINDOW_UPDATE frame
+     * @return the amount, or 0 if it is still under the threshold
+     */
+    int takeWindowUpdate(int threshold){
+        if(remoteClosed || receivedBytes < threshold){
+            return 0;
+        }
+        int update = receivedBytes;
+        receivedBytes = 0;
+        receiveWindow += update;
+        return update;
+    }
+
+    /**
+     * Sends a response which has a buffered body or a file as its body
+     * @param response the response
+     * @param body false if the body should be excluded (e.g: for responding HEAD requests)
+     */
+    void send(HTTPResponseWriter response, boolean body) throws IOException {
+        List<byte[]> data = response.getData();
+        int code = response.getStatusCode();
+        long length = response.getFile() != null ? response.getFileLength() : response.getContentLength();
+        boolean empty = !body || length == 0 || code == 204 || code == 304;
+        connection.sendHeaders(this, getHeaderList(response), empty);
+        if(empty){
+            closeLocal();
+            return;
+        }
+        if(response.getFile() != null){
+            sendFile(response);
+        } else {
+            for(int i = 0; i < data.size(); i++){
+                byte[] d = data.get(i);
+                connection.sendData(this, d, 0, d.length, i == data.size() - 1);
+            }
+        }
+        closeLocal();
+    }
+
+    // reads the file by parts which fit in the frames, so a big file never needs to be in the memory
+    private void sendFile(HTTPResponseWriter response) throws IOException {
+        long offset = response.getFileOffset();
+        long remaining = response.getFileLength();
+        byte[] buffer = new byte[(int) Math.min(remaining, HTTP2Connection.MAX_FRAME_SIZE)];
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        try(FileChannel channel = FileChannel.open(response.getFile(), StandardOpenOption.READ)){
+            while(0 < remaining){
+                bb.clear();
+                bb.limit((int) Math.min(remaining, buffer.length));
+                while(bb.hasRemaining()){
+                    int read = channel.read(bb, offset + bb.position());
+                    if(read < 0){
+                        throw new IOException("The file was truncated");
+                    }
+                }
+                offset += bb.limit();
+                remaining -= bb.limit();
+                connection.sendData(this, buffer, 0, bb.limit(), remaining == 0);
+            }
+        }
+    }
+
+    /**
+     * Sends the header of a streamed response and gets the output stream which sends its body as DATA frames
+     * @param response the response
+     * @param excludeBody true if the body should be discarded (e.g: for responding HEAD requests)
+     * @return the output stream
+     */
+    OutputStream openOutputStream(HTTPResponseWriter response, boolean excludeBody) throws IOException {
+        connection.sendHeaders(this, getHeaderList(response), excludeBody);
+        if(excludeBody){
+            closeLocal();
+        }
+        return new DataOutputStream(excludeBody);
+    }
+
+    /**
+     * Gets the header fields of the given response in the form of HTTP/2
+     * @param response the response
+     * @return the names and the values one after another
+     */
+    static List<String> getHeaderList(HTTPResponseWriter response){
+        List<String> list = new ArrayList<>(response.getFields().size() * 2 + 2);
+        list.add(":status");
+        list.add(Integer.toString(response.getStatusCode()));
+        for(Map.Entry<String, String> field : response.getFields().entrySet()){
+            String name = field.getKey().toLowerCase(Locale.ROOT);
+            // these fields are about HTTP/1 connections, they are forbidden in HTTP/2
+            if(name.equals("connection") || name.equals("keep-alive") || name.equals("transfer-encoding")
+                    || name.equals("upgrade") || name.equals("proxy-connection")){
+                continue;
+            }
+            list.add(name);
+            list.add(field.getValue());
+        }
+        return list;
+    }
+
+    private void closeLocal(){
+        localClosed = true;
+        connection.finished(this);
+    }
+
+    private class DataOutputStream extends OutputStream {
+        private byte[] buffer;
+        private int count;
+        private boolean discard;
+        private boolean closed;
+
+        private DataOutputStream(boolean discard){
+            this.discard = discard;
+            this.buffer = new byte[discard ? 0 : HTTP2Connection.MAX_FRAME_SIZE];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            if(discard){
+                return;
+            }
+            if(count == buffer.length){
+                flushBuffer(false);
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureOpen();
+            if(discard){
+                return;
+            }
+            if(buffer.length - count < len){
+                flushBuffer(false);
+                if(buffer.length <= len){
+                    // big writes skip the buffer
+                    connection.sendData(HTTP2Stream.this, b, off, len, false);
+                    return;
+                }
+            }
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            ensureOpen();
+            if(!discard){
+                flushBuffer(false);
+            }
+        }
+
+        /**
+         * Sends the remaining data with the END_STREAM flag
+         */
+        @Override
+        public void close() throws IOException {
+            if(closed){
+                return;
+            }
+            closed = true;
+            if(!discard){
+                flushBuffer(true);
+                closeLocal();
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if(closed){
+                throw new IOException("The stream was closed");
+            }
+        }
+
+        private void flushBuffer(boolean endStream) throws IOException {
+            if(0 < count || endStream){
+                connection.sendData(HTTP2Stream.this, buffer, 0, count, endStream);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.SocketHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output stream which sends the body of a streamed HTTP response through a connection.<br>
+ * The data is buffered and then sent as chunks ("Transfer-Encoding: chunked"),
+ * or as it is if the length of the body is delimited by closing the connection (HTTP/1.0).
+ */
+class HTTPChunkedOutputStream extends OutputStream {
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private SocketHandler client;
+    private boolean chunked;
+    private boolean discard;
+    private byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * Creates a new HTTPChunkedOutputStream instance
+     * @param client the manager of a connection
+     * @param chunked true if the data should be sent as chunks
+     * @param discard true if the data should be discarded (e.g: for responding HEAD requests)
+     * @param bufferSize the maximum size of a chunk
+     */
+    HTTPChunkedOutputStream(SocketHandler client, boolean chunked, boolean discard, int bufferSize){
+        this.client = client;
+        this.chunked = chunked;
+        this.discard = discard;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if(count == buffer.length){
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if(buffer.length <= len){
+            // big writes skip the buffer
+            flushBuffer();
+            sendChunk(b, off, len);
+            return;
+        }
+        if(buffer.length - count < len){
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        flushBuffer();
+    }
+
+    /**
+     * Sends the remaining data and the last chunk.<br>
+     * The connection stays open.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        flushBuffer();
+        closed = true;
+        if(chunked && !discard){
+            client.send(LAST_CHUNK);
+        }
+    }
+
+    boolean isClosed(){
+        return this.closed;
+    }
+
+    private void ensureOpen() throws IOException {
+        if(closed){
+            throw new IOException("The stream was closed");
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if(0 < count){
+            sendChunk(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void sendChunk(byte[] b, int off, int len) throws IOException {
+        if(len == 0 || discard){
+            return;
+        }
+        if(!chunked){
+            byte[] data = new byte[len];
+            System.arraycopy(b, off, data, 0, len);
+            client.send(data);
+            return;
+        }
+        // <size in hex>\r\n<data>\r\n
+        byte[] size = Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII);
+        byte[] chunk = new byte[size.length + len + 4];
+        System.arraycopy(size, 0, chunk, 0, size.length);
+        chunk[size.length] = '\r';
+        chunk[size.length + 1] = '\n';
+        System.arraycopy(b, off, chunk, size.length + 2, len);
+        chunk[chunk.length - 2] = '\r';
+        chunk[chunk.length - 1] = '\n';
+        client.send(chunk);
+    }
+}
@@ -0,0 +1,464 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The state of a persistent HTTP connection.<br>
+ * All requests which were sent through the connection are parsed and answered in order.
+ */
+class HTTPConnection {
+    private HTTPServerHandler server;
+    private ServerSocketClientManager client;
+    private HTTPRequestParser parser = new HTTPRequestParser();
+    // the requests which were received but haven't been answered yet
+    private ArrayDeque<HTTPRequestReader> queue = new ArrayDeque<>();
+    private volatile int served;
+    private volatile long lastActivity = System.currentTimeMillis();
+    // held while the received data is handled, the timeout checker skips the connection instead of waiting
+    private ReentrantLock lock = new ReentrantLock();
+    // signalled when the worker has answered all queued requests
+    private Condition idle = lock.newCondition();
+    private volatile boolean closed;
+    // whether a worker is answering the queued requests
+    private volatile boolean dispatched;
+    // the status code which is responded after the queued requests, the connection is closed afterwards
+    private int failure;
+    // the request which is being answered
+    private HTTPRequestReader current;
+    private boolean keepAlive;
+    // whether "100 Continue" was sent for the request which is being read
+    private boolean continued;
+    // the protocol which took over this connection
+    private volatile HTTPUpgrade upgrade;
+    private AtomicBoolean released = new AtomicBoolean();
+
+    HTTPConnection(HTTPServerHandler server, ServerSocketClientManager client){
+        this.server = server;
+        this.client = client;
+        this.parser.setMaxHeaderSize(server.getMaxHeaderSize());
+        this.parser.setMaxBodySize(server.getMaxBodySize());
+        this.parser.setUploadDirectory(server.getUploadDirectory());
+        this.parser.setMaxUploadSize(server.getMaxUploadSize());
+        this.parser.setMaxUploadFileSize(server.getMaxUploadFileSize());
+        try {
+            // responses are often sent by several writes (e.g: the header and then a file)
+            // which shouldn't wait for each other
+            client.getSocket().setTcpNoDelay(true);
+        } catch(SocketException ignored) { }
+    }
+
+    ServerSocketClientManager getClient(){
+        return this.client;
+    }
+
+    /**
+     * Handles the data which was received from the client.<br>
+     * If there is a worker pool, the requests are only parsed here and a worker answers them
+     * while this thread reads the next requests.
+     * @param data an array of bytes
+     */
+    void receive(byte[] data){
+        lock.lock();
+        lastActivity = System.currentTimeMillis();
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            if(upgrade != null){
+                receiveUpgraded(buffer);
+                return;
+            }
+            // the connection is going to be closed after the queued requests were answered
+            if(failure != 0){
+                return;
+            }
+            if(served == 0 && !dispatched && queue.isEmpty() && !parser.isStarted() && server.isHTTP2Enabled()
+                    && HTTP2Connection.isPreface(buffer)){
+                // the client knows that the server speaks HTTP/2 ("prior knowledge")
+                upgrade = new HTTP2Connection(server);
+                upgrade.open(this);
+                receiveUpgraded(buffer);
+                return;
+            }
+            try {
+                while(buffer.hasRemaining() && !closed){
+                    if(parser.parse(buffer)){
+                        HTTPRequestReader request = parser.getRequest();
+                        queue.add(request);
+                        parser.reset();
+                        continued = false;
+                        if(server.getMaxPipelinedRequests() < queue.size()){
+                            // the requests before the limit are still answered
+                            deleteUploads(queue.pollLast());
+                            fail(503);
+                            return;
+                        }
+                        if(request.getField("Upgrade") != null){
+                            // the data after this request may belong to another protocol
+                            processNow();
+                            if(upgrade != null){
+                                receiveUpgraded(buffer);
+                                return;
+                            }
+                        }
+                    }
+                }
+            } catch(HTTPParseException e){
+                // answers the valid requests before the malformed one
+                fail(e.getStatusCode());
+                return;
+            }
+            process();
+            if(!dispatched){
+                sendContinue();
+            }
+        } finally {
+            lastActivity = System.currentTimeMillis();
+            lock.unlock();
+        }
+    }
+
+    // answers the queued requests, then responds an error and closes this connection
+    private void fail(int statusCode){
+        failure = statusCode;
+        process();
+        // otherwise the worker responds the error after the queued requests
+        if(!dispatched && !closed){
+            error(statusCode);
+        }
+    }
+
+    private void sendContinue(){
+        if(!closed && upgrade == null && failure == 0 && !continued && parser.isExpectingContinue()){
+            // the client waits for this before sending a large body
+            continued = true;
+            try {
+                client.send("HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            } catch(IOException e){
+                close();
+            }
+        }
+    }
+
+    // passes the queued requests to a worker, or answers them on this thread if there is no worker pool
+    private void process(){
+        if(queue.isEmpty() || closed || upgrade != null){
+            processNow();
+            return;
+        }
+        if(dispatched){
+            // the worker takes the new requests after the current one
+            return;
+        }
+        dispatched = true;
+        boolean pool;
+        try {
+            pool = server.dispatch(this::answer);
+        } catch(RejectedExecutionException e){
+            // fails fast when the server is overloaded
+            dispatched = false;
+            discardQueue();
+            error(503);
+            return;
+        }
+        if(!pool){
+            dispatched = false;
+            processNow();
+        }
+    }
+
+    // answers the queued requests on this thread, after the worker has answered the previous ones
+    private void processNow(){
+        while(dispatched){
+            idle.awaitUninterruptibly();
+        }
+        while(!queue.isEmpty() && !closed && upgrade == null){
+            respond(queue.poll());
+        }
+        if(closed){
+            discardQueue();
+        }
+    }
+
+    // called by a worker, the lock isn't held while the request handler is running
+    // so the connection thread can read the next requests in the meantime
+    private void answer(){
+        while(true){
+            HTTPRequestReader request;
+            lock.lock();
+            try {
+                request = closed || upgrade != null ? null : queue.poll();
+                if(request == null){
+                    if(closed){
+                        discardQueue();
+                    } else if(failure != 0 && upgrade == null){
+                        error(failure);
+                    } else {
+                        sendContinue();
+                    }
+                    dispatched = false;
+                    idle.signalAll();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                respond(request);
+            } catch(RuntimeException e){
+                e.printStackTrace();
+                close();
+            }
+            lastActivity = System.currentTimeMillis();
+        }
+    }
+
+    // deletes the uploaded files of the requests which won't be answered
+    private void discardQueue(){
+        for(HTTPRequestReader request : queue){
+            deleteUploads(request);
+        }
+        queue.clear();
+    }
+
+    private void receiveUpgraded(ByteBuffer buffer){
+        if(!buffer.hasRemaining() || closed){
+            return;
+        }
+        try {
+            upgrade.receive(buffer);
+        } catch(IOException e){
+            close();
+        } catch(RuntimeException e){
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    private void respond(HTTPRequestReader request){
+        boolean body = request.getRequestMethod() != HTTPRequestMethod.HEAD;
+        current = request;
+        served++;
+        if(server.isHTTP2Enabled() && request.getField("HTTP2-Settings") != null){
+            HTTP2Connection http2 = HTTP2Connection.upgrade(server, request);
+            if(http2 != null){
+                upgradeHTTP2(http2);
+                return;
+            }
+        }
+        HTTPResponseWriter response = new HTTPResponseWriter();
+        response.setConnection(this, !body);
+        int wait = server.acquire(client.getInetAddress());
+        try {
+            if(0 < wait){
+                response.setStatusCode(429);
+                response.setField("retry-after", Integer.toString(wait));
+            } else {
+                server.getHandler(request).request(client, request, response);
+            }
+        } catch(RuntimeException e){
+            e.printStackTrace();
+            deleteUploads(request);
+            if(response.isStreamed()){
+                // the header was already sent, so the response can't be replaced
+                close();
+                return;
+            }
+            response = new HTTPResponseWriter();
+            response.setStatusCode(500);
+        }
+        deleteUploads(request);
+        HTTPUpgrade upgrade = response.getUpgrade();
+        if(upgrade != null && !response.isStreamed()){
+            upgrade(request, response, upgrade);
+            return;
+        }
+        try {
+            if(response.isStreamed()){
+                response.finish();
+            } else {
+                commit(response, false);
+                response.send(client, body);
+            }
+        } catch(IOException e){
+            keepAlive = false;
+        }
+        if(!keepAlive){
+            close();
+        }
+    }
+
+    // the uploaded files which weren't moved by the request handler are deleted
+    static void deleteUploads(HTTPRequestReader request){
+        MultipartForm form = request.getMultipartForm();
+        if(form != null){
+            form.delete();
+        }
+    }
+
+    private void upgrade(HTTPRequestReader request, HTTPResponseWriter response, HTTPUpgrade upgrade){
+        response.setHTTPVersion("HTTP/1.0".equals(request.getHTTPVersion()) ? "HTTP/1.0" : "HTTP/1.1");
+        try {
+            client.send(response.writeHeader());
+        } catch(IOException e){
+            close();
+            return;
+        }
+        lock.lock();
+        try {
+            this.upgrade = upgrade;
+            upgrade.open(this);
+        } finally {
+            lock.unlock();
+        }
+        // the client may have disconnected while the protocol was being opened
+        if(isClosed()){
+            release();
+        }
+    }
+
+    // the request which asked for the upgrade is answered through HTTP/2 as the stream 1
+    private void upgradeHTTP2(HTTP2Connection http2){
+        try {
+            client.send(("HTTP/1.1 101 Switching Protocols\r\n"
+                    + "connection: Upgrade\r\n"
+                    + "upgrade: h2c\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        } catch(IOException e){
+            close();
+            return;
+        }
+        lock.lock();
+        try {
+            this.upgrade = http2;
+            http2.open(this);
+        } finally {
+            lock.unlock();
+        }
+        if(isClosed()){
+            release();
+        }
+    }
+
+    /**
+     * Sets the version and the connection fields of the response to the current request
+     * @param response the response
+     * @param streamed true if the length of the body is unknown
+     * @return true if the body should be sent as chunks
+     */
+    boolean commit(HTTPResponseWriter response, boolean streamed){
+        boolean http10 = "HTTP/1.0".equals(current.getHTTPVersion());
+        keepAlive = isKeepAlive(current, http10) && !"close".equalsIgnoreCase(response.getField("connection"))
+                && served < server.getMaxKeepAliveRequests()
+                // HTTP/1.0 clients don't understand chunks, the end of the body is marked by closing the connection
+                && !(streamed && http10);
+        response.setHTTPVersion(http10 ? "HTTP/1.0" : "HTTP/1.1");
+        if(keepAlive){
+            if(http10){
+                response.setField("connection", "keep-alive");
+            }
+            response.setField("keep-alive", "timeout=" + server.getKeepAliveTimeout() + ", max=" + (server.getMaxKeepAliveRequests() - served));
+        } else {
+            response.setField("connection", "close");
+            response.removeField("keep-alive");
+        }
+        return streamed && !http10;
+    }
+
+    private boolean isKeepAlive(HTTPRequestReader request, boolean http10){
+        String connection = request.getField("Connection");
+        if(connection == null){
+            return !http10;
+        }
+        for(String option : connection.split(",")){
+            option = option.trim();
+            if(option.equalsIgnoreCase("close")){
+                return false;
+            }
+            if(option.equalsIgnoreCase("keep-alive")){
+                return true;
+            }
+        }
+        return !http10;
+    }
+
+    /**
+     * Responds an error and closes this connection
+     * @param statusCode a status code
+     */
+    void error(int statusCode){
+        HTTPResponseWriter response = new HTTPResponseWriter();
+        response.setStatusCode(statusCode);
+        response.setField("connection", "close");
+        if(statusCode == 503){
+            response.setField("retry-after", Integer.toString(server.getRetryAfter()));
+        }
+        response.addData(HTTPResponseWriter.getReasonPhrase(statusCode));
+        try {
+            client.send(response.write());
+        } catch(IOException ignored) { }
+        close();
+    }
+
+    /**
+     * Checks did this connection stay idle for too long.<br>
+     * If a request is being read, the request timeout is used instead of the keep-alive timeout.<br>
+     * This method is called by the timer thread, a connection whose data is being handled isn't idle so it is skipped.
+     * @param now the current time in milliseconds
+     */
+    void checkTimeout(long now){
+        HTTPUpgrade upgrade = this.upgrade;
+        if(upgrade != null && !closed){
+            upgrade.checkTimeout(now);
+            return;
+        }
+        if(closed || !lock.tryLock()){
+            return;
+        }
+        try {
+            if(closed || this.upgrade != null || dispatched){
+                return;
+            }
+            if(parser.isStarted() || !queue.isEmpty()){
+                if(server.getRequestTimeout() * 1000L < now - lastActivity){
+                    error(408);
+                }
+            } else if(server.getKeepAliveTimeout() * 1000L < now - lastActivity){
+                close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isClosed(){
+        return this.closed || this.client.isClosed();
+    }
+
+    void close(){
+        closed = true;
+        try {
+            client.close();
+        } catch(IOException ignored) { }
+        release();
+    }
+
+    /**
+     * Notifies the protocol which took over this connection that the connection was closed
+     */
+    void release(){
+        // the body of a request may be cut off
+        parser.discard();
+        HTTPUpgrade upgrade = this.upgrade;
+        if(upgrade != null && released.compareAndSet(false, true)){
+            upgrade.closed();
+        }
+    }
+}
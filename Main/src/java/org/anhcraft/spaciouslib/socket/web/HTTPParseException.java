@@ -0,0 +1,30 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.IOException;
+
+/**
+ * This exception is thrown if an HTTP request is malformed or exceeds a limit
+ */
+public class HTTPParseException extends IOException {
+    private static final long serialVersionUID = 7286416938212035471L;
+
+    private int statusCode;
+
+    /**
+     * Creates a new HTTPParseException instance
+     * @param statusCode the status code which should be responded (e.g: 400, 413, 431, 501)
+     * @param message the detail message
+     */
+    public HTTPParseException(int statusCode, String message){
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Gets the status code which should be responded to the client
+     * @return the status code
+     */
+    public int getStatusCode(){
+        return this.statusCode;
+    }
+}
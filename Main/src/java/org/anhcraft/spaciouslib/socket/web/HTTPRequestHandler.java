@@ -0,0 +1,14 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+public interface HTTPRequestHandler {
+    /**
+     * This method will be called if there is a new HTTP request from a specific client.<br>
+     * The response will be sent automatically after this method returns.
+     * @param client the manager for the connection
+     * @param request the request
+     * @param response the response which will be sent to the client
+     */
+    void request(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response);
+}
@@ -0,0 +1,476 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * An incremental parser for HTTP/1.1 requests.<br>
+ * The data can be fed in many parts (e.g: every time it was received from a connection),
+ * the parser remembers where it stopped and continues from there.<br>
+ * One parser can be reused for all requests of a connection by calling {@link #reset()}.<br>
+ * If an upload directory was set, multipart/form-data bodies aren't buffered,
+ * they are passed to a {@link MultipartFormParser} while being received.
+ */
+public class HTTPRequestParser {
+    private static final int REQUEST_LINE = 0;
+    private static final int HEADER = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK_DATA = 4;
+    private static final int CHUNK_END = 5;
+    private static final int TRAILER = 6;
+    private static final int DONE = 7;
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final HTTPRequestMethod[] METHODS = HTTPRequestMethod.values();
+    private static final byte[][] METHOD_NAMES = new byte[METHODS.length][];
+    private static final int MAX_CHUNK_LINE = 1024;
+
+    static {
+        for(int i = 0; i < METHODS.length; i++){
+            METHOD_NAMES[i] = METHODS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private int maxHeaderSize = 8192;
+    private long maxBodySize = 2097152;
+    private Path uploadDirectory;
+    private long maxUploadSize = 104857600;
+    private long maxUploadFileSize = 104857600;
+
+    private int state = REQUEST_LINE;
+    // the request line and all header lines are kept in this buffer
+    private byte[] head = new byte[512];
+    private int headLength;
+    private int lineStart;
+    // target start, target end, version start, version end
+    private int[] requestLine = new int[4];
+    // name start, name end, value start, value end of each header
+    private int[] headers = new int[64];
+    private int headerCount;
+    private HTTPRequestMethod method;
+    private long contentLength = -1;
+    private boolean chunked;
+    private boolean transferEncoding;
+    private byte[] body = EMPTY;
+    private int bodyLength;
+    private long remaining;
+    // content type start, content type end
+    private int[] contentType = new int[]{-1, -1};
+    private boolean expectContinue;
+    private MultipartFormParser multipart;
+    private MultipartForm form;
+
+    /**
+     * Sets the maximum size of the request line and all headers
+     * @param size the size in bytes
+     */
+    public void setMaxHeaderSize(int size){
+        this.maxHeaderSize = size;
+    }
+
+    /**
+     * Sets the maximum size of the body
+     * @param size the size in bytes
+     */
+    public void setMaxBodySize(long size){
+        // the body is kept in an array
+        this.maxBodySize = Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Sets the directory where the files of multipart/form-data requests are stored
+     * @param directory the directory, or null if these requests should be buffered as other requests
+     */
+    public void setUploadDirectory(Path directory){
+        this.uploadDirectory = directory;
+    }
+
+    /**
+     * Sets the maximum size of the body of a multipart/form-data request if there is an upload directory
+     * @param size the size in bytes
+     */
+    public void setMaxUploadSize(long size){
+        this.maxUploadSize = size;
+    }
+
+    /**
+     * Sets the maximum size of each file of a multipart/form-data request
+     * @param size the size in bytes
+     */
+    public void setMaxUploadFileSize(long size){
+        this.maxUploadFileSize = size;
+    }
+
+    /**
+     * Parses the given data.<br>
+     * This method stops right after the end of a request, so the remaining bytes of the buffer
+     * belong to the next request.
+     * @param buffer the received data
+     * @return true if a request has been parsed completely
+     */
+    public boolean parse(ByteBuffer buffer) throws HTTPParseException {
+        while(state != DONE && buffer.hasRemaining()){
+            if(state == BODY || state == CHUNK_DATA){
+                readBody(buffer);
+                if(remaining == 0){
+                    state = state == BODY ? DONE : CHUNK_END;
+                }
+            } else if(readLine(buffer)){
+                handleLine();
+            }
+        }
+        if(state == DONE && multipart != null){
+            form = multipart.finish();
+            multipart = null;
+        }
+        return state == DONE;
+    }
+
+    /**
+     * Parses the given data
+     * @param data an array of bytes
+     * @param offset the offset of the data in the array
+     * @param length the length of the data
+     * @return true if a request has been parsed completely
+     */
+    public boolean parse(byte[] data, int offset, int length) throws HTTPParseException {
+        return parse(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Checks has a request been parsed completely
+     * @return true if yes
+     */
+    public boolean isDone(){
+        return state == DONE;
+    }
+
+    /**
+     * Checks has this parser started reading a request
+     * @return true if yes
+     */
+    public boolean isStarted(){
+        return state != REQUEST_LINE || 0 < headLength;
+    }
+
+    /**
+     * Checks is the client waiting for "100 Continue" before sending the body
+     * @return true if the header has been read and the client sent "Expect: 100-continue"
+     */
+    public boolean isExpectingContinue(){
+        return expectContinue && (state == BODY || state == CHUNK_SIZE);
+    }
+
+    /**
+     * Gets the request which has been parsed.<br>
+     * This method can only be called after the request was parsed completely.
+     * @return HTTPRequestReader object
+     */
+    public HTTPRequestReader getRequest(){
+        if(state != DONE){
+            throw new IllegalStateException("The request hasn't been parsed completely");
+        }
+        byte[] body = this.body.length == bodyLength ? this.body : Arrays.copyOf(this.body, bodyLength);
+        // the body array was handed to the reader
+        this.body = EMPTY;
+        HTTPRequestReader request = new HTTPRequestReader(method, Arrays.copyOf(head, headLength), requestLine.clone(),
+                Arrays.copyOf(headers, headerCount * 4), body);
+        // the form was handed to the reader
+        request.setMultipartForm(form);
+        form = null;
+        return request;
+    }
+
+    /**
+     * Deletes the uploaded files of the request which is being read.<br>
+     * This method should be called if the connection was closed before the request has been read completely.
+     */
+    public void discard(){
+        MultipartFormParser multipart = this.multipart;
+        if(multipart != null){
+            multipart.discard();
+        }
+        MultipartForm form = this.form;
+        if(form != null){
+            form.delete();
+        }
+    }
+
+    /**
+     * Resets this parser to read the next request
+     */
+    public void reset(){
+        state = REQUEST_LINE;
+        headLength = 0;
+        lineStart = 0;
+        headerCount = 0;
+        method = null;
+        contentLength = -1;
+        chunked = false;
+        transferEncoding = false;
+        bodyLength = 0;
+        remaining = 0;
+        contentType[0] = contentType[1] = -1;
+        expectContinue = false;
+        discard();
+        multipart = null;
+        form = null;
+    }
+
+    // copies the bytes until the end of the current line, returns true if the line is complete
+    private boolean readLine(ByteBuffer buffer) throws HTTPParseException {
+        while(buffer.hasRemaining()){
+            byte b = buffer.get();
+            if(headLength == head.length){
+                int limit = state == CHUNK_SIZE || state == CHUNK_END ? lineStart + MAX_CHUNK_LINE : maxHeaderSize;
+                if(limit <= headLength){
+                    throw new HTTPParseException(state == REQUEST_LINE ? 414 : 431, "The request header is too large");
+                }
+                head = Arrays.copyOf(head, Math.min(head.length * 2, limit));
+            }
+            head[headLength++] = b;
+            if(b == '\n'){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handleLine() throws HTTPParseException {
+        // excludes the line break
+        int end = headLength - 1;
+        if(lineStart < end && head[end - 1] == '\r'){
+            end--;
+        }
+        int start = lineStart;
+        switch(state){
+            case REQUEST_LINE:
+                if(start == end){
+                    // ignores empty lines before the request line
+                    headLength = lineStart;
+                    return;
+                }
+                handleRequestLine(start, end);
+                state = HEADER;
+                break;
+            case HEADER:
+                if(start == end){
+                    handleHeaderEnd();
+                } else {
+                    handleHeader(start, end);
+                }
+                break;
+            case CHUNK_SIZE:
+                remaining = parseChunkSize(start, end);
+                headLength = lineStart;
+                state = remaining == 0 ? TRAILER : CHUNK_DATA;
+                return;
+            case CHUNK_END:
+                if(start != end){
+                    throw new HTTPParseException(400, "Invalid chunk");
+                }
+                headLength = lineStart;
+                state = CHUNK_SIZE;
+                return;
+            case TRAILER:
+                // trailers are ignored
+                headLength = lineStart;
+                if(start == end){
+                    state = DONE;
+                }
+                return;
+        }
+        lineStart = headLength;
+    }
+
+    private void handleRequestLine(int start, int end) throws HTTPParseException {
+        int sp1 = indexOf((byte) ' ', start, end);
+        int sp2 = sp1 < 0 ? -1 : indexOf((byte) ' ', sp1 + 1, end);
+        if(sp1 < 0 || sp2 < 0){
+            throw new HTTPParseException(400, "Invalid request line");
+        }
+        method = null;
+        for(int i = 0; i < METHODS.length; i++){
+            byte[] name = METHOD_NAMES[i];
+            if(name.length == sp1 - start && regionMatches(start, name)){
+                method = METHODS[i];
+                break;
+            }
+        }
+        if(method == null){
+            throw new HTTPParseException(501, "Unsupported request method");
+        }
+        requestLine[0] = sp1 + 1;
+        requestLine[1] = sp2;
+        requestLine[2] = sp2 + 1;
+        requestLine[3] = end;
+    }
+
+    private void handleHeader(int start, int end) throws HTTPParseException {
+        if(head[start] == ' ' || head[start] == '\t'){
+            throw new HTTPParseException(400, "Obsolete line folding is not supported");
+        }
+        int colon = indexOf((byte) ':', start, end);
+        if(colon <= start){
+            throw new HTTPParseException(400, "Invalid header");
+        }
+        int valueStart = colon + 1;
+        while(valueStart < end && (head[valueStart] == ' ' || head[valueStart] == '\t')){
+            valueStart++;
+        }
+        int valueEnd = end;
+        while(valueStart < valueEnd && (head[valueEnd - 1] == ' ' || head[valueEnd - 1] == '\t')){
+            valueEnd--;
+        }
+        if(headers.length < (headerCount + 1) * 4){
+            headers = Arrays.copyOf(headers, headers.length * 2);
+        }
+        int i = headerCount * 4;
+        headers[i] = start;
+        headers[i + 1] = colon;
+        headers[i + 2] = valueStart;
+        headers[i + 3] = valueEnd;
+        headerCount++;
+        if(equalsIgnoreCase(start, colon, "Content-Length")){
+            long length = parseContentLength(valueStart, valueEnd);
+            // the body could be read in two ways (request smuggling)
+            if(0 <= contentLength && contentLength != length){
+                throw new HTTPParseException(400, "Conflicting content lengths");
+            }
+            contentLength = length;
+        } else if(equalsIgnoreCase(start, colon, "Transfer-Encoding")){
+            // the values of many headers are a list, so the last header has the last encoding
+            transferEncoding = true;
+            int codingStart = valueEnd - 7;
+            chunked = valueStart <= codingStart && equalsIgnoreCase(codingStart, valueEnd, "chunked")
+                    && (codingStart == valueStart || head[codingStart - 1] == ',' || head[codingStart - 1] == ' ' || head[codingStart - 1] == '\t');
+        } else if(equalsIgnoreCase(start, colon, "Content-Type")){
+            contentType[0] = valueStart;
+            contentType[1] = valueEnd;
+        } else if(equalsIgnoreCase(start, colon, "Expect")){
+            expectContinue = equalsIgnoreCase(valueStart, valueEnd, "100-continue");
+        }
+    }
+
+    private void handleHeaderEnd() throws HTTPParseException {
+        bodyLength = 0;
+        if(transferEncoding && !chunked){
+            // the end of the body can't be known (RFC 7230, section 3.3.3)
+            throw new HTTPParseException(400, "The last transfer coding must be chunked");
+        }
+        if(uploadDirectory != null && 0 <= contentType[0] && (chunked || 0 < contentLength)){
+            String type = new String(head, contentType[0], contentType[1] - contentType[0], StandardCharsets.ISO_8859_1);
+            String boundary = MultipartFormParser.getBoundary(type);
+            if(boundary != null){
+                if(!chunked && maxUploadSize < contentLength){
+                    throw new HTTPParseException(413, "The request body is too large");
+                }
+                multipart = new MultipartFormParser(boundary, uploadDirectory);
+                multipart.setMaxSize(maxUploadSize);
+                multipart.setMaxFileSize(maxUploadFileSize);
+                // the fields are kept in the memory as the other bodies
+                multipart.setMaxFieldsSize(maxBodySize);
+                remaining = contentLength;
+                state = chunked ? CHUNK_SIZE : BODY;
+                return;
+            }
+        }
+        if(chunked){
+            state = CHUNK_SIZE;
+        } else if(0 < contentLength){
+            if(maxBodySize < contentLength){
+                throw new HTTPParseException(413, "The request body is too large");
+            }
+            if(body.length < contentLength){
+                body = new byte[(int) contentLength];
+            }
+            remaining = contentLength;
+            state = BODY;
+        } else {
+            state = DONE;
+        }
+    }
+
+    private void readBody(ByteBuffer buffer) throws HTTPParseException {
+        int n = (int) Math.min(remaining, buffer.remaining());
+        // the client has started sending the body
+        expectContinue = false;
+        if(multipart != null){
+            ByteBuffer data = buffer.duplicate();
+            data.limit(data.position() + n);
+            multipart.parse(data);
+            buffer.position(buffer.position() + n);
+            remaining -= n;
+            return;
+        }
+        if(body.length < bodyLength + n){
+            if(maxBodySize < (long) bodyLength + n){
+                throw new HTTPParseException(413, "The request body is too large");
+            }
+            body = Arrays.copyOf(body, (int) Math.min(maxBodySize, Math.max(bodyLength + n, body.length * 2L)));
+        }
+        buffer.get(body, bodyLength, n);
+        bodyLength += n;
+        remaining -= n;
+    }
+
+    private long parseContentLength(int start, int end) throws HTTPParseException {
+        if(start == end){
+            throw new HTTPParseException(400, "Invalid content length");
+        }
+        long n = 0;
+        for(int i = start; i < end; i++){
+            int d = head[i] - '0';
+            if(d < 0 || 9 < d || Long.MAX_VALUE / 10 < n){
+                throw new HTTPParseException(400, "Invalid content length");
+            }
+            n = n * 10 + d;
+        }
+        return n;
+    }
+
+    private long parseChunkSize(int start, int end) throws HTTPParseException {
+        long n = 0;
+        int i = start;
+        for(; i < end; i++){
+            int d = Character.digit(head[i], 16);
+            if(d < 0){
+                break;
+            }
+            if((Long.MAX_VALUE >> 4) < n){
+                throw new HTTPParseException(400, "Invalid chunk size");
+            }
+            n = (n << 4) + d;
+        }
+        // chunk extensions (after ";") are ignored
+        if(i == start || (i < end && head[i] != ';' && head[i] != ' ' && head[i] != '\t')){
+            throw new HTTPParseException(400, "Invalid chunk size");
+        }
+        return n;
+    }
+
+    private int indexOf(byte b, int start, int end){
+        for(int i = start; i < end; i++){
+            if(head[i] == b){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionMatches(int start, byte[] bytes){
+        for(int i = 0; i < bytes.length; i++){
+            if(head[start + i] != bytes[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsIgnoreCase(int start, int end, String str){
+        return HTTPRequestReader.equalsIgnoreCase(head, start, end, str);
+    }
+}
@@ -6,32 +6,63 @@ import org.anhcraft.spaciouslib.utils.CommonUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A class helps you to read HTTP requests which was sent by a browser
  */
 public class HTTPRequestReader{
-    private HashMap<String, String> fields = new HashMap<>();
-    private List<String> acceptedMIMETypes = new ArrayList<>();
-    private List<String> acceptedEncodings = new ArrayList<>();
-    private List<String> acceptedLanguages = new ArrayList<>();
-    private HashMap<String, String> cookies = new HashMap<>();
+    private static final int USER_AGENT_CACHE_SIZE = 256;
+    // browsers send the same few user agents again and again, so the results are shared between requests
+    private static final UserAgentDetector USER_AGENT_DETECTOR = new UserAgentDetector();
+    private static final LinkedHashMap<String, UserAgentDetectionResult> USER_AGENT_CACHE = new LinkedHashMap<String, UserAgentDetectionResult>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserAgentDetectionResult> eldest){
+            return USER_AGENT_CACHE_SIZE < size();
+        }
+    };
+
+    private HashMap<String, String> fields;
+    private List<String> acceptedMIMETypes;
+    private List<String> acceptedEncodings;
+    private List<String> acceptedLanguages;
+    private HashMap<String, String> cookies;
     private String userAgent;
     private UserAgentDetectionResult userAgentDetection;
     private HTTPRequestMethod method;
     private String httpVersion;
     private String path;
-    private HashMap<String, String> queries = new HashMap<>();
-    private StringBuilder content = new StringBuilder();
+    private HashMap<String, String> queries;
+    private StringBuilder content;
+    private HashMap<String, String> pathParameters = new HashMap<>();
+    private MultipartForm multipartForm;
+
+    // the raw data of a request which was read by HTTPRequestParser
+    // all values are only decoded when they are needed
+    private byte[] head;
+    private int[] requestLine;
+    private int[] headers;
+    private byte[] body;
+    private String target;
 
     /**
      * Creates a new HTTPRequestReader instance
      * @param request a raw HTTP request
      */
     public HTTPRequestReader(String request){
+        fields = new HashMap<>();
+        acceptedMIMETypes = new ArrayList<>();
+        acceptedEncodings = new ArrayList<>();
+        acceptedLanguages = new ArrayList<>();
+        cookies = new HashMap<>();
+        queries = new HashMap<>();
+        content = new StringBuilder();
+
         // format of a request:
         // <REQUESTED HEADER>
         // \r\n
@@ -119,63 +150,292 @@ public class HTTPRequestReader{
                 fields.put(lr[0], line.substring(lr[0].length()+2));
             }
         }
-        userAgentDetection = new UserAgentDetector().parseUserAgent(this.userAgent);
+    }
+
+    protected HTTPRequestReader(HTTPRequestMethod method, byte[] head, int[] requestLine, int[] headers, byte[] body){
+        this.method = method;
+        this.head = head;
+        this.requestLine = requestLine;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Gets the value of the given header field.<br>
+     * The name of the field is case-insensitive.
+     * @param field the name of a field
+     * @return the value, or null if it doesn't exist
+     */
+    public String getField(String field){
+        if(head == null){
+            for(String f : fields.keySet()){
+                if(f.equalsIgnoreCase(field)){
+                    return fields.get(f);
+                }
+            }
+            return null;
+        }
+        for(int i = 0; i < headers.length; i += 4){
+            if(equalsIgnoreCase(head, headers[i], headers[i + 1], field)){
+                return decode(headers[i + 2], headers[i + 3]);
+            }
+        }
+        return null;
     }
 
     public String getUserAgent(){
+        if(userAgent == null && head != null){
+            userAgent = getField("User-Agent");
+        }
         return this.userAgent;
     }
 
     public List<String> getAcceptedMIMETypes(){
+        if(acceptedMIMETypes == null){
+            acceptedMIMETypes = splitField("Accept");
+        }
         return this.acceptedMIMETypes;
     }
 
     public List<String> getAcceptedLanguages(){
+        if(acceptedLanguages == null){
+            acceptedLanguages = splitField("Accept-Language");
+        }
         return this.acceptedLanguages;
     }
 
     public List<String> getAcceptedEncodings(){
+        if(acceptedEncodings == null){
+            acceptedEncodings = splitField("Accept-Encoding");
+        }
         return this.acceptedEncodings;
     }
 
     public HashMap<String, String> getCookies(){
+        if(cookies == null){
+            cookies = new HashMap<>();
+            String value = getField("Cookie");
+            if(value != null){
+                splitPairs(value, ';', cookies);
+            }
+        }
         return this.cookies;
     }
 
+    /**
+     * Gets the detection result of the user agent.<br>
+     * The user agent is only detected when this method is called, the results of the recent user agents are cached.
+     * @return the detection result
+     */
     public UserAgentDetectionResult getUserAgentDetection(){
+        if(userAgentDetection == null){
+            userAgentDetection = detectUserAgent(getUserAgent());
+        }
         return this.userAgentDetection;
     }
 
+    private static UserAgentDetectionResult detectUserAgent(String userAgent){
+        synchronized(USER_AGENT_CACHE){
+            UserAgentDetectionResult result = USER_AGENT_CACHE.get(userAgent);
+            if(result != null){
+                return result;
+            }
+        }
+        UserAgentDetectionResult result;
+        // the detector isn't guaranteed to be thread-safe
+        synchronized(USER_AGENT_DETECTOR){
+            result = USER_AGENT_DETECTOR.parseUserAgent(userAgent);
+        }
+        synchronized(USER_AGENT_CACHE){
+            USER_AGENT_CACHE.put(userAgent, result);
+        }
+        return result;
+    }
+
     public HTTPRequestMethod getRequestMethod(){
         return this.method;
     }
 
     public String getHTTPVersion(){
+        if(httpVersion == null && head != null){
+            httpVersion = decode(requestLine[2], requestLine[3]);
+        }
         return this.httpVersion;
     }
 
     public HashMap<String, String> getQueries(){
+        if(queries == null){
+            queries = new HashMap<>();
+            String target = getTarget();
+            int q = target.indexOf('?');
+            if(0 <= q){
+                splitPairs(target.substring(q + 1), '&', queries);
+            }
+        }
         return this.queries;
     }
 
     public String getPath(){
+        if(path == null && head != null){
+            String target = getTarget();
+            int q = target.indexOf('?');
+            path = q < 0 ? target : target.substring(0, q);
+        }
         return this.path;
     }
 
     public String getContent(){
+        if(content == null){
+            content = new StringBuilder(new String(body, StandardCharsets.UTF_8));
+        }
         return this.content.toString();
     }
 
+    /**
+     * Gets the raw body of this request
+     * @return an array of bytes
+     */
+    public byte[] getBody(){
+        if(body == null){
+            return getContent().getBytes(StandardCharsets.UTF_8);
+        }
+        return this.body;
+    }
+
+    /**
+     * Gets the form of this request if it was sent as multipart/form-data and the web server has an upload directory.<br>
+     * The body of such a request isn't kept, its files are stored in the upload directory
+     * and they are deleted after the request handler returns unless they were moved.
+     * @return the form, or null if it doesn't exist
+     */
+    public MultipartForm getMultipartForm(){
+        return this.multipartForm;
+    }
+
+    void setMultipartForm(MultipartForm multipartForm){
+        this.multipartForm = multipartForm;
+    }
+
+    /**
+     * Gets the value of the given path parameter.<br>
+     * Path parameters are captured by {@link HTTPRouter} from the path pattern of the matched route.
+     * @param name the name of a parameter (e.g: "name" for the pattern "/players/{name}")
+     * @return the value, or null if it doesn't exist
+     */
+    public String getPathParameter(String name){
+        return this.pathParameters.get(name);
+    }
+
+    /**
+     * Gets all path parameters
+     * @return a map of path parameters
+     */
+    public HashMap<String, String> getPathParameters(){
+        return this.pathParameters;
+    }
+
+    void setPathParameters(HashMap<String, String> pathParameters){
+        this.pathParameters = pathParameters;
+    }
+
     public HashMap<String, String> getFields(){
+        if(fields == null){
+            fields = new HashMap<>();
+            for(int i = 0; i < headers.length; i += 4){
+                fields.put(decode(headers[i], headers[i + 1]), decode(headers[i + 2], headers[i + 3]));
+            }
+        }
         return this.fields;
     }
 
+    private String getTarget(){
+        if(target == null){
+            target = head == null ? "" : decode(requestLine[0], requestLine[1]);
+        }
+        return target;
+    }
+
+    private String decode(int start, int end){
+        return new String(head, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private List<String> splitField(String field){
+        List<String> list = new ArrayList<>();
+        String value = getField(field);
+        if(value != null){
+            int start = 0;
+            while(start <= value.length()){
+                int end = value.indexOf(',', start);
+                if(end < 0){
+                    end = value.length();
+                }
+                String s = value.substring(start, end).trim();
+                if(!s.isEmpty()){
+                    list.add(s);
+                }
+                start = end + 1;
+            }
+        }
+        return list;
+    }
+
+    private static void splitPairs(String str, char separator, HashMap<String, String> map){
+        int start = 0;
+        while(start < str.length()){
+            int end = str.indexOf(separator, start);
+            if(end < 0){
+                end = str.length();
+            }
+            int eq = str.indexOf('=', start);
+            if(0 <= eq && eq < end){
+                map.put(str.substring(start, eq).trim(), str.substring(eq + 1, end).trim());
+            }
+            start = end + 1;
+        }
+    }
+
+    // decodes percent-encoded characters (e.g: "%20")
+    static String decodePath(String str){
+        if(str.indexOf('%') < 0){
+            return str;
+        }
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        int length = 0;
+        for(int i = 0; i < bytes.length; i++){
+            int h;
+            int l;
+            if(bytes[i] == '%' && i + 2 < bytes.length
+                    && 0 <= (h = Character.digit(bytes[i + 1], 16))
+                    && 0 <= (l = Character.digit(bytes[i + 2], 16))){
+                bytes[length++] = (byte) (h * 16 + l);
+                i += 2;
+            } else {
+                bytes[length++] = bytes[i];
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    static boolean equalsIgnoreCase(byte[] bytes, int start, int end, String str){
+        if(end - start != str.length()){
+            return false;
+        }
+        for(int i = 0; i < str.length(); i++){
+            int a = bytes[start + i];
+            int b = str.charAt(i);
+            if(a != b && Character.toLowerCase(a) != Character.toLowerCase(b)){
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o){
         if(o != null && o.getClass() == this.getClass()){
             HTTPRequestReader h = (HTTPRequestReader) o;
             return new EqualsBuilder()
-                    .append(h.fields, this.fields)
+                    .append(h.getFields(), this.getFields())
                     .build();
         }
         return false;
@@ -184,6 +444,6 @@ public class HTTPRequestReader{
     @Override
     public int hashCode(){
         return new HashCodeBuilder(31, 19)
-                .append(this.fields).toHashCode();
+                .append(this.getFields()).toHashCode();
     }
 }
@@ -0,0 +1,295 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A class helps you to keep the compressed bodies of files in the memory, so that they don't need to be compressed again
+ * every time they are requested.<br>
+ * An entry is identified by the path of a file and its encoding (e.g: "gzip"). It is only used while the size
+ * and the last modified time of the file are unchanged.<br>
+ * The total size of all entries is limited, the least recently used entries are evicted first.
+ */
+public class HTTPResponseCache {
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize;
+    private long maxEntrySize = 1048576;
+    private long size;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a new HTTPResponseCache instance
+     * @param maxSize the maximum total size of all cached bodies in bytes
+     */
+    public HTTPResponseCache(long maxSize){
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets the maximum size of a file which can be cached.<br>
+     * Bigger files are always sent as they are.
+     * @param size the size in bytes
+     * @return this object
+     */
+    public HTTPResponseCache setMaxEntrySize(long size){
+        this.maxEntrySize = size;
+        return this;
+    }
+
+    /**
+     * Gets the maximum size of a file which can be cached
+     * @return the size in bytes
+     */
+    public long getMaxEntrySize(){
+        return this.maxEntrySize;
+    }
+
+    /**
+     * Gets the cached body of the given file
+     * @param file the path of a file
+     * @param encoding the encoding (e.g: "gzip")
+     * @param size the current size of the file
+     * @param lastModified the current last modified time of the file
+     * @return the body, or null if it isn't cached or the file was changed
+     */
+    public synchronized byte[] get(Path file, String encoding, long size, long lastModified){
+        Key key = new Key(file, encoding);
+        Entry entry = entries.get(key);
+        if(entry == null){
+            misses++;
+            return null;
+        }
+        if(entry.fileSize != size || entry.lastModified != lastModified){
+            // the file was changed
+            remove(key);
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.data;
+    }
+
+    /**
+     * Puts the given body into the cache
+     * @param file the path of a file
+     * @param encoding the encoding (e.g: "gzip")
+     * @param size the size of the file which the body was created from
+     * @param lastModified the last modified time of the file which the body was created from
+     * @param data the body
+     */
+    public synchronized void put(Path file, String encoding, long size, long lastModified, byte[] data){
+        if(maxSize < data.length){
+            return;
+        }
+        Key key = new Key(file, encoding);
+        remove(key);
+        entries.put(key, new Entry(size, lastModified, data));
+        this.size += data.length;
+        Iterator<Entry> it = entries.values().iterator();
+        while(maxSize < this.size && it.hasNext()){
+            this.size -= it.next().data.length;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Gets the GZip-compressed body of the given file.<br>
+     * If it isn't cached, the file is read and compressed, then put into the cache.
+     * @param file the path of a file
+     * @param size the current size of the file
+     * @param lastModified the current last modified time of the file
+     * @return the compressed body, or null if the file is too big to be cached or it isn't the given size
+     * and last modified time anymore (the body wouldn't match them)
+     */
+    public byte[] getGZip(Path file, long size, long lastModified) throws IOException {
+        if(maxEntrySize < size){
+            return null;
+        }
+        byte[] data = get(file, "gzip", size, lastModified);
+        if(data == null){
+            // compresses outside of the lock, the same file may be compressed twice at the same time but that is harmless
+            byte[] content = read(file, size, lastModified);
+            if(content == null){
+                return null;
+            }
+            data = compress(content);
+            put(file, "gzip", size, lastModified, data);
+        }
+        return data;
+    }
+
+    /**
+     * Removes all cached bodies of the given file, or of all files inside the given directory
+     * @param file the path of a file or a directory
+     */
+    public synchronized void invalidate(Path file){
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<Key, Entry> entry = it.next();
+            if(entry.getKey().file.startsWith(file)){
+                size -= entry.getValue().data.length;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached bodies
+     */
+    public synchronized void invalidateAll(){
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Gets the total size of all cached bodies
+     * @return the size in bytes
+     */
+    public synchronized long getSize(){
+        return this.size;
+    }
+
+    /**
+     * Gets the amount of cached bodies
+     * @return the amount
+     */
+    public synchronized int getEntries(){
+        return this.entries.size();
+    }
+
+    /**
+     * Gets the amount of lookups which found a valid body
+     * @return the amount
+     */
+    public synchronized long getHits(){
+        return this.hits;
+    }
+
+    /**
+     * Gets the amount of lookups which didn't find a valid body
+     * @return the amount
+     */
+    public synchronized long getMisses(){
+        return this.misses;
+    }
+
+    /**
+     * Gets the amount of bodies which were evicted to stay under the size limit
+     * @return the amount
+     */
+    public synchronized long getEvictions(){
+        return this.evictions;
+    }
+
+    /**
+     * Registers the statistics of this cache to the given registry.<br>
+     * All metrics have the label "cache" which is the given name.
+     * @param registry the registry
+     * @param name the name of this cache
+     */
+    public void registerMetrics(MetricsRegistry registry, String name){
+        String[] labels = new String[]{"cache", name};
+        registry.counter("spaciouslib_cache_hits_total", "The amount of lookups which found a valid entry", labels, this::getHits)
+                .counter("spaciouslib_cache_misses_total", "The amount of lookups which didn't find a valid entry", labels, this::getMisses)
+                .counter("spaciouslib_cache_evictions_total", "The amount of entries which were evicted", labels, this::getEvictions)
+                .gauge("spaciouslib_cache_entries", "The amount of entries", labels, this::getEntries)
+                .gauge("spaciouslib_cache_size_bytes", "The total size of all entries", labels, this::getSize);
+    }
+
+    private void remove(Key key){
+        Entry old = entries.remove(key);
+        if(old != null){
+            size -= old.data.length;
+        }
+    }
+
+    // reads the file through one channel, returns null if it was changed before or while reading
+    private static byte[] read(Path file, long size, long lastModified) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(!isUnchanged(file, channel, size, lastModified)){
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining()){
+                if(channel.read(buffer) < 0){
+                    return null;
+                }
+            }
+            return isUnchanged(file, channel, size, lastModified) ? buffer.array() : null;
+        }
+    }
+
+    private static boolean isUnchanged(Path file, FileChannel channel, long size, long lastModified) throws IOException {
+        return channel.size() == size && Files.getLastModifiedTime(file).toMillis() == lastModified;
+    }
+
+    // the body is only compressed once, so the best compression is worth it
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 3));
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out){
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }){
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Key {
+        private Path file;
+        private String encoding;
+
+        private Key(Path file, String encoding){
+            this.file = file;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(o != null && o.getClass() == this.getClass()){
+                Key k = (Key) o;
+                return new EqualsBuilder()
+                        .append(k.file, this.file)
+                        .append(k.encoding, this.encoding)
+                        .build();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode(){
+            return new HashCodeBuilder(23, 31)
+                    .append(this.file).append(this.encoding).toHashCode();
+        }
+    }
+
+    private static class Entry {
+        private long fileSize;
+        private long lastModified;
+        private byte[] data;
+
+        private Entry(long fileSize, long lastModified, byte[] data){
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+    }
+}
@@ -1,41 +1,67 @@
 package org.anhcraft.spaciouslib.socket.web;
 
-import org.anhcraft.spaciouslib.utils.GZipUtils;
+import org.anhcraft.spaciouslib.socket.SocketHandler;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * A class helps you to write HTTP response to send it to a browser
+ * A class helps you to write HTTP response to send it to a browser.<br>
+ * The body can be either buffered (by {@link #addData(byte[])}) or streamed (by {@link #getOutputStream()}).
  */
 public class HTTPResponseWriter {
     private HashMap<String, String> fields = new HashMap<>();
     private List<byte[]> data = new ArrayList<>();
-    private String HTTPVersion = "HTTP/2.0";
+    private String HTTPVersion = "HTTP/1.1";
     private int statusCode = 200;
     private int contentLength = 0;
     private boolean gzip;
+    private Path file;
+    private long fileOffset;
+    private long fileLength;
+    // the compressed body is only created once when the response is written
+    private boolean compressed;
+    // the connection which this response belongs to, it is needed for streaming
+    private HTTPConnection connection;
+    // the HTTP/2 stream which this response belongs to, instead of a connection
+    private HTTP2Stream http2Stream;
+    private boolean excludeBody;
+    private OutputStream stream;
+    private HTTPUpgrade upgrade;
 
     /**
      * Creates a new HTTPResponseWriter instance
      */
     public HTTPResponseWriter(){
         setField("content-length", "0");
-        setField("date", new Date().toString());
+        setField("date", formatDate(System.currentTimeMillis()));
     }
 
     /**
-     * Enables or disables the GZip compression
+     * Enables or disables the GZip compression.<br>
+     * The whole body is compressed as one GZip stream, no matter how many times the data was added.<br>
+     * A file body (see {@link #setFile(Path, long, long)}) is never compressed, so this method can't enable it for that.
      * @param enable true if you want to enable
      */
     public void setGZip(boolean enable){
+        if(stream != null){
+            throw new IllegalStateException("The response was already streamed");
+        }
+        if(file != null){
+            enable = false;
+        }
         if(enable){
             setField("content-encoding", "gzip");
         } else {
@@ -48,10 +74,19 @@ public class HTTPResponseWriter {
      * Removes the given field out of this HTTP response
      * @param field a field
      */
-    private void removeField(String field) {
+    public void removeField(String field) {
         fields.remove(field);
     }
 
+    /**
+     * Gets the value of the given HTTP header field
+     * @param field a field
+     * @return the value of that field
+     */
+    public String getField(String field){
+        return this.fields.get(field);
+    }
+
     /**
      * Sets the HTTP version
      * @param version the version
@@ -68,23 +103,78 @@ public class HTTPResponseWriter {
         this.statusCode = code;
     }
 
+    /**
+     * Gets the status code
+     * @return the status code
+     */
+    public int getStatusCode(){
+        return this.statusCode;
+    }
+
     /**
      * Adds the given data to the body of this HTTP response
      * @param data an array of bytes
+     * @throws IllegalStateException if the body is a file (see {@link #setFile(Path, long, long)})
      */
     public void addData(byte[] data){
-        if(gzip){
-            try {
-                data = GZipUtils.compress(data);
-            } catch(IOException e) {
-                e.printStackTrace();
-            }
+        if(stream != null){
+            throw new IllegalStateException("The response was already streamed");
+        }
+        if(compressed){
+            throw new IllegalStateException("The body was already compressed");
+        }
+        if(file != null){
+            throw new IllegalStateException("The body is a file");
         }
         this.data.add(data);
         contentLength += data.length;
         setField("content-length", Integer.toString(contentLength));
     }
 
+    /**
+     * Uses the given data which was already encoded (e.g: compressed by GZip) as the body of this HTTP response.<br>
+     * The data won't be compressed again even if GZip compression is enabled.
+     * @param data an array of bytes
+     * @param encoding the encoding of the data (e.g: "gzip")
+     */
+    public void setData(byte[] data, String encoding){
+        if(stream != null){
+            throw new IllegalStateException("The response was already streamed");
+        }
+        this.data.clear();
+        this.data.add(data);
+        this.contentLength = data.length;
+        this.compressed = true;
+        this.file = null;
+        setField("content-encoding", encoding);
+        setField("content-length", Integer.toString(contentLength));
+    }
+
+    /**
+     * Uses a region of the given file as the body of this HTTP response.<br>
+     * The file will be streamed directly from the disk when the response is sent, so it is sent as it is:
+     * GZip compression is disabled and the "content-encoding" field is removed
+     * (set the field again after this method if the file was already encoded).<br>
+     * No data can be added to the body afterwards.
+     * @param file the path of a file
+     * @param offset the position of the region
+     * @param length the length of the region
+     */
+    public void setFile(Path file, long offset, long length){
+        if(stream != null){
+            throw new IllegalStateException("The response was already streamed");
+        }
+        this.gzip = false;
+        removeField("content-encoding");
+        this.data.clear();
+        this.contentLength = 0;
+        this.compressed = false;
+        this.file = file;
+        this.fileOffset = offset;
+        this.fileLength = length;
+        setField("content-length", Long.toString(length));
+    }
+
     /**
      * Adds the given data to the body of this HTTP response
      * @param data a string
@@ -107,17 +197,243 @@ public class HTTPResponseWriter {
      * @return an array of bytes
      */
     public byte[] write() throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        StringBuilder header = new StringBuilder(HTTPVersion + " " + statusCode + "\r\n");
+        byte[] header = writeHeader();
+        byte[] response = new byte[header.length + contentLength];
+        System.arraycopy(header, 0, response, 0, header.length);
+        int pos = header.length;
+        for(byte[] data : data){
+            System.arraycopy(data, 0, response, pos, data.length);
+            pos += data.length;
+        }
+        return response;
+    }
+
+    // compresses all data which was added as one GZip stream
+    private void compress() throws IOException {
+        if(!gzip || compressed || file != null){
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, contentLength / 2));
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)){
+            for(byte[] data : data){
+                gzip.write(data);
+            }
+        }
+        data.clear();
+        data.add(out.toByteArray());
+        contentLength = out.size();
+        setField("content-length", Integer.toString(contentLength));
+        compressed = true;
+    }
+
+    /**
+     * Gets the output stream which writes the body of this response directly to the connection.<br>
+     * The status code and the header fields must be set before this method is called,
+     * the header is sent immediately and can't be changed afterwards.<br>
+     * The body is sent as chunks ("Transfer-Encoding: chunked", or DATA frames for HTTP/2), so its length doesn't need to be known.
+     * If GZip compression is enabled, the data is compressed as one stream while it is written.
+     * Calling {@link OutputStream#flush()} sends all data which was written so far.<br>
+     * The stream is finished automatically after the request handler returns.<br>
+     * This method only works with responses which were created by {@link WebServerManager}.
+     * @return the output stream
+     */
+    public OutputStream getOutputStream() throws IOException {
+        if(stream != null){
+            return stream;
+        }
+        if(connection == null && http2Stream == null){
+            throw new IllegalStateException("The response doesn't belong to any connection");
+        }
+        removeField("content-length");
+        data.clear();
+        contentLength = 0;
+        compressed = true;
+        file = null;
+        OutputStream out;
+        if(http2Stream != null){
+            out = http2Stream.openOutputStream(this, excludeBody);
+        } else {
+            // decides the version and the connection fields
+            boolean chunked = connection.commit(this, true);
+            if(chunked){
+                setField("transfer-encoding", "chunked");
+            }
+            SocketHandler client = connection.getClient();
+            client.send(writeHeader());
+            out = new HTTPChunkedOutputStream(client, chunked, excludeBody, 8192);
+        }
+        // sync flush makes sure that flush() sends everything which was compressed so far
+        stream = gzip ? new GZIPOutputStream(out, 8192, true) : out;
+        return stream;
+    }
+
+    /**
+     * Checks was the body of this response streamed
+     * @return true if yes
+     */
+    public boolean isStreamed(){
+        return this.stream != null;
+    }
+
+    /**
+     * Lets the given protocol take over the connection after this response was sent.<br>
+     * Only the header of this response is sent.
+     * @param upgrade the protocol
+     */
+    void setUpgrade(HTTPUpgrade upgrade){
+        this.upgrade = upgrade;
+    }
+
+    HTTPUpgrade getUpgrade(){
+        return this.upgrade;
+    }
+
+    void setConnection(HTTPConnection connection, boolean excludeBody){
+        this.connection = connection;
+        this.excludeBody = excludeBody;
+    }
+
+    void setStream(HTTP2Stream stream, boolean excludeBody){
+        this.http2Stream = stream;
+        this.excludeBody = excludeBody;
+    }
+
+    /**
+     * Finishes the streamed body (the GZip trailer and the last chunk are sent).<br>
+     * Nothing happens if the request handler already closed the stream.
+     */
+    void finish() throws IOException {
+        if(stream != null){
+            stream.close();
+        }
+    }
+
+    HashMap<String, String> getFields(){
+        return this.fields;
+    }
+
+    /**
+     * Gets the buffered body, it is compressed first if GZip compression is enabled
+     * @return the parts of the body
+     */
+    List<byte[]> getData() throws IOException {
+        compress();
+        return this.data;
+    }
+
+    int getContentLength(){
+        return this.contentLength;
+    }
+
+    Path getFile(){
+        return this.file;
+    }
+
+    long getFileOffset(){
+        return this.fileOffset;
+    }
+
+    long getFileLength(){
+        return this.fileLength;
+    }
+
+    /**
+     * Sends this response through the given connection
+     * @param client the manager of a connection
+     * @param body false if the body should be excluded (e.g: for responding HEAD requests)
+     */
+    public void send(SocketHandler client, boolean body) throws IOException {
+        if(stream != null){
+            throw new IllegalStateException("The response was already streamed");
+        }
+        if(!body){
+            client.send(writeHeader());
+        } else if(file != null){
+            client.send(writeHeader(), file, fileOffset, fileLength);
+        } else {
+            client.send(write());
+        }
+    }
+
+    /**
+     * Writes the status line and the header fields of this response to byte array.<br>
+     * The body is excluded (e.g: for responding HEAD requests).
+     * @return an array of bytes
+     */
+    public byte[] writeHeader() throws IOException {
+        compress();
+        StringBuilder header = new StringBuilder(HTTPVersion + " " + statusCode + " " + getReasonPhrase(statusCode) + "\r\n");
         for(String field : fields.keySet()){
             header.append(field).append(": ").append(fields.get(field)).append("\r\n");
         }
         header.append("\r\n");
-        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
-        for(byte[] data : data){
-            out.write(data);
+        return header.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Formats the given time as an HTTP date (e.g: "Sun, 06 Nov 1994 08:49:37 GMT")
+     * @param time the time in milliseconds
+     * @return the formatted date
+     */
+    public static String formatDate(long time){
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(time).atOffset(ZoneOffset.UTC));
+    }
+
+    /**
+     * Parses the given HTTP date
+     * @param date the date (e.g: "Sun, 06 Nov 1994 08:49:37 GMT")
+     * @return the time in milliseconds, or -1 if the date is invalid
+     */
+    public static long parseDate(String date){
+        try {
+            return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.trim())).toEpochMilli();
+        } catch(RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the reason phrase of the given status code
+     * @param code a status code
+     * @return the reason phrase, or an empty string if the status code is unknown
+     */
+    public static String getReasonPhrase(int code){
+        switch(code){
+            case 100: return "Continue";
+            case 101: return "Switching Protocols";
+            case 200: return "OK";
+            case 201: return "Created";
+            case 202: return "Accepted";
+            case 204: return "No Content";
+            case 206: return "Partial Content";
+            case 301: return "Moved Permanently";
+            case 302: return "Found";
+            case 303: return "See Other";
+            case 304: return "Not Modified";
+            case 307: return "Temporary Redirect";
+            case 308: return "Permanent Redirect";
+            case 400: return "Bad Request";
+            case 401: return "Unauthorized";
+            case 403: return "Forbidden";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
+            case 411: return "Length Required";
+            case 412: return "Precondition Failed";
+            case 413: return "Payload Too Large";
+            case 414: return "URI Too Long";
+            case 416: return "Range Not Satisfiable";
+            case 426: return "Upgrade Required";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 502: return "Bad Gateway";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            case 505: return "HTTP Version Not Supported";
+            default: return "";
         }
-        return out.toByteArray();
     }
 
     @Override
@@ -0,0 +1,237 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A class helps you to route HTTP requests to different handlers based on their method and path.<br>
+ * A path pattern consists of segments which are separated by "/", each segment can be:<br>
+ * - a static name (e.g: "players")<br>
+ * - a parameter (e.g: "{name}"), it matches any segment and its value can be got by {@link HTTPRequestReader#getPathParameter(String)}<br>
+ * - a wildcard "*" (only at the end), it matches the rest of the path which is also stored as the parameter "*"<br>
+ * Static segments have higher priority than parameters, parameters have higher priority than wildcards.
+ */
+public class HTTPRouter implements HTTPRequestHandler {
+    private Node root = new Node();
+    private HTTPRequestHandler notFoundHandler;
+
+    /**
+     * Registers a handler for the given method and path pattern
+     * @param method a request method
+     * @param pattern a path pattern (e.g: "/players/{name}/stats")
+     * @param handler a handler
+     * @return this object
+     */
+    public HTTPRouter register(HTTPRequestMethod method, String pattern, HTTPRequestHandler handler){
+        Node node = root;
+        List<String> segments = split(pattern);
+        for(int i = 0; i < segments.size(); i++){
+            String segment = segments.get(i);
+            if(segment.equals("*")){
+                if(i != segments.size() - 1){
+                    throw new IllegalArgumentException("A wildcard must be the last segment: " + pattern);
+                }
+                if(node.wildcard == null){
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else if(segment.startsWith("{") && segment.endsWith("}")){
+                String name = segment.substring(1, segment.length() - 1);
+                if(node.parameter == null){
+                    node.parameter = new Node();
+                    node.parameterName = name;
+                } else if(!node.parameterName.equals(name)){
+                    throw new IllegalArgumentException("The parameter {" + name + "} conflicts with {" + node.parameterName + "}: " + pattern);
+                }
+                node = node.parameter;
+            } else {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+        }
+        if(node.handlers.containsKey(method)){
+            throw new IllegalArgumentException("The route was already registered: " + method + " " + pattern);
+        }
+        node.handlers.put(method, handler);
+        return this;
+    }
+
+    /**
+     * Registers a handler for all methods at the given path pattern
+     * @param pattern a path pattern
+     * @param handler a handler
+     * @return this object
+     */
+    public HTTPRouter register(String pattern, HTTPRequestHandler handler){
+        for(HTTPRequestMethod method : HTTPRequestMethod.values()){
+            register(method, pattern, handler);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the handler which will be called if no route matches a request.<br>
+     * By default, the router responds "404 Not Found".
+     * @param handler a handler
+     * @return this object
+     */
+    public HTTPRouter setNotFoundHandler(HTTPRequestHandler handler){
+        this.notFoundHandler = handler;
+        return this;
+    }
+
+    @Override
+    public void request(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response) {
+        String path = request.getPath();
+        if(path == null){
+            notFound(client, request, response);
+            return;
+        }
+        HTTPRequestMethod method = request.getRequestMethod();
+        List<String> values = new ArrayList<>(4);
+        Node node = match(root, path, 0, method, values);
+        if(node == null){
+            // the path may still match routes of other methods
+            EnumSet<HTTPRequestMethod> allowed = EnumSet.noneOf(HTTPRequestMethod.class);
+            collectMethods(root, path, 0, allowed);
+            if(allowed.isEmpty()){
+                notFound(client, request, response);
+                return;
+            }
+            // HEAD is answered by the GET handler
+            if(allowed.contains(HTTPRequestMethod.GET)){
+                allowed.add(HTTPRequestMethod.HEAD);
+            }
+            StringBuilder allow = new StringBuilder();
+            for(HTTPRequestMethod m : allowed){
+                if(0 < allow.length()){
+                    allow.append(", ");
+                }
+                allow.append(m.name());
+            }
+            response.setStatusCode(405);
+            response.setField("allow", allow.toString());
+            return;
+        }
+        if(!values.isEmpty()){
+            HashMap<String, String> parameters = new HashMap<>();
+            for(int i = 0; i < values.size(); i += 2){
+                parameters.put(values.get(i + 1), values.get(i));
+            }
+            request.setPathParameters(parameters);
+        }
+        getHandler(node, method).request(client, request, response);
+    }
+
+    private void notFound(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response){
+        if(notFoundHandler != null){
+            notFoundHandler.request(client, request, response);
+        } else {
+            response.setStatusCode(404);
+        }
+    }
+
+    // HEAD requests are handled by the GET handler if there isn't a HEAD handler
+    private static HTTPRequestHandler getHandler(Node node, HTTPRequestMethod method){
+        HTTPRequestHandler handler = node.handlers.get(method);
+        if(handler == null && method == HTTPRequestMethod.HEAD){
+            handler = node.handlers.get(HTTPRequestMethod.GET);
+        }
+        return handler;
+    }
+
+    // finds the node which matches the path from the given position and has a handler for the method,
+    // a branch which only has handlers for other methods is backtracked as a branch which doesn't match
+    // each captured value is added with its parameter name after it
+    private Node match(Node node, String path, int pos, HTTPRequestMethod method, List<String> values){
+        int start = skipSlashes(path, pos);
+        if(start == path.length()){
+            if(getHandler(node, method) != null){
+                return node;
+            }
+            if(node.wildcard != null && getHandler(node.wildcard, method) != null){
+                values.add("");
+                values.add("*");
+                return node.wildcard;
+            }
+            return null;
+        }
+        int end = nextSlash(path, start);
+        Node child = node.children.get(path.substring(start, end));
+        if(child != null){
+            Node result = match(child, path, end, method, values);
+            if(result != null){
+                return result;
+            }
+        }
+        if(node.parameter != null){
+            Node result = match(node.parameter, path, end, method, values);
+            if(result != null){
+                values.add(HTTPRequestReader.decodePath(path.substring(start, end)));
+                values.add(node.parameterName);
+                return result;
+            }
+        }
+        if(node.wildcard != null && getHandler(node.wildcard, method) != null){
+            values.add(HTTPRequestReader.decodePath(path.substring(start)));
+            values.add("*");
+            return node.wildcard;
+        }
+        return null;
+    }
+
+    // adds the methods of all routes which match the path from the given position
+    private void collectMethods(Node node, String path, int pos, EnumSet<HTTPRequestMethod> methods){
+        int start = skipSlashes(path, pos);
+        if(node.wildcard != null){
+            methods.addAll(node.wildcard.handlers.keySet());
+        }
+        if(start == path.length()){
+            methods.addAll(node.handlers.keySet());
+            return;
+        }
+        int end = nextSlash(path, start);
+        Node child = node.children.get(path.substring(start, end));
+        if(child != null){
+            collectMethods(child, path, end, methods);
+        }
+        if(node.parameter != null){
+            collectMethods(node.parameter, path, end, methods);
+        }
+    }
+
+    private static int skipSlashes(String path, int pos){
+        while(pos < path.length() && path.charAt(pos) == '/'){
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int nextSlash(String path, int pos){
+        int end = path.indexOf('/', pos);
+        return end < 0 ? path.length() : end;
+    }
+
+    private static List<String> split(String pattern){
+        List<String> segments = new ArrayList<>();
+        int pos = skipSlashes(pattern, 0);
+        while(pos < pattern.length()){
+            int end = nextSlash(pattern, pos);
+            segments.add(pattern.substring(pos, end));
+            pos = skipSlashes(pattern, end);
+        }
+        return segments;
+    }
+
+    private static class Node {
+        private HashMap<String, Node> children = new HashMap<>();
+        private Node parameter;
+        private String parameterName;
+        private Node wildcard;
+        private EnumMap<HTTPRequestMethod, HTTPRequestHandler> handlers = new EnumMap<>(HTTPRequestMethod.class);
+    }
+}
@@ -0,0 +1,383 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+import org.anhcraft.spaciouslib.socket.ServerSocketHandler;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A socket handler which reads HTTP requests from the connections of a web server
+ * and passes them to an HTTP request handler.
+ */
+class HTTPServerHandler implements ServerSocketHandler {
+    private HTTPRequestHandler handler;
+    private ConcurrentHashMap<ServerSocketClientManager, HTTPConnection> connections = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+    private volatile int keepAliveTimeout = 15;
+    private volatile int requestTimeout = 30;
+    private volatile int maxKeepAliveRequests = 1000;
+    private volatile int maxPipelinedRequests = 32;
+    private volatile int maxHeaderSize = 8192;
+    private volatile long maxBodySize = 2097152;
+    private volatile Path uploadDirectory;
+    private volatile long maxUploadSize = 104857600;
+    private volatile long maxUploadFileSize = 104857600;
+    private volatile int retryAfter = 1;
+    // the requests are answered by the connection threads if there is no worker pool
+    private volatile ThreadPoolExecutor workers;
+    // the streams of HTTP/2 connections are handled by these threads if there is no worker pool
+    private volatile ThreadPoolExecutor streamWorkers;
+    private volatile boolean http2 = true;
+    private volatile double rateLimit;
+    private volatile int rateLimitBurst;
+    private ConcurrentHashMap<InetAddress, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private volatile String metricsPath;
+    private volatile HTTPRequestHandler metricsHandler;
+    private LongAdder rejectedRequests = new LongAdder();
+    private LongAdder rateLimitedRequests = new LongAdder();
+
+    HTTPServerHandler(HTTPRequestHandler handler){
+        this.handler = handler;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SpaciousLib HTTP timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.scheduleWithFixedDelay(this::checkTimeouts, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void request(ServerSocketClientManager client, byte[] data) {
+        getConnection(client).receive(data);
+    }
+
+    @Override
+    public void connect(ServerSocketClientManager client) {
+        getConnection(client);
+    }
+
+    /**
+     * Answers a connection which is over the limit of the server and closes it
+     * @param socket the socket of the connection
+     */
+    void reject(Socket socket){
+        rejectedRequests.increment();
+        HTTPResponseWriter response = new HTTPResponseWriter();
+        response.setStatusCode(503);
+        response.setField("connection", "close");
+        response.setField("retry-after", Integer.toString(retryAfter));
+        response.addData(HTTPResponseWriter.getReasonPhrase(503));
+        try {
+            socket.getOutputStream().write(response.write());
+        } catch(IOException ignored) {
+        } finally {
+            try {
+                socket.close();
+            } catch(IOException ignored) { }
+        }
+    }
+
+    /**
+     * Passes the given task which answers the requests of a connection to the worker pool
+     * @param task the task
+     * @return false if there is no worker pool, then the task isn't run
+     * @throws RejectedExecutionException if all workers are busy and the queue is full
+     */
+    boolean dispatch(Runnable task){
+        ThreadPoolExecutor workers = this.workers;
+        if(workers == null){
+            return false;
+        }
+        try {
+            workers.execute(task);
+        } catch(RejectedExecutionException e){
+            rejectedRequests.increment();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Calls the request handler of an HTTP/2 stream without waiting for it.<br>
+     * The task is run by the worker pool, or by a shared pool of threads if there is no worker pool.
+     * @param task the task which calls the request handler
+     * @throws RejectedExecutionException if all workers are busy and the queue is full
+     */
+    void submit(Runnable task){
+        ThreadPoolExecutor workers = this.workers;
+        if(workers == null){
+            workers = getStreamWorkers();
+        }
+        try {
+            workers.execute(task);
+        } catch(RejectedExecutionException e){
+            rejectedRequests.increment();
+            throw e;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getStreamWorkers(){
+        if(streamWorkers == null){
+            AtomicInteger counter = new AtomicInteger();
+            int threads = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+            // bounded like the worker pool, a flood of streams is refused instead of starting a thread for each
+            streamWorkers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(1024), r -> {
+                Thread thread = new Thread(r, "SpaciousLib HTTP/2 stream #" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            streamWorkers.allowCoreThreadTimeOut(true);
+        }
+        return streamWorkers;
+    }
+
+    /**
+     * Takes a token from the bucket of the given address
+     * @param address the address of a client
+     * @return 0 if the request is allowed, otherwise the amount of seconds until the next token is available
+     */
+    int acquire(InetAddress address){
+        double rate = this.rateLimit;
+        if(rate <= 0){
+            return 0;
+        }
+        int burst = Math.max(1, this.rateLimitBurst);
+        TokenBucket bucket = buckets.computeIfAbsent(address, a -> new TokenBucket(burst));
+        int wait = bucket.acquire(rate, burst, System.nanoTime());
+        if(0 < wait){
+            rateLimitedRequests.increment();
+        }
+        return wait;
+    }
+
+    private HTTPConnection getConnection(ServerSocketClientManager client){
+        // the client may send data before the connection was announced
+        return connections.computeIfAbsent(client, c -> new HTTPConnection(this, c));
+    }
+
+    private void checkTimeouts(){
+        long now = System.currentTimeMillis();
+        Iterator<HTTPConnection> it = connections.values().iterator();
+        while(it.hasNext()){
+            HTTPConnection connection = it.next();
+            if(connection.isClosed()){
+                it.remove();
+                connection.release();
+            } else {
+                connection.checkTimeout(now);
+            }
+        }
+        // the buckets which are full again are the same as new ones
+        double rate = this.rateLimit;
+        int burst = Math.max(1, this.rateLimitBurst);
+        long time = System.nanoTime();
+        buckets.values().removeIf(bucket -> rate <= 0 || bucket.isFull(rate, burst, time));
+    }
+
+    void shutdown(){
+        timer.shutdownNow();
+        connections.clear();
+        if(workers != null){
+            workers.shutdownNow();
+        }
+        if(streamWorkers != null){
+            streamWorkers.shutdownNow();
+        }
+    }
+
+    void setWorkerPool(int threads, int queueSize){
+        ThreadPoolExecutor old = this.workers;
+        if(threads <= 0){
+            this.workers = null;
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            // the queue is bounded, so new requests are rejected instead of piling up when the server is overloaded
+            this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                Thread thread = new Thread(r, "SpaciousLib HTTP worker #" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            this.workers.allowCoreThreadTimeOut(true);
+        }
+        if(old != null){
+            old.shutdown();
+        }
+    }
+
+    void setRateLimit(double requestsPerSecond, int burst){
+        this.rateLimitBurst = burst;
+        this.rateLimit = requestsPerSecond;
+        buckets.clear();
+    }
+
+    int getActiveWorkers(){
+        ThreadPoolExecutor workers = this.workers;
+        return workers == null ? 0 : workers.getActiveCount();
+    }
+
+    int getQueuedRequests(){
+        ThreadPoolExecutor workers = this.workers;
+        return workers == null ? 0 : workers.getQueue().size();
+    }
+
+    long getRejectedRequests(){
+        return this.rejectedRequests.sum();
+    }
+
+    long getRateLimitedRequests(){
+        return this.rateLimitedRequests.sum();
+    }
+
+    boolean isHTTP2Enabled(){
+        return this.http2;
+    }
+
+    void setHTTP2Enabled(boolean enabled){
+        this.http2 = enabled;
+    }
+
+    int getRetryAfter(){
+        return this.retryAfter;
+    }
+
+    void setRetryAfter(int seconds){
+        this.retryAfter = seconds;
+    }
+
+    HTTPRequestHandler getHandler(){
+        return this.handler;
+    }
+
+    /**
+     * Gets the handler for the given request
+     * @param request the request
+     * @return the metrics handler if the request asks for the metrics, otherwise the request handler
+     */
+    HTTPRequestHandler getHandler(HTTPRequestReader request){
+        String path = this.metricsPath;
+        if(path != null && path.equals(request.getPath())){
+            return this.metricsHandler;
+        }
+        return this.handler;
+    }
+
+    void setMetricsEndpoint(String path, HTTPRequestHandler handler){
+        this.metricsHandler = handler;
+        this.metricsPath = path;
+    }
+
+    int getKeepAliveTimeout(){
+        return this.keepAliveTimeout;
+    }
+
+    void setKeepAliveTimeout(int seconds){
+        this.keepAliveTimeout = seconds;
+    }
+
+    int getRequestTimeout(){
+        return this.requestTimeout;
+    }
+
+    void setRequestTimeout(int seconds){
+        this.requestTimeout = seconds;
+    }
+
+    int getMaxKeepAliveRequests(){
+        return this.maxKeepAliveRequests;
+    }
+
+    void setMaxKeepAliveRequests(int amount){
+        this.maxKeepAliveRequests = amount;
+    }
+
+    int getMaxPipelinedRequests(){
+        return this.maxPipelinedRequests;
+    }
+
+    void setMaxPipelinedRequests(int amount){
+        this.maxPipelinedRequests = amount;
+    }
+
+    int getMaxHeaderSize(){
+        return this.maxHeaderSize;
+    }
+
+    void setMaxHeaderSize(int size){
+        this.maxHeaderSize = size;
+    }
+
+    long getMaxBodySize(){
+        return this.maxBodySize;
+    }
+
+    void setMaxBodySize(long size){
+        this.maxBodySize = size;
+    }
+
+    Path getUploadDirectory(){
+        return this.uploadDirectory;
+    }
+
+    void setUploadDirectory(Path directory){
+        this.uploadDirectory = directory;
+    }
+
+    long getMaxUploadSize(){
+        return this.maxUploadSize;
+    }
+
+    void setMaxUploadSize(long size){
+        this.maxUploadSize = size;
+    }
+
+    long getMaxUploadFileSize(){
+        return this.maxUploadFileSize;
+    }
+
+    void setMaxUploadFileSize(long size){
+        this.maxUploadFileSize = size;
+    }
+
+    private static class TokenBucket {
+        private double tokens;
+        private long last = System.nanoTime();
+
+        private TokenBucket(int burst){
+            this.tokens = burst;
+        }
+
+        private synchronized void refill(double rate, int burst, long now){
+            tokens = Math.min(burst, tokens + (now - last) / 1e9 * rate);
+            last = now;
+        }
+
+        private synchronized int acquire(double rate, int burst, long now){
+            refill(rate, burst, now);
+            if(1 <= tokens){
+                tokens--;
+                return 0;
+            }
+            return (int) Math.ceil((1 - tokens) / rate);
+        }
+
+        private synchronized boolean isFull(double rate, int burst, long now){
+            refill(rate, burst, now);
+            return burst <= tokens;
+        }
+    }
+}
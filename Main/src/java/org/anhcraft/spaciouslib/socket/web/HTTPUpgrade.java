@@ -0,0 +1,34 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A protocol which takes over an HTTP connection after a response was sent (e.g: WebSocket, Server-Sent Events),
+ * or right away if the client started with it (HTTP/2).<br>
+ * After that, all data which is received from the client is passed to the protocol instead of being parsed as HTTP requests.
+ */
+interface HTTPUpgrade {
+    /**
+     * Called after the response which started this protocol was sent
+     * @param connection the connection
+     */
+    void open(HTTPConnection connection);
+
+    /**
+     * Called when the client sent some data
+     * @param data the data
+     */
+    void receive(ByteBuffer data) throws IOException;
+
+    /**
+     * Called periodically to check whether the connection is still alive
+     * @param now the current time in milliseconds
+     */
+    void checkTimeout(long now);
+
+    /**
+     * Called once after the connection was closed
+     */
+    void closed();
+}
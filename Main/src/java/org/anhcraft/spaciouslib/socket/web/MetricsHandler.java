@@ -0,0 +1,32 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+/**
+ * A request handler which responds the metrics of a registry in the Prometheus text format
+ */
+public class MetricsHandler implements HTTPRequestHandler {
+    private MetricsRegistry registry;
+
+    /**
+     * Creates a new MetricsHandler instance
+     * @param registry the registry
+     */
+    public MetricsHandler(MetricsRegistry registry){
+        this.registry = registry;
+    }
+
+    @Override
+    public void request(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response) {
+        HTTPRequestMethod method = request.getRequestMethod();
+        if(method != HTTPRequestMethod.GET && method != HTTPRequestMethod.HEAD){
+            response.setStatusCode(405);
+            response.setField("allow", "GET, HEAD");
+            return;
+        }
+        response.setField("content-type", "text/plain; version=0.0.4; charset=utf-8");
+        response.setField("cache-control", "no-cache");
+        response.addData(registry.render());
+    }
+}
@@ -0,0 +1,112 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A file which was uploaded through a multipart/form-data request.<br>
+ * The file is stored in the upload directory of the web server while the request is being handled,
+ * it is deleted after the request handler returns unless it was moved by {@link #moveTo(Path)}.
+ */
+public class MultipartFile {
+    private String name;
+    private String fileName;
+    private String contentType;
+    private long size;
+    private Path path;
+    private boolean moved;
+
+    MultipartFile(String name, String fileName, String contentType, long size, Path path){
+        this.name = name;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.size = size;
+        this.path = path;
+    }
+
+    /**
+     * Gets the name of the form field
+     * @return the name
+     */
+    public String getName(){
+        return this.name;
+    }
+
+    /**
+     * Gets the name of the file which was chosen by the client.<br>
+     * Only the last segment of the path is kept, but the name still can't be trusted (e.g: it may be "..").
+     * @return the file name, or an empty string if the client didn't choose a file
+     */
+    public String getFileName(){
+        return this.fileName;
+    }
+
+    /**
+     * Gets the content type which was sent by the client
+     * @return the content type, or null if it wasn't sent
+     */
+    public String getContentType(){
+        return this.contentType;
+    }
+
+    /**
+     * Gets the size of the file
+     * @return the size in bytes
+     */
+    public long getSize(){
+        return this.size;
+    }
+
+    /**
+     * Gets the path of the temporary file which contains the uploaded data
+     * @return the path
+     */
+    public Path getPath(){
+        return this.path;
+    }
+
+    /**
+     * Moves the uploaded file to the given path, so that it won't be deleted after the request was handled.<br>
+     * The file is renamed if possible, otherwise it is copied.
+     * @param target the path of the destination file, it is replaced if it exists
+     * @return the path of the destination file
+     */
+    public synchronized Path moveTo(Path target) throws IOException {
+        if(moved){
+            throw new IllegalStateException("The file was already moved");
+        }
+        try {
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e){
+            // the target is on another file system
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        moved = true;
+        path = target;
+        return target;
+    }
+
+    /**
+     * Checks was this file moved by {@link #moveTo(Path)}
+     * @return true if yes
+     */
+    public synchronized boolean isMoved(){
+        return this.moved;
+    }
+
+    /**
+     * Deletes the temporary file if it wasn't moved
+     */
+    synchronized void delete(){
+        if(!moved){
+            try {
+                Files.deleteIfExists(path);
+            } catch(IOException e){
+                e.printStackTrace();
+            }
+        }
+    }
+}
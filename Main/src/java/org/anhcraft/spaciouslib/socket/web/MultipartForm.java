@@ -0,0 +1,98 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The fields and the files of a form which was sent as multipart/form-data.<br>
+ * The fields are kept in the memory, the files are stored in the upload directory of the web server.
+ */
+public class MultipartForm {
+    private LinkedHashMap<String, List<String>> fields = new LinkedHashMap<>();
+    private List<MultipartFile> files = new ArrayList<>();
+
+    void addField(String name, String value){
+        fields.computeIfAbsent(name, n -> new ArrayList<>(1)).add(value);
+    }
+
+    void addFile(MultipartFile file){
+        files.add(file);
+    }
+
+    /**
+     * Gets the value of the given field
+     * @param name the name of a field
+     * @return the first value, or null if it doesn't exist
+     */
+    public String getField(String name){
+        List<String> values = fields.get(name);
+        return values == null ? null : values.get(0);
+    }
+
+    /**
+     * Gets all values of the given field (e.g: the checked boxes of a group)
+     * @param name the name of a field
+     * @return an unmodifiable list of values
+     */
+    public List<String> getFields(String name){
+        List<String> values = fields.get(name);
+        return values == null ? Collections.emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Gets the names of all fields
+     * @return an unmodifiable set of names
+     */
+    public Set<String> getFieldNames(){
+        return Collections.unmodifiableSet(fields.keySet());
+    }
+
+    /**
+     * Gets the file which was uploaded through the given field
+     * @param name the name of a field
+     * @return the first file, or null if it doesn't exist
+     */
+    public MultipartFile getFile(String name){
+        for(MultipartFile file : files){
+            if(file.getName().equals(name)){
+                return file;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all files which were uploaded through the given field
+     * @param name the name of a field
+     * @return a list of files
+     */
+    public List<MultipartFile> getFiles(String name){
+        List<MultipartFile> list = new ArrayList<>();
+        for(MultipartFile file : files){
+            if(file.getName().equals(name)){
+                list.add(file);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Gets all uploaded files
+     * @return an unmodifiable list of files
+     */
+    public List<MultipartFile> getFiles(){
+        return Collections.unmodifiableList(this.files);
+    }
+
+    /**
+     * Deletes all temporary files which weren't moved
+     */
+    void delete(){
+        for(MultipartFile file : files){
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An incremental parser for multipart/form-data bodies.<br>
+ * The body can be fed in many parts while it is being received. The data of files is written
+ * to temporary files in the given directory right away, only the fields are kept in the memory,
+ * so the whole body is never buffered.
+ */
+public class MultipartFormParser {
+    private static final int PREAMBLE = 0;
+    private static final int DELIMITER_END = 1;
+    private static final int PART_HEADER = 2;
+    private static final int PART_BODY = 3;
+    private static final int EPILOGUE = 4;
+    private static final int CLOSED = 5;
+
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MAX_PART_HEADER_SIZE = 8192;
+    private static final int MAX_PARTS = 1000;
+    private static final byte[] HEADER_END = new byte[]{'\r', '\n', '\r', '\n'};
+
+    private byte[] delimiter;
+    private Path directory;
+    private long maxSize = Long.MAX_VALUE;
+    private long maxFileSize = Long.MAX_VALUE;
+    private long maxFieldsSize = 1048576;
+
+    private int state = PREAMBLE;
+    // the data which hasn't been handled is at [start, end)
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int start;
+    private int end;
+    private long size;
+    private long fieldsSize;
+    private int parts;
+    private MultipartForm form = new MultipartForm();
+    // the current part
+    private String name;
+    private String fileName;
+    private String contentType;
+    private Path file;
+    private FileChannel channel;
+    private long fileSize;
+    private ByteArrayOutputStream field;
+
+    /**
+     * Creates a new parser
+     * @param boundary the boundary of the parts (see {@link #getBoundary(String)})
+     * @param directory the directory where the uploaded files are stored
+     */
+    public MultipartFormParser(String boundary, Path directory){
+        // every delimiter follows a line break, the first one is the beginning of the body
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.directory = directory;
+        this.buffer[0] = '\r';
+        this.buffer[1] = '\n';
+        this.end = 2;
+    }
+
+    /**
+     * Gets the boundary of the given content type
+     * @param contentType the value of the "content-type" field
+     * @return the boundary, or null if the content type isn't "multipart/form-data" or it has no valid boundary
+     */
+    public static String getBoundary(String contentType){
+        if(contentType == null){
+            return null;
+        }
+        String[] params = contentType.split(";");
+        if(!params[0].trim().equalsIgnoreCase("multipart/form-data")){
+            return null;
+        }
+        for(int i = 1; i < params.length; i++){
+            String param = params[i].trim();
+            if(9 < param.length() && param.regionMatches(true, 0, "boundary=", 0, 9)){
+                String boundary = param.substring(9);
+                if(1 < boundary.length() && boundary.startsWith("\"") && boundary.endsWith("\"")){
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary.isEmpty() || 70 < boundary.length() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the maximum size of the whole body
+     * @param size the size in bytes
+     */
+    public void setMaxSize(long size){
+        this.maxSize = size;
+    }
+
+    /**
+     * Sets the maximum size of each file
+     * @param size the size in bytes
+     */
+    public void setMaxFileSize(long size){
+        this.maxFileSize = size;
+    }
+
+    /**
+     * Sets the maximum size of all fields which aren't files (they are kept in the memory)
+     * @param size the size in bytes
+     */
+    public void setMaxFieldsSize(long size){
+        this.maxFieldsSize = size;
+    }
+
+    /**
+     * Parses the given part of the body
+     * @param data the data
+     */
+    public synchronized void parse(ByteBuffer data) throws HTTPParseException {
+        if(state == CLOSED){
+            throw new HTTPParseException(400, "The form was discarded");
+        }
+        size += data.remaining();
+        if(maxSize < size){
+            discard();
+            throw new HTTPParseException(413, "The request body is too large");
+        }
+        try {
+            while(data.hasRemaining()){
+                if(start == end){
+                    start = end = 0;
+                } else if(0 < start && buffer.length - end < BUFFER_SIZE / 2){
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                }
+                int n = Math.min(data.remaining(), buffer.length - end);
+                data.get(buffer, end, n);
+                end += n;
+                process();
+            }
+        } catch(HTTPParseException e){
+            discard();
+            throw e;
+        } catch(IOException e){
+            discard();
+            throw new HTTPParseException(500, "Failed to store the uploaded file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finishes parsing after the whole body was fed
+     * @return the form
+     */
+    public synchronized MultipartForm finish() throws HTTPParseException {
+        if(state != EPILOGUE){
+            discard();
+            throw new HTTPParseException(400, "The multipart body is incomplete");
+        }
+        state = CLOSED;
+        return form;
+    }
+
+    /**
+     * Stops parsing and deletes all files which have been stored.<br>
+     * This method should be called if the body can't be read completely.
+     */
+    public synchronized void discard(){
+        if(state == CLOSED){
+            return;
+        }
+        state = CLOSED;
+        if(channel != null){
+            try {
+                channel.close();
+            } catch(IOException e){
+                e.printStackTrace();
+            }
+            channel = null;
+        }
+        if(file != null){
+            try {
+                Files.deleteIfExists(file);
+            } catch(IOException e){
+                e.printStackTrace();
+            }
+            file = null;
+        }
+        form.delete();
+    }
+
+    private void process() throws IOException {
+        while(true){
+            switch(state){
+                case PREAMBLE: {
+                    int i = indexOf(delimiter, start, end);
+                    if(i < 0){
+                        // the end of the buffer may be the beginning of a delimiter
+                        start = Math.max(start, end - delimiter.length + 1);
+                        return;
+                    }
+                    start = i + delimiter.length;
+                    state = DELIMITER_END;
+                    break;
+                }
+                case DELIMITER_END: {
+                    if(end - start < 2){
+                        return;
+                    }
+                    if(buffer[start] == '-' && buffer[start + 1] == '-'){
+                        start += 2;
+                        state = EPILOGUE;
+                        break;
+                    }
+                    int i = indexOf(start, end, (byte) '\n');
+                    if(i < 0){
+                        if(256 < end - start){
+                            throw new HTTPParseException(400, "Invalid multipart delimiter");
+                        }
+                        return;
+                    }
+                    // the delimiter can be followed by whitespaces
+                    for(int j = start; j < i - 1; j++){
+                        if(buffer[j] != ' ' && buffer[j] != '\t'){
+                            throw new HTTPParseException(400, "Invalid multipart delimiter");
+                        }
+                    }
+                    if(i == start || buffer[i - 1] != '\r'){
+                        throw new HTTPParseException(400, "Invalid multipart delimiter");
+                    }
+                    start = i + 1;
+                    state = PART_HEADER;
+                    break;
+                }
+                case PART_HEADER: {
+                    if(end - start < 2){
+                        return;
+                    }
+                    if(buffer[start] == '\r' && buffer[start + 1] == '\n'){
+                        // the part has no headers
+                        start += 2;
+                        startPart("");
+                    } else {
+                        int i = indexOf(HEADER_END, start, end);
+                        if(i < 0){
+                            if(MAX_PART_HEADER_SIZE < end - start){
+                                throw new HTTPParseException(400, "The header of a part is too large");
+                            }
+                            return;
+                        }
+                        String header = new String(buffer, start, i - start, StandardCharsets.UTF_8);
+                        start = i + HEADER_END.length;
+                        startPart(header);
+                    }
+                    state = PART_BODY;
+                    break;
+                }
+                case PART_BODY: {
+                    int i = indexOf(delimiter, start, end);
+                    if(i < 0){
+                        int keep = Math.max(start, end - delimiter.length + 1);
+                        write(start, keep);
+                        start = keep;
+                        return;
+                    }
+                    write(start, i);
+                    endPart();
+                    start = i + delimiter.length;
+                    state = DELIMITER_END;
+                    break;
+                }
+                default:
+                    // the epilogue is ignored
+                    start = end;
+                    return;
+            }
+        }
+    }
+
+    private void startPart(String header) throws IOException {
+        if(MAX_PARTS < ++parts){
+            throw new HTTPParseException(413, "There are too many parts");
+        }
+        name = null;
+        fileName = null;
+        contentType = null;
+        for(String line : header.split("\r\n")){
+            int colon = line.indexOf(':');
+            if(colon <= 0){
+                continue;
+            }
+            String key = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if(key.equalsIgnoreCase("Content-Disposition")){
+                name = getParameter(value, "name");
+                fileName = getParameter(value, "filename");
+            } else if(key.equalsIgnoreCase("Content-Type")){
+                contentType = value;
+            }
+        }
+        if(name == null){
+            throw new HTTPParseException(400, "A part of the form has no name");
+        }
+        if(fileName != null){
+            // some clients send the full path
+            fileName = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+            file = Files.createTempFile(directory, "upload-", ".tmp");
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            fileSize = 0;
+        } else {
+            field = new ByteArrayOutputStream();
+        }
+    }
+
+    private void write(int from, int to) throws IOException {
+        int n = to - from;
+        if(n <= 0){
+            return;
+        }
+        if(channel != null){
+            fileSize += n;
+            if(maxFileSize < fileSize){
+                throw new HTTPParseException(413, "The uploaded file is too large");
+            }
+            ByteBuffer data = ByteBuffer.wrap(buffer, from, n);
+            while(data.hasRemaining()){
+                channel.write(data);
+            }
+        } else {
+            fieldsSize += n;
+            if(maxFieldsSize < fieldsSize){
+                throw new HTTPParseException(413, "The form fields are too large");
+            }
+            field.write(buffer, from, n);
+        }
+    }
+
+    private void endPart() throws IOException {
+        if(channel != null){
+            channel.close();
+            channel = null;
+            form.addFile(new MultipartFile(name, fileName, contentType, fileSize, file));
+            file = null;
+        } else {
+            form.addField(name, new String(field.toByteArray(), StandardCharsets.UTF_8));
+            field = null;
+        }
+    }
+
+    // gets a parameter of the "content-disposition" field
+    private static String getParameter(String value, String key){
+        int i = value.indexOf(';');
+        while(0 <= i && i < value.length()){
+            i++;
+            while(i < value.length() && (value.charAt(i) == ' ' || value.charAt(i) == '\t')){
+                i++;
+            }
+            int eq = value.indexOf('=', i);
+            if(eq < 0){
+                return null;
+            }
+            String k = value.substring(i, eq).trim();
+            String v;
+            int next;
+            if(eq + 1 < value.length() && value.charAt(eq + 1) == '"'){
+                StringBuilder sb = new StringBuilder();
+                int j = eq + 2;
+                for(; j < value.length() && value.charAt(j) != '"'; j++){
+                    char c = value.charAt(j);
+                    if(c == '\\' && j + 1 < value.length()){
+                        c = value.charAt(++j);
+                    }
+                    sb.append(c);
+                }
+                v = sb.toString();
+                next = value.indexOf(';', j);
+            } else {
+                next = value.indexOf(';', eq);
+                v = value.substring(eq + 1, next < 0 ? value.length() : next).trim();
+            }
+            if(k.equalsIgnoreCase(key)){
+                return v;
+            }
+            i = next;
+        }
+        return null;
+    }
+
+    private int indexOf(byte[] bytes, int from, int to){
+        byte first = bytes[0];
+        int last = to - bytes.length;
+        outer:
+        for(int i = from; i <= last; i++){
+            if(buffer[i] != first){
+                continue;
+            }
+            for(int j = 1; j < bytes.length; j++){
+                if(buffer[i + j] != bytes[j]){
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private int indexOf(int from, int to, byte b){
+        for(int i = from; i < to; i++){
+            if(buffer[i] == b){
+                return i;
+            }
+        }
+        return -1;
+    }
+}
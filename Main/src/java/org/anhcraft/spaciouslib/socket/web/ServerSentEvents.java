@@ -0,0 +1,126 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * A request handler which opens streams of Server-Sent Events.<br>
+ * Register it to a route of {@link HTTPRouter} (e.g: "/events"), browsers can then listen to it by
+ * <code>new EventSource("/events")</code>.<br>
+ * The open streams are kept by this endpoint, so an event can be broadcast to all of them.
+ */
+public class ServerSentEvents implements HTTPRequestHandler {
+    private Set<EventStream> streams = ConcurrentHashMap.newKeySet();
+    private Consumer<EventStream> openHandler;
+    private volatile int retry;
+    private volatile int heartbeatInterval = 15;
+
+    /**
+     * Sets the handler which is called after a stream was opened (e.g: to send the current state)
+     * @param handler the handler
+     * @return this object
+     */
+    public ServerSentEvents setOpenHandler(Consumer<EventStream> handler){
+        this.openHandler = handler;
+        return this;
+    }
+
+    /**
+     * Sets how long browsers wait before they reconnect to a stream which was lost
+     * @param millis the time in milliseconds, or 0 to use the default of browsers
+     * @return this object
+     */
+    public ServerSentEvents setRetry(int millis){
+        this.retry = millis;
+        return this;
+    }
+
+    /**
+     * Sets how long a stream can stay silent before a comment is sent to keep it alive
+     * @param seconds the interval in seconds, or 0 to disable
+     * @return this object
+     */
+    public ServerSentEvents setHeartbeatInterval(int seconds){
+        this.heartbeatInterval = seconds;
+        return this;
+    }
+
+    /**
+     * Gets how long a stream can stay silent before a comment is sent to keep it alive
+     * @return the interval in seconds
+     */
+    public int getHeartbeatInterval(){
+        return this.heartbeatInterval;
+    }
+
+    /**
+     * Gets all open streams
+     * @return an unmodifiable set of streams
+     */
+    public Set<EventStream> getStreams(){
+        return Collections.unmodifiableSet(this.streams);
+    }
+
+    /**
+     * Sends an event to all open streams.<br>
+     * This method doesn't wait for the event to be sent, each stream has a queue which is sent by a background thread,
+     * so a slow client doesn't delay the others (see {@link ServerSocketClientManager#queue(byte[])}).
+     * @param event the name of the event, or null
+     * @param data the data
+     * @return the amount of streams which the event was queued for
+     */
+    public int broadcast(String event, String data){
+        // encodes the event only once for all streams
+        byte[] encoded = EventStream.encode(event, data, null);
+        int sent = 0;
+        for(EventStream stream : streams){
+            if(stream.queueRaw(encoded)){
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    void open(EventStream stream){
+        streams.add(stream);
+        try {
+            if(0 < retry){
+                stream.sendRaw(("retry: " + retry + "\n\n").getBytes(StandardCharsets.UTF_8));
+            }
+        } catch(IOException e){
+            return;
+        }
+        if(openHandler != null){
+            try {
+                openHandler.accept(stream);
+            } catch(RuntimeException e){
+                e.printStackTrace();
+            }
+        }
+    }
+
+    void remove(EventStream stream){
+        streams.remove(stream);
+    }
+
+    @Override
+    public void request(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response) {
+        if(request.getRequestMethod() != HTTPRequestMethod.GET){
+            response.setStatusCode(405);
+            response.setField("allow", "GET");
+            return;
+        }
+        // the body has no length, it ends when the connection is closed
+        response.removeField("content-length");
+        response.setField("content-type", "text/event-stream; charset=UTF-8");
+        response.setField("cache-control", "no-cache");
+        response.setField("connection", "close");
+        response.setUpgrade(new EventStream(this, request).upgrade);
+    }
+}
@@ -0,0 +1,416 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.io.DirectoryChange;
+import org.anhcraft.spaciouslib.io.DirectoryManager;
+import org.anhcraft.spaciouslib.io.DirectoryWatcher;
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class helps you to serve static files from a directory.<br>
+ * The files are streamed directly from the disk. Conditional requests (If-None-Match, If-Modified-Since)
+ * and single byte ranges (Range, If-Range) are supported.<br>
+ * If this handler is registered to a route which ends with a wildcard, the wildcard is used as the file path,
+ * otherwise the whole request path is used.<br>
+ * If a {@link HTTPResponseCache} is set, text files (HTML, CSS, JS, JSON, etc) are sent compressed by GZip
+ * to the clients which accept it, and each file is only compressed once until it is changed.
+ */
+public class StaticFileHandler implements HTTPRequestHandler {
+    private static final HashMap<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("htm", "text/html; charset=UTF-8");
+        CONTENT_TYPES.put("css", "text/css; charset=UTF-8");
+        CONTENT_TYPES.put("js", "text/javascript; charset=UTF-8");
+        CONTENT_TYPES.put("json", "application/json; charset=UTF-8");
+        CONTENT_TYPES.put("txt", "text/plain; charset=UTF-8");
+        CONTENT_TYPES.put("xml", "application/xml; charset=UTF-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("webp", "image/webp");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+        CONTENT_TYPES.put("woff", "font/woff");
+        CONTENT_TYPES.put("woff2", "font/woff2");
+        CONTENT_TYPES.put("ttf", "font/ttf");
+        CONTENT_TYPES.put("mp3", "audio/mpeg");
+        CONTENT_TYPES.put("ogg", "audio/ogg");
+        CONTENT_TYPES.put("mp4", "video/mp4");
+        CONTENT_TYPES.put("webm", "video/webm");
+        CONTENT_TYPES.put("pdf", "application/pdf");
+        CONTENT_TYPES.put("zip", "application/zip");
+        CONTENT_TYPES.put("gz", "application/gzip");
+    }
+
+    private Path root;
+    private String indexFile = "index.html";
+    private String cacheControl;
+    private long metadataTTL = 1000;
+    private ConcurrentHashMap<Path, StaticFile> files = new ConcurrentHashMap<>();
+    private HTTPResponseCache responseCache;
+
+    /**
+     * Creates a new StaticFileHandler instance
+     * @param root the directory which contains the files
+     */
+    public StaticFileHandler(Path root){
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Sets the name of the file which is served if a directory is requested
+     * @param indexFile the name of a file, or null to disable
+     * @return this object
+     */
+    public StaticFileHandler setIndexFile(String indexFile){
+        this.indexFile = indexFile;
+        return this;
+    }
+
+    /**
+     * Sets the value of the "cache-control" field of all responses (e.g: "public, max-age=3600")
+     * @param cacheControl the value, or null to disable
+     * @return this object
+     */
+    public StaticFileHandler setCacheControl(String cacheControl){
+        this.cacheControl = cacheControl;
+        return this;
+    }
+
+    /**
+     * Sets how long the metadata (size, last modified time) of a file is cached before it is checked again
+     * @param millis the time in milliseconds
+     * @return this object
+     */
+    public StaticFileHandler setMetadataTTL(long millis){
+        this.metadataTTL = millis;
+        return this;
+    }
+
+    /**
+     * Sets the cache which keeps the compressed files
+     * @param responseCache the cache, or null to disable compression
+     * @return this object
+     */
+    public StaticFileHandler setResponseCache(HTTPResponseCache responseCache){
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    /**
+     * Watches the directory and invalidates the files as soon as they are changed.<br>
+     * Since the changes are noticed, the metadata TTL can be raised (e.g: to an hour) so the files aren't checked for every request.
+     * @return the watcher, close it to stop watching
+     */
+    public DirectoryWatcher watch() throws IOException {
+        return new DirectoryManager(root.toFile()).watch(changes -> {
+            for(DirectoryChange change : changes){
+                if(change.getType() == DirectoryChange.Type.OVERFLOW){
+                    invalidateAll();
+                    return;
+                }
+                invalidate(change.getPath());
+            }
+        });
+    }
+
+    /**
+     * Removes the cached metadata and the compressed bodies of the given file,
+     * or of all files inside the given directory
+     * @param file the path of a file or a directory
+     */
+    public void invalidate(Path file){
+        Path path = file.toAbsolutePath().normalize();
+        // a directory is cached with its index file
+        files.entrySet().removeIf(e -> e.getKey().startsWith(path) || e.getValue().path.startsWith(path));
+        if(responseCache != null){
+            responseCache.invalidate(path);
+        }
+    }
+
+    /**
+     * Removes the cached metadata and the compressed bodies of all files
+     */
+    public void invalidateAll(){
+        files.clear();
+        if(responseCache != null){
+            responseCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Gets the content type of the given file based on its extension
+     * @param file the path of a file
+     * @return the content type
+     */
+    public static String getContentType(Path file){
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot < 0 ? null : CONTENT_TYPES.get(name.substring(dot + 1).toLowerCase());
+        return type == null ? "application/octet-stream" : type;
+    }
+
+    @Override
+    public void request(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response) {
+        HTTPRequestMethod method = request.getRequestMethod();
+        if(method != HTTPRequestMethod.GET && method != HTTPRequestMethod.HEAD){
+            response.setStatusCode(405);
+            response.setField("allow", "GET, HEAD");
+            return;
+        }
+        StaticFile file = resolve(request);
+        if(file == null){
+            response.setStatusCode(404);
+            return;
+        }
+        String range = request.getField("Range");
+        HTTPResponseCache cache = this.responseCache;
+        byte[] compressed = null;
+        if(cache != null && file.compressible){
+            response.setField("vary", "accept-encoding");
+            // a range is always served from the original file
+            if(range == null && acceptsGZip(request)){
+                compressed = compress(cache, file);
+            }
+        }
+        String etag = compressed == null ? file.etag : file.gzipETag;
+        response.setField("etag", etag);
+        response.setField("last-modified", file.lastModified);
+        response.setField("accept-ranges", "bytes");
+        if(cacheControl != null){
+            response.setField("cache-control", cacheControl);
+        }
+        if(isNotModified(request, file, etag)){
+            response.setStatusCode(304);
+            response.removeField("content-length");
+            return;
+        }
+        response.setField("content-type", file.contentType);
+        if(compressed != null){
+            response.setData(compressed, "gzip");
+            return;
+        }
+
+        if(range != null && isRangeValid(request.getField("If-Range"), file)){
+            long[] r = parseRange(range, file.size);
+            if(r == null){
+                response.setStatusCode(416);
+                response.setField("content-range", "bytes */" + file.size);
+                return;
+            }
+            if(r.length == 2){
+                response.setStatusCode(206);
+                response.setField("content-range", "bytes " + r[0] + "-" + r[1] + "/" + file.size);
+                response.setFile(file.path, r[0], r[1] - r[0] + 1);
+                return;
+            }
+        }
+        response.setFile(file.path, 0, file.size);
+    }
+
+    private static byte[] compress(HTTPResponseCache cache, StaticFile file){
+        try {
+            byte[] data = cache.getGZip(file.path, file.size, file.lastModifiedTime);
+            // sends the original file if it can't be made smaller
+            return data != null && data.length < file.size ? data : null;
+        } catch(IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static boolean acceptsGZip(HTTPRequestReader request){
+        for(String encoding : request.getAcceptedEncodings()){
+            int semicolon = encoding.indexOf(';');
+            String name = (semicolon < 0 ? encoding : encoding.substring(0, semicolon)).trim();
+            if(name.equalsIgnoreCase("gzip") || name.equals("*")){
+                // "gzip;q=0" means that gzip isn't acceptable
+                return semicolon < 0 || !encoding.substring(semicolon + 1).replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    private StaticFile resolve(HTTPRequestReader request){
+        String path = request.getPathParameter("*");
+        if(path == null){
+            path = request.getPath();
+            if(path == null){
+                return null;
+            }
+            path = HTTPRequestReader.decodePath(path);
+        }
+        // removes the leading slashes to make the path relative
+        int start = 0;
+        while(start < path.length() && (path.charAt(start) == '/' || path.charAt(start) == '\\')){
+            start++;
+        }
+        Path file;
+        try {
+            file = root.resolve(path.substring(start)).normalize();
+        } catch(RuntimeException e) {
+            return null;
+        }
+        // prevents requests such as "/../../secret.txt"
+        if(!file.startsWith(root)){
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        StaticFile cached = files.get(file);
+        if(cached != null && now - cached.checked < metadataTTL){
+            return cached;
+        }
+        StaticFile f = load(file, now);
+        if(f != null && cached != null && f.size == cached.size && f.lastModifiedTime == cached.lastModifiedTime){
+            // keeps the old one since nothing has changed
+            cached.checked = now;
+            return cached;
+        }
+        if(f == null){
+            files.remove(file);
+        } else {
+            files.put(file, f);
+        }
+        return f;
+    }
+
+    private StaticFile load(Path file, long now){
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if(attributes.isDirectory() && indexFile != null){
+                file = file.resolve(indexFile);
+                attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            }
+            if(!attributes.isRegularFile() || Files.isHidden(file)){
+                return null;
+            }
+            return new StaticFile(file, attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    private boolean isNotModified(HTTPRequestReader request, StaticFile file, String etag){
+        String ifNoneMatch = request.getField("If-None-Match");
+        if(ifNoneMatch != null){
+            return matchesETag(ifNoneMatch, etag, true);
+        }
+        String ifModifiedSince = request.getField("If-Modified-Since");
+        if(ifModifiedSince != null){
+            long time = HTTPResponseWriter.parseDate(ifModifiedSince);
+            // HTTP dates only have the precision of seconds
+            return 0 <= time && file.lastModifiedTime / 1000 <= time / 1000;
+        }
+        return false;
+    }
+
+    private boolean isRangeValid(String ifRange, StaticFile file){
+        if(ifRange == null){
+            return true;
+        }
+        if(ifRange.startsWith("\"") || ifRange.startsWith("W/")){
+            return matchesETag(ifRange, file.etag, false);
+        }
+        long time = HTTPResponseWriter.parseDate(ifRange);
+        return 0 <= time && file.lastModifiedTime / 1000 == time / 1000;
+    }
+
+    // "weak" comparison ignores the "W/" prefix (for If-None-Match), "strong" comparison doesn't (for If-Range)
+    private static boolean matchesETag(String value, String etag, boolean weak){
+        for(String tag : value.split(",")){
+            tag = tag.trim();
+            if(tag.equals("*")){
+                return true;
+            }
+            if(weak && tag.startsWith("W/")){
+                tag = tag.substring(2);
+            }
+            if(tag.equals(etag)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // returns {first, last} for a satisfiable range, an empty array if the range should be ignored,
+    // or null if the range can't be satisfied
+    private static long[] parseRange(String range, long size){
+        if(!range.startsWith("bytes=")){
+            return new long[0];
+        }
+        String spec = range.substring(6).trim();
+        // only a single range is supported, the whole file is sent for multiple ranges
+        if(spec.indexOf(',') >= 0){
+            return new long[0];
+        }
+        int dash = spec.indexOf('-');
+        if(dash < 0){
+            return new long[0];
+        }
+        try {
+            String a = spec.substring(0, dash).trim();
+            String b = spec.substring(dash + 1).trim();
+            long first;
+            long last;
+            if(a.isEmpty()){
+                // the last N bytes
+                long n = Long.parseLong(b);
+                if(n <= 0){
+                    return null;
+                }
+                first = Math.max(0, size - n);
+                last = size - 1;
+            } else {
+                first = Long.parseLong(a);
+                last = b.isEmpty() ? size - 1 : Long.parseLong(b);
+                // an invalid range is ignored
+                if(!b.isEmpty() && last < first){
+                    return new long[0];
+                }
+                last = Math.min(last, size - 1);
+            }
+            if(size <= first || last < first){
+                return null;
+            }
+            return new long[]{first, last};
+        } catch(NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static class StaticFile {
+        private Path path;
+        private long size;
+        private long lastModifiedTime;
+        private volatile long checked;
+        private String etag;
+        // the compressed body is a different representation, so it needs a different entity tag
+        private String gzipETag;
+        private String lastModified;
+        private String contentType;
+        private boolean compressible;
+
+        private StaticFile(Path path, long size, long lastModifiedTime, long checked){
+            this.path = path;
+            this.size = size;
+            this.lastModifiedTime = lastModifiedTime;
+            this.checked = checked;
+            this.etag = "\"" + Long.toHexString(lastModifiedTime) + "-" + Long.toHexString(size) + "\"";
+            this.lastModified = HTTPResponseWriter.formatDate(lastModifiedTime);
+            this.gzipETag = "\"" + Long.toHexString(lastModifiedTime) + "-" + Long.toHexString(size) + "-gz\"";
+            this.contentType = getContentType(path);
+            this.compressible = contentType.startsWith("text/") || contentType.startsWith("application/json")
+                    || contentType.startsWith("application/xml") || contentType.startsWith("image/svg");
+        }
+    }
+}
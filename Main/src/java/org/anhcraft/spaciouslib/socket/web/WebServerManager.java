@@ -1,18 +1,272 @@
 package org.anhcraft.spaciouslib.socket.web;
 
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
 import org.anhcraft.spaciouslib.socket.ServerSocketHandler;
 import org.anhcraft.spaciouslib.socket.ServerSocketManager;
 
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+
 /**
  * A class helps you to manage the connections between a web server and multiple clients.<br>
  * This class is for server side
  */
 public class WebServerManager extends ServerSocketManager {
+    private HTTPServerHandler httpHandler;
+
     /**
-     * Creates a new web server and starts a new thread for handling the requests.
+     * Creates a new web server and starts a new thread for handling the requests.<br>
+     * The handler receives the raw data of the connections.
      * @param requestHandler a handler for the server
      */
     public WebServerManager(ServerSocketHandler requestHandler) {
         super(80, requestHandler);
     }
+
+    /**
+     * Creates a new web server at the port 80 and starts a new thread for handling the requests.<br>
+     * The connections are persistent (HTTP keep-alive), each of them can send many requests one after another.
+     * @param requestHandler a handler for HTTP requests
+     */
+    public WebServerManager(HTTPRequestHandler requestHandler) {
+        this(80, requestHandler);
+    }
+
+    /**
+     * Creates a new web server and starts a new thread for handling the requests.<br>
+     * The connections are persistent (HTTP keep-alive), each of them can send many requests one after another.
+     * @param port the TCP/IP port which is listening by this web server
+     * @param requestHandler a handler for HTTP requests
+     */
+    public WebServerManager(int port, HTTPRequestHandler requestHandler) {
+        this(null, port, requestHandler);
+    }
+
+    /**
+     * Creates a new web server which only accepts the connections to the given address
+     * and starts a new thread for handling the requests.<br>
+     * The connections are persistent (HTTP keep-alive), each of them can send many requests one after another.
+     * @param host the local address (e.g: "127.0.0.1" to only accept the connections from this machine), or null for all addresses
+     * @param port the TCP/IP port which is listening by this web server
+     * @param requestHandler a handler for HTTP requests
+     */
+    public WebServerManager(String host, int port, HTTPRequestHandler requestHandler) {
+        this(host, port, new HTTPServerHandler(requestHandler));
+    }
+
+    private WebServerManager(String host, int port, HTTPServerHandler httpHandler) {
+        super(host, port, httpHandler);
+        this.httpHandler = httpHandler;
+    }
+
+    private HTTPServerHandler getHTTPHandler(){
+        if(this.httpHandler == null){
+            throw new IllegalStateException("This web server doesn't use an HTTP request handler");
+        }
+        return this.httpHandler;
+    }
+
+    /**
+     * Sets how long an idle connection is kept open to wait for the next request
+     * @param seconds the timeout in seconds
+     */
+    public void setKeepAliveTimeout(int seconds){
+        getHTTPHandler().setKeepAliveTimeout(seconds);
+    }
+
+    /**
+     * Sets how long a client can take to send a whole request
+     * @param seconds the timeout in seconds
+     */
+    public void setRequestTimeout(int seconds){
+        getHTTPHandler().setRequestTimeout(seconds);
+    }
+
+    /**
+     * Sets the maximum amount of requests which can be sent through a connection
+     * @param amount the amount
+     */
+    public void setMaxKeepAliveRequests(int amount){
+        getHTTPHandler().setMaxKeepAliveRequests(amount);
+    }
+
+    /**
+     * Sets the maximum amount of pipelined requests which are waiting to be answered on a connection
+     * @param amount the amount
+     */
+    public void setMaxPipelinedRequests(int amount){
+        getHTTPHandler().setMaxPipelinedRequests(amount);
+    }
+
+    /**
+     * Sets the maximum size of the request line and the headers of a request
+     * @param size the size in bytes
+     */
+    public void setMaxHeaderSize(int size){
+        getHTTPHandler().setMaxHeaderSize(size);
+    }
+
+    /**
+     * Sets the maximum size of the body of a request
+     * @param size the size in bytes
+     */
+    public void setMaxBodySize(long size){
+        getHTTPHandler().setMaxBodySize(size);
+    }
+
+    /**
+     * Sets the directory where the files of multipart/form-data requests are stored.<br>
+     * The bodies of these requests aren't buffered in the memory, their files are written to the directory
+     * while being received and the request handler gets them by {@link HTTPRequestReader#getMultipartForm()}.
+     * The files are deleted after the handler returns unless they were moved by {@link MultipartFile#moveTo(Path)}.<br>
+     * The fields of the forms are still kept in the memory, so their total size is limited by {@link #setMaxBodySize(long)}.
+     * @param directory the directory, or null to buffer these requests as other requests (default)
+     */
+    public void setUploadDirectory(Path directory){
+        getHTTPHandler().setUploadDirectory(directory);
+    }
+
+    /**
+     * Sets the maximum size of the body of a multipart/form-data request which is stored in the upload directory
+     * @param size the size in bytes
+     */
+    public void setMaxUploadSize(long size){
+        getHTTPHandler().setMaxUploadSize(size);
+    }
+
+    /**
+     * Sets the maximum size of each uploaded file
+     * @param size the size in bytes
+     */
+    public void setMaxUploadFileSize(long size){
+        getHTTPHandler().setMaxUploadFileSize(size);
+    }
+
+    /**
+     * Sets the pool of worker threads which call the request handler.<br>
+     * The thread of each connection only reads the requests, a worker answers them one after another
+     * while the next requests are being read. At most the given amount of connections are answered at the same time,
+     * the others wait in a bounded queue. If the queue is full, the server responds "503 Service Unavailable" immediately.<br>
+     * By default, there is no worker pool and the requests are handled by the thread of each connection.
+     * @param threads the amount of worker threads, or 0 to disable the pool
+     * @param queueSize the maximum amount of requests which are waiting for a worker
+     */
+    public void setWorkerPool(int threads, int queueSize){
+        getHTTPHandler().setWorkerPool(threads, queueSize);
+    }
+
+    /**
+     * Limits the amount of requests each IP address can send.<br>
+     * Every address has a bucket of tokens which is refilled at the given rate, each request takes a token.
+     * If the bucket is empty, the server responds "429 Too Many Requests".
+     * @param requestsPerSecond the refill rate, or 0 to disable the limit
+     * @param burst the size of a bucket (the amount of requests which can be sent at once)
+     */
+    public void setRateLimit(double requestsPerSecond, int burst){
+        getHTTPHandler().setRateLimit(requestsPerSecond, burst);
+    }
+
+    /**
+     * Sets the value of the "retry-after" field which is sent when the server is overloaded
+     * @param seconds the time in seconds
+     */
+    public void setRetryAfter(int seconds){
+        getHTTPHandler().setRetryAfter(seconds);
+    }
+
+    /**
+     * Enables or disables HTTP/2 without TLS ("h2c").<br>
+     * Clients can either start with HTTP/2 directly or upgrade an HTTP/1.1 request by "Upgrade: h2c".
+     * All requests of an HTTP/2 connection are multiplexed over it and handled at the same time,
+     * by the worker pool or by a shared pool of threads if there is no worker pool.<br>
+     * WebSocket and Server-Sent Events still need HTTP/1.1. It is enabled by default.
+     * @param enable true if you want to enable
+     */
+    public void setHTTP2Enabled(boolean enable){
+        getHTTPHandler().setHTTP2Enabled(enable);
+    }
+
+    /**
+     * Gets the amount of workers which are handling requests
+     * @return the amount
+     */
+    public int getActiveWorkers(){
+        return getHTTPHandler().getActiveWorkers();
+    }
+
+    /**
+     * Gets the amount of requests which are waiting for a worker
+     * @return the amount
+     */
+    public int getQueuedRequests(){
+        return getHTTPHandler().getQueuedRequests();
+    }
+
+    /**
+     * Gets the amount of requests and connections which were rejected because the server was overloaded
+     * @return the amount
+     */
+    public long getRejectedRequests(){
+        return getHTTPHandler().getRejectedRequests();
+    }
+
+    /**
+     * Gets the amount of requests which were rejected by the rate limit
+     * @return the amount
+     */
+    public long getRateLimitedRequests(){
+        return getHTTPHandler().getRateLimitedRequests();
+    }
+
+    /**
+     * Serves the metrics of the given registry in the Prometheus text format at the given path.<br>
+     * The path is checked before the request handler is called, so it works with any request handler.
+     * @param path the path (e.g: "/metrics"), or null to disable
+     * @param registry the registry
+     */
+    public void setMetricsEndpoint(String path, MetricsRegistry registry){
+        getHTTPHandler().setMetricsEndpoint(path, path == null ? null : new MetricsHandler(registry));
+    }
+
+    /**
+     * Registers the statistics of this web server to the given registry.<br>
+     * All metrics have the label "server" which is the given name.
+     * @param registry the registry
+     * @param name the name of this server
+     */
+    @Override
+    public void registerMetrics(MetricsRegistry registry, String name){
+        super.registerMetrics(registry, name);
+        HTTPServerHandler handler = this.httpHandler;
+        if(handler == null){
+            return;
+        }
+        String[] labels = new String[]{"server", name};
+        registry.counter("spaciouslib_http_rejected_requests_total", "The amount of requests which were rejected because the server was overloaded", labels, handler::getRejectedRequests)
+                .counter("spaciouslib_http_rate_limited_requests_total", "The amount of requests which were rejected by the rate limit", labels, handler::getRateLimitedRequests)
+                .gauge("spaciouslib_http_active_workers", "The amount of workers which are handling requests", labels, handler::getActiveWorkers)
+                .gauge("spaciouslib_http_queued_requests", "The amount of requests which are waiting for a worker", labels, handler::getQueuedRequests);
+    }
+
+    /**
+     * Answers "503 Service Unavailable" to a new connection which is over the limit (see {@link #setMaxConnections(int)})
+     * @param client the socket of the connection
+     */
+    @Override
+    protected void reject(Socket client){
+        if(this.httpHandler == null){
+            super.reject(client);
+            return;
+        }
+        this.httpHandler.reject(client);
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if(this.httpHandler != null){
+            this.httpHandler.shutdown();
+        }
+    }
 }
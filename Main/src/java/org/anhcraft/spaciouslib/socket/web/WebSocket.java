@@ -0,0 +1,395 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A WebSocket connection (RFC 6455) which was opened by {@link WebSocketEndpoint}.<br>
+ * All methods which send data are thread-safe.
+ */
+public class WebSocket {
+    static final int CONTINUATION = 0x0;
+    static final int TEXT = 0x1;
+    static final int BINARY = 0x2;
+    static final int CLOSE = 0x8;
+    static final int PING = 0x9;
+    static final int PONG = 0xA;
+
+    private WebSocketEndpoint endpoint;
+    private WebSocketHandler handler;
+    private HTTPRequestReader request;
+    private HTTPConnection connection;
+    private volatile boolean open;
+    private volatile boolean closeSent;
+    private volatile boolean closed;
+    private volatile long lastReceived = System.currentTimeMillis();
+    private volatile long lastPing;
+    private Object attachment;
+
+    // the state of the frame which is being read
+    private byte[] pending = new byte[1024];
+    private int pendingLength;
+    private ByteArrayOutputStream message;
+    private int messageType;
+
+    WebSocket(WebSocketEndpoint endpoint, WebSocketHandler handler, HTTPRequestReader request){
+        this.endpoint = endpoint;
+        this.handler = handler;
+        this.request = request;
+    }
+
+    /**
+     * Gets the request which opened this connection
+     * @return the request
+     */
+    public HTTPRequestReader getRequest(){
+        return this.request;
+    }
+
+    /**
+     * Gets the manager of the underlying connection
+     * @return the manager of the connection
+     */
+    public ServerSocketClientManager getClient(){
+        return this.connection.getClient();
+    }
+
+    /**
+     * Checks is this connection open
+     * @return true if yes
+     */
+    public boolean isOpen(){
+        return this.open && !this.closeSent && !this.connection.isClosed();
+    }
+
+    /**
+     * Attaches an object to this connection (e.g: the player who logged in the dashboard)
+     * @param attachment an object
+     */
+    public void setAttachment(Object attachment){
+        this.attachment = attachment;
+    }
+
+    /**
+     * Gets the attached object
+     * @return the object
+     */
+    public Object getAttachment(){
+        return this.attachment;
+    }
+
+    /**
+     * Sends a text message
+     * @param message the message
+     */
+    public void send(String message) throws IOException {
+        sendFrame(encode(TEXT, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Sends a binary message
+     * @param data the message
+     */
+    public void send(byte[] data) throws IOException {
+        sendFrame(encode(BINARY, data));
+    }
+
+    /**
+     * Sends a ping. The client will answer it with a pong.
+     * @param data the application data (at most 125 bytes)
+     */
+    public void ping(byte[] data) throws IOException {
+        sendFrame(encode(PING, data));
+    }
+
+    /**
+     * Starts the closing handshake.<br>
+     * The connection is closed after the client answered it.
+     * @param code the status code (e.g: 1000 for a normal closure)
+     * @param reason the reason, it can be empty
+     */
+    public void close(int code, String reason) throws IOException {
+        if(closeSent){
+            return;
+        }
+        closeSent = true;
+        byte[] r = reason.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + Math.min(r.length, 123)];
+        payload[0] = (byte) (code >> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(r, 0, payload, 2, payload.length - 2);
+        try {
+            connection.getClient().send(encode(CLOSE, payload));
+        } catch(IOException e){
+            connection.close();
+            throw e;
+        }
+    }
+
+    // doesn't wait for the frame to be sent, returns false if it was dropped
+    boolean queueFrame(byte[] frame){
+        return !closeSent && connection.getClient().queue(frame);
+    }
+
+    void sendFrame(byte[] frame) throws IOException {
+        if(closeSent){
+            throw new IOException("The WebSocket connection was closed");
+        }
+        try {
+            connection.getClient().send(frame);
+        } catch(IOException e){
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Encodes a frame which is sent from the server (without masking)
+     * @param opcode the type of the frame
+     * @param payload the payload
+     * @return the frame
+     */
+    static byte[] encode(int opcode, byte[] payload){
+        int length = payload.length;
+        int header = length < 126 ? 2 : (length < 65536 ? 4 : 10);
+        byte[] frame = new byte[header + length];
+        frame[0] = (byte) (0x80 | opcode);
+        if(length < 126){
+            frame[1] = (byte) length;
+        } else if(length < 65536){
+            frame[1] = 126;
+            frame[2] = (byte) (length >> 8);
+            frame[3] = (byte) length;
+        } else {
+            frame[1] = 127;
+            for(int i = 0; i < 8; i++){
+                frame[9 - i] = (byte) ((long) length >> (8 * i));
+            }
+        }
+        System.arraycopy(payload, 0, frame, header, length);
+        return frame;
+    }
+
+    final HTTPUpgrade upgrade = new HTTPUpgrade() {
+        @Override
+        public void open(HTTPConnection connection){
+            WebSocket.this.connection = connection;
+            open = true;
+            endpoint.add(WebSocket.this);
+            try {
+                handler.open(WebSocket.this);
+            } catch(RuntimeException e){
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void receive(ByteBuffer data) throws IOException {
+            lastReceived = System.currentTimeMillis();
+            if(pending.length - pendingLength < data.remaining()){
+                byte[] b = new byte[Math.max(pending.length * 2, pendingLength + data.remaining())];
+                System.arraycopy(pending, 0, b, 0, pendingLength);
+                pending = b;
+            }
+            int length = data.remaining();
+            data.get(pending, pendingLength, length);
+            pendingLength += length;
+            int pos = 0;
+            while(!closed){
+                int read = readFrame(pending, pos, pendingLength);
+                if(read == 0){
+                    break;
+                }
+                pos += read;
+            }
+            // keeps the incomplete frame at the beginning of the buffer
+            if(0 < pos){
+                System.arraycopy(pending, pos, pending, 0, pendingLength - pos);
+                pendingLength -= pos;
+            }
+        }
+
+        @Override
+        public void checkTimeout(long now){
+            long interval = endpoint.getPingInterval() * 1000L;
+            if(interval <= 0){
+                return;
+            }
+            if(2 * interval < now - lastReceived){
+                // the client didn't answer the pings
+                connection.close();
+            } else if(interval < now - lastReceived && interval < now - lastPing){
+                lastPing = now;
+                try {
+                    ping(new byte[0]);
+                } catch(IOException ignored) { }
+            }
+        }
+
+        @Override
+        public void closed(){
+            terminate(1006, "");
+        }
+    };
+
+    // reads a frame from the given position, returns the length of the frame or 0 if the frame isn't complete
+    private int readFrame(byte[] b, int pos, int end) throws IOException {
+        int available = end - pos;
+        if(available < 2){
+            return 0;
+        }
+        boolean fin = (b[pos] & 0x80) != 0;
+        int opcode = b[pos] & 0x0F;
+        boolean masked = (b[pos + 1] & 0x80) != 0;
+        long length = b[pos + 1] & 0x7F;
+        int header = 2;
+        if(length == 126){
+            header = 4;
+            if(available < header){
+                return 0;
+            }
+            length = ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+        } else if(length == 127){
+            header = 10;
+            if(available < header){
+                return 0;
+            }
+            length = 0;
+            for(int i = 0; i < 8; i++){
+                length = (length << 8) | (b[pos + 2 + i] & 0xFF);
+            }
+        }
+        if((b[pos] & 0x70) != 0 || !masked){
+            // extensions aren't supported and all frames from a client must be masked
+            fail(1002, "Protocol error");
+            return 0;
+        }
+        if(CLOSE <= opcode && (125 < length || !fin)){
+            fail(1002, "Invalid control frame");
+            return 0;
+        }
+        long size = message == null ? length : message.size() + length;
+        if(size < 0 || endpoint.getMaxMessageSize() < size){
+            fail(1009, "Message too big");
+            return 0;
+        }
+        if(available < header + 4 + length){
+            return 0;
+        }
+        int maskPos = pos + header;
+        byte[] payload = new byte[(int) length];
+        for(int i = 0; i < payload.length; i++){
+            payload[i] = (byte) (b[maskPos + 4 + i] ^ b[maskPos + (i & 3)]);
+        }
+        frame(fin, opcode, payload);
+        return header + 4 + (int) length;
+    }
+
+    private void frame(boolean fin, int opcode, byte[] payload) throws IOException {
+        switch(opcode){
+            case PING:
+                if(!closeSent){
+                    sendFrame(encode(PONG, payload));
+                }
+                return;
+            case PONG:
+                return;
+            case CLOSE:
+                int code = 1005;
+                String reason = "";
+                if(2 <= payload.length){
+                    code = ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF);
+                    reason = new String(payload, 2, payload.length - 2, StandardCharsets.UTF_8);
+                }
+                // answers the closing handshake
+                if(!closeSent){
+                    close(code == 1005 ? 1000 : code, "");
+                }
+                terminate(code, reason);
+                connection.close();
+                return;
+            case TEXT:
+            case BINARY:
+                if(message != null){
+                    fail(1002, "Expected a continuation frame");
+                    return;
+                }
+                if(fin){
+                    deliver(opcode, payload);
+                    return;
+                }
+                message = new ByteArrayOutputStream(payload.length * 2);
+                message.write(payload);
+                messageType = opcode;
+                return;
+            case CONTINUATION:
+                if(message == null){
+                    fail(1002, "Unexpected continuation frame");
+                    return;
+                }
+                message.write(payload);
+                if(fin){
+                    byte[] data = message.toByteArray();
+                    message = null;
+                    deliver(messageType, data);
+                }
+                return;
+            default:
+                fail(1002, "Unknown opcode");
+        }
+    }
+
+    private void deliver(int type, byte[] data) throws IOException {
+        try {
+            if(type == TEXT){
+                String text;
+                try {
+                    text = StandardCharsets.UTF_8.newDecoder()
+                            .onMalformedInput(CodingErrorAction.REPORT)
+                            .onUnmappableCharacter(CodingErrorAction.REPORT)
+                            .decode(ByteBuffer.wrap(data)).toString();
+                } catch(CharacterCodingException e){
+                    fail(1007, "Invalid UTF-8");
+                    return;
+                }
+                handler.message(this, text);
+            } else {
+                handler.message(this, data);
+            }
+        } catch(RuntimeException e){
+            e.printStackTrace();
+        }
+    }
+
+    private void fail(int code, String reason) throws IOException {
+        try {
+            close(code, reason);
+        } finally {
+            terminate(code, reason);
+            connection.close();
+        }
+    }
+
+    // notifies the handler once
+    private void terminate(int code, String reason){
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            closed = true;
+        }
+        open = false;
+        endpoint.remove(this);
+        try {
+            handler.close(this, code, reason);
+        } catch(RuntimeException e){
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A request handler which opens WebSocket connections (RFC 6455).<br>
+ * Register it to a route of {@link HTTPRouter} (e.g: "/live"), browsers can then connect to it by
+ * <code>new WebSocket("ws://host/live")</code>.<br>
+ * The open connections are kept by this endpoint, so a message can be broadcast to all of them.
+ */
+public class WebSocketEndpoint implements HTTPRequestHandler {
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private WebSocketHandler handler;
+    private Set<WebSocket> sockets = ConcurrentHashMap.newKeySet();
+    private volatile long maxMessageSize = 1048576;
+    private volatile int pingInterval = 30;
+
+    /**
+     * Creates a new WebSocketEndpoint instance
+     * @param handler the handler for the events of the connections
+     */
+    public WebSocketEndpoint(WebSocketHandler handler){
+        this.handler = handler;
+    }
+
+    /**
+     * Sets the maximum size of a message which can be received
+     * @param size the size in bytes
+     * @return this object
+     */
+    public WebSocketEndpoint setMaxMessageSize(long size){
+        this.maxMessageSize = size;
+        return this;
+    }
+
+    /**
+     * Gets the maximum size of a message which can be received
+     * @return the size in bytes
+     */
+    public long getMaxMessageSize(){
+        return this.maxMessageSize;
+    }
+
+    /**
+     * Sets how long a connection can stay silent before a ping is sent to it.<br>
+     * The connection is closed if the client doesn't send anything within two intervals.
+     * @param seconds the interval in seconds, or 0 to disable
+     * @return this object
+     */
+    public WebSocketEndpoint setPingInterval(int seconds){
+        this.pingInterval = seconds;
+        return this;
+    }
+
+    /**
+     * Gets how long a connection can stay silent before a ping is sent to it
+     * @return the interval in seconds
+     */
+    public int getPingInterval(){
+        return this.pingInterval;
+    }
+
+    /**
+     * Gets all open connections
+     * @return an unmodifiable set of connections
+     */
+    public Set<WebSocket> getSockets(){
+        return Collections.unmodifiableSet(this.sockets);
+    }
+
+    /**
+     * Sends the given text message to all open connections.<br>
+     * This method doesn't wait for the message to be sent, each connection has a queue which is sent by a background thread,
+     * so a slow connection doesn't delay the others (see {@link ServerSocketClientManager#queue(byte[])}).
+     * @param message the message
+     * @return the amount of connections which the message was queued for
+     */
+    public int broadcast(String message){
+        // encodes the frame only once for all connections
+        return broadcastFrame(WebSocket.encode(WebSocket.TEXT, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Sends the given binary message to all open connections without waiting for it to be sent
+     * @param data the message
+     * @return the amount of connections which the message was queued for
+     */
+    public int broadcast(byte[] data){
+        return broadcastFrame(WebSocket.encode(WebSocket.BINARY, data));
+    }
+
+    private int broadcastFrame(byte[] frame){
+        int sent = 0;
+        for(WebSocket socket : sockets){
+            if(socket.queueFrame(frame)){
+                sent++;
+            }
+        }
+        return sent;
+    }
+
+    void add(WebSocket socket){
+        sockets.add(socket);
+    }
+
+    void remove(WebSocket socket){
+        sockets.remove(socket);
+    }
+
+    @Override
+    public void request(ServerSocketClientManager client, HTTPRequestReader request, HTTPResponseWriter response) {
+        if(request.getRequestMethod() != HTTPRequestMethod.GET){
+            response.setStatusCode(405);
+            response.setField("allow", "GET");
+            return;
+        }
+        if(!hasToken(request.getField("Upgrade"), "websocket") || !hasToken(request.getField("Connection"), "upgrade")){
+            response.setStatusCode(426);
+            response.setField("upgrade", "websocket");
+            return;
+        }
+        if(!"13".equals(request.getField("Sec-WebSocket-Version"))){
+            response.setStatusCode(426);
+            response.setField("sec-websocket-version", "13");
+            return;
+        }
+        String key = request.getField("Sec-WebSocket-Key");
+        if(key == null || !isValidKey(key.trim())){
+            response.setStatusCode(400);
+            return;
+        }
+        response.setStatusCode(101);
+        response.removeField("content-length");
+        response.setField("upgrade", "websocket");
+        response.setField("connection", "Upgrade");
+        response.setField("sec-websocket-accept", accept(key.trim()));
+        response.setUpgrade(new WebSocket(this, handler, request).upgrade);
+    }
+
+    /**
+     * Checks does the given list of tokens (e.g: the value of the "Connection" field) contain the given token
+     * @param value a comma-separated list, or null
+     * @param token a token, it is case-insensitive
+     * @return true if yes
+     */
+    static boolean hasToken(String value, String token){
+        if(value == null){
+            return false;
+        }
+        for(String s : value.split(",")){
+            if(s.trim().equalsIgnoreCase(token)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the key must be 16 random bytes which are encoded by base64
+    private static boolean isValidKey(String key){
+        try {
+            return Base64.getDecoder().decode(key).length == 16;
+        } catch(IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    static String accept(String key){
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch(NoSuchAlgorithmException e) {
+            // every Java platform must support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
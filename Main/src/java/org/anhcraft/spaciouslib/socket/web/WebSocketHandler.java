@@ -0,0 +1,34 @@
+package org.anhcraft.spaciouslib.socket.web;
+
+/**
+ * A handler for the events of WebSocket connections
+ */
+public interface WebSocketHandler {
+    /**
+     * Called when a WebSocket connection was opened
+     * @param socket the WebSocket connection
+     */
+    void open(WebSocket socket);
+
+    /**
+     * Called when a text message was received
+     * @param socket the WebSocket connection
+     * @param message the message
+     */
+    void message(WebSocket socket, String message);
+
+    /**
+     * Called when a binary message was received
+     * @param socket the WebSocket connection
+     * @param data the message
+     */
+    void message(WebSocket socket, byte[] data);
+
+    /**
+     * Called once when a WebSocket connection was closed
+     * @param socket the WebSocket connection
+     * @param code the status code (e.g: 1000 for a normal closure, 1006 if the connection was lost)
+     * @param reason the reason, it can be empty
+     */
+    void close(WebSocket socket, int code, String reason);
+}
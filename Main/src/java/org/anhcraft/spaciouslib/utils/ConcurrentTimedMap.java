@@ -0,0 +1,334 @@
+package org.anhcraft.spaciouslib.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A thread-safe version of {@link TimedMap} which can be used by the main thread and asynchronous tasks at the same time.<br>
+ * Reading never locks. A key which expired is treated as absent immediately, but it is removed later
+ * by a background thread which is shared by all maps, so the other threads don't spend time on cleaning.<br>
+ * The map is unregistered from the background thread automatically after it was garbage-collected.
+ */
+public class ConcurrentTimedMap<K, V> {
+    private static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread thread = new Thread(r, "SpaciousLib timed map expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SCHEDULER.setRemoveOnCancelPolicy(true);
+    }
+
+    private ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<>();
+    // the new entries are passed to the background thread without locking
+    private ConcurrentLinkedQueue<Entry<K, V>> scheduled = new ConcurrentLinkedQueue<>();
+    // only used by the background thread, the entries which were removed or replaced are skipped
+    private PriorityQueue<Entry<K, V>> deadlines = new PriorityQueue<>(16, (x, y) -> Long.compare(x.expiry, y.expiry));
+    private volatile ExpiryListener<K, V> listener;
+
+    /**
+     * Creates a new ConcurrentTimedMap instance which removes the expired keys every second
+     */
+    public ConcurrentTimedMap(){
+        this(1000);
+    }
+
+    /**
+     * Creates a new ConcurrentTimedMap instance
+     * @param cleanInterval how often the expired keys are removed (in milliseconds)
+     */
+    public ConcurrentTimedMap(long cleanInterval){
+        Cleaner<K, V> cleaner = new Cleaner<>(this);
+        cleaner.future = SCHEDULER.scheduleWithFixedDelay(cleaner, cleanInterval, cleanInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets the listener which is notified after a key expired
+     * @param listener the listener, or null to disable
+     * @return this object
+     */
+    public ConcurrentTimedMap<K, V> setExpiryListener(ExpiryListener<K, V> listener){
+        this.listener = listener;
+        return this;
+    }
+
+    private static boolean isExpired(Entry<?, ?> entry, long now){
+        return entry == null || now > entry.expiry;
+    }
+
+    /**
+     * Checks did the given key expire
+     * @param key a key
+     * @return true if it expired or it doesn't exist
+     */
+    public boolean isExpired(K key){
+        return isExpired(entries.get(key), System.currentTimeMillis());
+    }
+
+    /**
+     * Checks does this map contain the given key
+     * @param key a key
+     * @return true if yes
+     */
+    public boolean containsKey(K key){
+        return !isExpired(key);
+    }
+
+    /**
+     * Gets the value of the given key in this map
+     * @param key a key
+     * @return its value, or null if it expired or it doesn't exist
+     */
+    public V get(K key){
+        Entry<K, V> entry = entries.get(key);
+        return isExpired(entry, System.currentTimeMillis()) ? null : entry.value;
+    }
+
+    /**
+     * Sets the given key and its value with the expired time
+     * @param key a key
+     * @param value the value of the key
+     * @param seconds an expired time (in seconds)
+     * @return the previous value of the key, or null if it didn't exist
+     */
+    public V put(K key, V value, long seconds){
+        long now = System.currentTimeMillis();
+        Entry<K, V> entry = new Entry<>(key, value, now + seconds * 1000L);
+        Entry<K, V> old = entries.put(key, entry);
+        scheduled.add(entry);
+        if(old == null){
+            return null;
+        }
+        if(isExpired(old, now)){
+            notifyExpired(old);
+            return null;
+        }
+        return old.value;
+    }
+
+    /**
+     * Sets the given key and its value with the expired time if the key doesn't exist or it expired.<br>
+     * This is done atomically.
+     * @param key a key
+     * @param value the value of the key
+     * @param seconds an expired time (in seconds)
+     * @return the current value of the key, or null if the given value was set
+     */
+    public V putIfAbsent(K key, V value, long seconds){
+        List<Entry<K, V>> changes = new ArrayList<>(2);
+        Entry<K, V> entry = insert(key, k -> value, seconds, changes);
+        return entry == null || changes.contains(entry) ? null : entry.value;
+    }
+
+    /**
+     * Gets the value of the given key, if it doesn't exist or it expired then the given function is called
+     * to create a new value which is set with the expired time.<br>
+     * This is done atomically, the function is called at most once and other threads which want to change
+     * the same key are blocked while it is running, so it should be short.
+     * @param key a key
+     * @param function the function which creates the value, if it returns null nothing is set
+     * @param seconds an expired time (in seconds)
+     * @return the current value or the new value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function, long seconds){
+        Entry<K, V> entry = entries.get(key);
+        if(!isExpired(entry, System.currentTimeMillis())){
+            return entry.value;
+        }
+        entry = insert(key, function, seconds, new ArrayList<>(2));
+        return entry == null ? null : entry.value;
+    }
+
+    // sets a new entry if there isn't a valid one, returns the valid entry or the new entry,
+    // the expired entry and the new entry are added to the given list
+    private Entry<K, V> insert(K key, Function<? super K, ? extends V> function, long seconds, List<Entry<K, V>> changes){
+        long now = System.currentTimeMillis();
+        Entry<K, V> entry = entries.compute(key, (k, old) -> {
+            if(!isExpired(old, now)){
+                return old;
+            }
+            if(old != null){
+                changes.add(old);
+            }
+            V value = function.apply(k);
+            if(value == null){
+                return null;
+            }
+            Entry<K, V> e = new Entry<>(k, value, now + seconds * 1000L);
+            changes.add(e);
+            return e;
+        });
+        for(Entry<K, V> e : changes){
+            if(e == entry){
+                scheduled.add(e);
+            } else {
+                notifyExpired(e);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the given key
+     * @param key a key
+     * @return its value, or null if it expired or it didn't exist
+     */
+    public V remove(K key){
+        Entry<K, V> old = entries.remove(key);
+        if(old == null){
+            return null;
+        }
+        if(isExpired(old, System.currentTimeMillis())){
+            notifyExpired(old);
+            return null;
+        }
+        return old.value;
+    }
+
+    /**
+     * Clears all keys and values in this map
+     */
+    public void clear(){
+        entries.clear();
+        scheduled.clear();
+    }
+
+    /**
+     * Gets the amount of key-value mappings in this map.<br>
+     * The keys which have expired but haven't been removed by the background thread yet are counted too.
+     * @return the amount
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * Checks does this map empty
+     * @return true if yes
+     */
+    public boolean isEmpty(){
+        return entries.isEmpty();
+    }
+
+    /**
+     * Gets a copy of all keys which haven't expired
+     * @return a set of key
+     */
+    public Set<K> keySet(){
+        long now = System.currentTimeMillis();
+        Set<K> keys = new HashSet<>();
+        for(Entry<K, V> entry : entries.values()){
+            if(!isExpired(entry, now)){
+                keys.add(entry.key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Gets a copy of all values whose keys haven't expired
+     * @return a list of values
+     */
+    public List<V> values(){
+        long now = System.currentTimeMillis();
+        List<V> values = new ArrayList<>();
+        for(Entry<K, V> entry : entries.values()){
+            if(!isExpired(entry, now)){
+                values.add(entry.value);
+            }
+        }
+        return values;
+    }
+
+    private void notifyExpired(Entry<K, V> entry){
+        if(listener != null){
+            SCHEDULER.execute(() -> callListener(entry));
+        }
+    }
+
+    private void callListener(Entry<K, V> entry){
+        ExpiryListener<K, V> listener = this.listener;
+        if(listener != null){
+            try {
+                listener.expired(entry.key, entry.value);
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // called by the background thread
+    private void clean(){
+        long now = System.currentTimeMillis();
+        Entry<K, V> entry;
+        while((entry = scheduled.poll()) != null){
+            deadlines.add(entry);
+        }
+        List<Entry<K, V>> expired = new ArrayList<>();
+        while((entry = deadlines.peek()) != null && now > entry.expiry){
+            deadlines.poll();
+            // only removes the key if it still has this entry
+            if(entries.remove(entry.key, entry)){
+                expired.add(entry);
+            }
+        }
+        // rebuilds the queue if most of its entries were replaced or removed, so it doesn't grow forever
+        if(deadlines.size() > 2 * entries.size() + 64){
+            deadlines.clear();
+            deadlines.addAll(entries.values());
+        }
+        for(Entry<K, V> e : expired){
+            callListener(e);
+        }
+    }
+
+    // compared by identity, so an entry is only removed if it hasn't been replaced
+    private static class Entry<K, V> {
+        private final K key;
+        private final V value;
+        private final long expiry;
+
+        private Entry(K key, V value, long expiry){
+            this.key = key;
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+
+    // doesn't keep the map alive, so a map which isn't used anymore can be garbage-collected
+    private static class Cleaner<K, V> implements Runnable {
+        private WeakReference<ConcurrentTimedMap<K, V>> map;
+        private volatile ScheduledFuture<?> future;
+
+        private Cleaner(ConcurrentTimedMap<K, V> map){
+            this.map = new WeakReference<>(map);
+        }
+
+        @Override
+        public void run(){
+            ConcurrentTimedMap<K, V> m = map.get();
+            if(m == null){
+                if(future != null){
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                m.clean();
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.anhcraft.spaciouslib.utils;
+
+public interface ExpiryListener<K, V> {
+    /**
+     * This method will be called after a key expired and was removed.<br>
+     * It is called by a background thread which is shared by all maps, so it should return quickly.
+     * @param key the key
+     * @param value the value of the key
+     */
+    void expired(K key, V value);
+}
@@ -0,0 +1,194 @@
+package org.anhcraft.spaciouslib.utils;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A histogram counts how many recorded durations fall into each bucket.<br>
+ * It is safe to record from many threads at the same time.
+ * The recording threads don't block each other, they only wait while a consistent copy is being taken.
+ */
+public class Histogram {
+    /**
+     * The default upper bounds of buckets (in nanoseconds), from 100 microseconds to 10 seconds
+     */
+    public static final long[] DEFAULT_BOUNDS = new long[]{
+            100_000L, 250_000L, 500_000L,
+            1_000_000L, 2_500_000L, 5_000_000L,
+            10_000_000L, 25_000_000L, 50_000_000L,
+            100_000_000L, 250_000_000L, 500_000_000L,
+            1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    private long[] bounds;
+    // the last bucket contains all durations which are greater than the last bound
+    private AtomicLongArray counts;
+    private LongAdder sum = new LongAdder();
+    // recording takes the shared lock, copying takes the exclusive lock so a count is never copied without its duration
+    private StampedLock lock = new StampedLock();
+
+    /**
+     * Creates a new Histogram instance with the default buckets
+     */
+    public Histogram(){
+        this(DEFAULT_BOUNDS);
+    }
+
+    /**
+     * Creates a new Histogram instance
+     * @param bounds the upper bounds of buckets in ascending order (in nanoseconds)
+     */
+    public Histogram(long[] bounds){
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Records the given duration
+     * @param nanos a duration in nanoseconds
+     */
+    public void record(long nanos){
+        int i = 0;
+        while(i < bounds.length && bounds[i] < nanos){
+            i++;
+        }
+        long stamp = lock.readLock();
+        try {
+            counts.incrementAndGet(i);
+            sum.add(nanos);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Gets the upper bounds of all buckets (in nanoseconds).<br>
+     * There is one more bucket at the end which has no upper bound.
+     * @return an array of bounds
+     */
+    public long[] getBounds(){
+        return this.bounds.clone();
+    }
+
+    /**
+     * Gets the amount of recorded durations in each bucket
+     * @return an array of counts
+     */
+    public long[] getCounts(){
+        long[] c = new long[counts.length()];
+        for(int i = 0; i < c.length; i++){
+            c[i] = counts.get(i);
+        }
+        return c;
+    }
+
+    /**
+     * Copies the amount of recorded durations in each bucket to the given array.<br>
+     * Unlike {@link #getCounts()}, this method doesn't create a new array.
+     * @param into an array which has one more element than the bounds
+     */
+    public void copyCounts(long[] into){
+        for(int i = 0; i < into.length; i++){
+            into[i] = counts.get(i);
+        }
+    }
+
+    /**
+     * Copies the amount of recorded durations in each bucket to the given array and gets their total.<br>
+     * Both are taken at the same moment, so the total always belongs to the copied counts.
+     * @param into an array which has one more element than the bounds
+     * @return the total of the copied durations in nanoseconds
+     */
+    public long copy(long[] into){
+        long stamp = lock.writeLock();
+        try {
+            copyCounts(into);
+            return sum.sum();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the amount of all recorded durations
+     * @return the amount
+     */
+    public long getCount(){
+        long c = 0;
+        for(int i = 0; i < counts.length(); i++){
+            c += counts.get(i);
+        }
+        return c;
+    }
+
+    /**
+     * Gets the total of all recorded durations
+     * @return the total in nanoseconds
+     */
+    public long getSum(){
+        return this.sum.sum();
+    }
+
+    /**
+     * Estimates the duration at the given percentile.<br>
+     * The result is the upper bound of the bucket which contains that percentile.
+     * @param percentile a percentile (from 0 to 1)
+     * @return the duration in nanoseconds, or Long.MAX_VALUE if it is greater than the last bound
+     */
+    public long getPercentile(double percentile){
+        long[] c = getCounts();
+        long total = 0;
+        for(long x : c){
+            total += x;
+        }
+        if(total == 0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for(int i = 0; i < c.length; i++){
+            seen += c[i];
+            if(rank <= seen){
+                return i < bounds.length ? bounds[i] : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Copies the current state of this histogram
+     * @return a new histogram
+     */
+    public Histogram snapshot(){
+        Histogram h = new Histogram(this.bounds);
+        long[] c = new long[counts.length()];
+        h.sum.add(copy(c));
+        for(int i = 0; i < c.length; i++){
+            h.counts.set(i, c[i]);
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(o != null && o.getClass() == this.getClass()){
+            Histogram h = (Histogram) o;
+            return new EqualsBuilder()
+                    .append(h.bounds, this.bounds)
+                    .append(h.getCounts(), this.getCounts())
+                    .append(h.getSum(), this.getSum())
+                    .build();
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode(){
+        return new HashCodeBuilder(23, 41)
+                .append(this.bounds).append(this.getCounts()).append(this.getSum()).toHashCode();
+    }
+}
@@ -3,22 +3,162 @@ package org.anhcraft.spaciouslib.utils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
- * A TimedMap is a map which removes any expired key automatically.
+ * A TimedMap is a map which removes any expired key automatically.<br>
+ * Getting a value takes a constant time. The keys are also kept in a queue which is ordered by their expiry time,
+ * so removing the expired keys only looks at the keys which have expired instead of all keys.<br>
+ * The map can also be bounded by a maximum size or a maximum total weight, then the least recently used keys
+ * are evicted when it is full, which makes it a cache in front of expensive lookups.
+ * Reading a key doesn't change the map itself, so it can be done while iterating over the keys or the values.<br>
+ * This class isn't thread-safe.
  */
 public class TimedMap<K, V> {
-    private LinkedHashMap<K, V> a = new LinkedHashMap<>();
-    private LinkedHashMap<K, Long> b = new LinkedHashMap<>();
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private HashMap<K, Entry<K, V>> entries = new HashMap<>();
+    // all entries from the least recently used one to the most recently used one,
+    // they are linked by themselves so the map doesn't change when an entry is used
+    private Entry<K, V> head;
+    private Entry<K, V> tail;
+    // an entry which was removed or replaced stays in the queue until it is polled,
+    // it is skipped since it isn't in the map anymore
+    private PriorityQueue<Entry<K, V>> deadlines = new PriorityQueue<>(16, (x, y) -> Long.compare(x.expiry, y.expiry));
+    private long defaultTTL = -1;
+    private long maxSize;
+    private long maxWeight;
+    private Weigher<K, V> weigher;
+    private long weight;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Sets the maximum amount of keys, the least recently used keys are evicted if there are more
+     * @param maxSize the amount, or 0 to disable
+     * @return this object
+     */
+    public TimedMap<K, V> setMaxSize(long maxSize){
+        this.maxSize = maxSize;
+        evict();
+        return this;
+    }
+
+    /**
+     * Sets the maximum total weight of all entries, the least recently used keys are evicted if the weight is more
+     * @param maxWeight the weight, or 0 to disable
+     * @param weigher the weigher which gets the weight of each entry
+     * @return this object
+     */
+    public TimedMap<K, V> setMaxWeight(long maxWeight, Weigher<K, V> weigher){
+        this.maxWeight = maxWeight;
+        this.weigher = maxWeight > 0 ? weigher : null;
+        this.weight = 0;
+        for(Entry<K, V> entry : entries.values()){
+            entry.weight = weigh(entry.key, entry.value);
+            this.weight += entry.weight;
+        }
+        evict();
+        return this;
+    }
+
+    /**
+     * Sets the expired time of the keys which are put without one
+     * @param seconds an expired time (in seconds), or a negative number if they never expire
+     * @return this object
+     */
+    public TimedMap<K, V> setDefaultTTL(long seconds){
+        this.defaultTTL = seconds;
+        return this;
+    }
+
+    private boolean isBounded(){
+        return maxSize > 0 || maxWeight > 0;
+    }
+
+    // adds the entry as the most recently used one
+    private void link(Entry<K, V> entry){
+        entry.prev = tail;
+        entry.next = null;
+        if(tail == null){
+            head = entry;
+        } else {
+            tail.next = entry;
+        }
+        tail = entry;
+    }
+
+    private void unlink(Entry<K, V> entry){
+        if(entry.prev == null){
+            head = entry.next;
+        } else {
+            entry.prev.next = entry.next;
+        }
+        if(entry.next == null){
+            tail = entry.prev;
+        } else {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private long weigh(K key, V value){
+        return weigher == null ? 0 : weigher.weigh(key, value);
+    }
+
+    private boolean isFull(){
+        return (0 < maxSize && maxSize < entries.size()) || (0 < maxWeight && maxWeight < weight);
+    }
+
+    // removes the least recently used entries until the map isn't full
+    private void evict(){
+        if(!isFull()){
+            return;
+        }
+        while(isFull() && head != null){
+            Entry<K, V> eldest = head;
+            entries.remove(eldest.key);
+            unlink(eldest);
+            weight -= eldest.weight;
+            evictions++;
+        }
+    }
 
     private void clean(){
-        // don't use the "keySet" method to prevent the StackOverflow error
-        for(K key : a.keySet()){
-            if(isExpired(key)){
-                remove(key);
+        long now = System.currentTimeMillis();
+        Entry<K, V> head;
+        while((head = deadlines.peek()) != null && now > head.expiry){
+            deadlines.poll();
+            // the key may have a newer entry already
+            if(entries.get(head.key) == head){
+                entries.remove(head.key);
+                unlink(head);
+                weight -= head.weight;
+                expirations++;
+            }
+        }
+    }
+
+    private void schedule(Entry<K, V> entry){
+        if(entry.expiry == NEVER){
+            return;
+        }
+        deadlines.add(entry);
+        // rebuilds the queue if most of its entries were replaced or removed, so it doesn't grow forever
+        if(deadlines.size() > 2 * entries.size() + 64){
+            deadlines.clear();
+            for(Entry<K, V> e : entries.values()){
+                if(e.expiry != NEVER){
+                    deadlines.add(e);
+                }
             }
         }
     }
@@ -30,8 +170,8 @@ public class TimedMap<K, V> {
      * @return true if it expired
      */
     public boolean isExpired(K key){
-        // don't use the "containsKey" method to prevent the StackOverflow error
-        return !(a.containsKey(key) && b.containsKey(key)) || System.currentTimeMillis() > b.get(key);
+        Entry<K, V> entry = entries.get(key);
+        return entry == null || System.currentTimeMillis() > entry.expiry;
     }
 
     /**
@@ -40,7 +180,7 @@ public class TimedMap<K, V> {
      */
     public int size() {
         clean();
-        return a.size();
+        return entries.size();
     }
 
     /**
@@ -57,8 +197,7 @@ public class TimedMap<K, V> {
      * @return true if yes
      */
     public boolean containsKey(K key) {
-        clean();
-        return a.containsKey(key) && b.containsKey(key);
+        return !isExpired(key);
     }
 
     /**
@@ -68,7 +207,12 @@ public class TimedMap<K, V> {
      */
     public boolean containsValue(V value) {
         clean();
-        return a.containsValue(value);
+        for(Entry<K, V> entry : entries.values()){
+            if(value == null ? entry.value == null : value.equals(entry.value)){
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -77,19 +221,62 @@ public class TimedMap<K, V> {
      * @return its value
      */
     public V get(K key) {
-        return (containsKey(key) && !isExpired(key)) ? a.get(key) : null;
+        Entry<K, V> entry = entries.get(key);
+        if(entry == null || System.currentTimeMillis() > entry.expiry){
+            return null;
+        }
+        // the order only matters if the least recently used keys can be evicted
+        if(isBounded() && entry != tail){
+            unlink(entry);
+            link(entry);
+        }
+        return entry.value;
+    }
+
+    /**
+     * Sets the given key and its value with the default expired time (see {@link #setDefaultTTL(long)})
+     * @param key a key
+     * @param value the value of the key
+     */
+    public void put(K key, V value) {
+        if(defaultTTL < 0){
+            putForever(key, value);
+        } else {
+            put(key, value, defaultTTL);
+        }
     }
 
     /**
      * Sets the given key and its value with the expired time
      * @param key a key
      * @param value the value of the key
-     * @param seconds an expired time (in seconds)
+     * @param seconds an expired time (in seconds), a negative number means the key has expired already
      */
     public void put(K key, V value, long seconds) {
+        putEntry(key, value, System.currentTimeMillis() + (seconds * 1000L));
+    }
+
+    /**
+     * Sets the given key and its value which never expires
+     * @param key a key
+     * @param value the value of the key
+     */
+    public void putForever(K key, V value) {
+        putEntry(key, value, NEVER);
+    }
+
+    private void putEntry(K key, V value, long expiry){
         clean();
-        a.put(key, value);
-        b.put(key, System.currentTimeMillis() + (seconds * 1000L));
+        Entry<K, V> entry = new Entry<>(key, value, expiry);
+        entry.weight = weigh(key, value);
+        Entry<K, V> old = entries.put(key, entry);
+        if(old != null){
+            unlink(old);
+        }
+        link(entry);
+        weight += entry.weight - (old == null ? 0 : old.weight);
+        schedule(entry);
+        evict();
     }
 
     /**
@@ -97,16 +284,25 @@ public class TimedMap<K, V> {
      * @param key a key
      */
     public void remove(K key) {
-        a.remove(key);
-        b.remove(key);
+        Entry<K, V> old = entries.remove(key);
+        if(old != null){
+            unlink(old);
+            weight -= old.weight;
+        }
+        if(entries.isEmpty()){
+            deadlines.clear();
+        }
     }
 
     /**
      * Clears all keys and values in this map
      */
     public void clear() {
-        a = new LinkedHashMap<>();
-        b = new LinkedHashMap<>();
+        entries.clear();
+        deadlines.clear();
+        head = null;
+        tail = null;
+        weight = 0;
     }
 
     /**
@@ -115,7 +311,30 @@ public class TimedMap<K, V> {
      */
     public Set<K> keySet() {
         clean();
-        return a.keySet();
+        return new AbstractSet<K>() {
+            @Override
+            public Iterator<K> iterator(){
+                return new EntryIterator<>(e -> e.key);
+            }
+
+            @Override
+            public int size(){
+                return entries.size();
+            }
+
+            @Override
+            public boolean contains(Object o){
+                return entries.containsKey(o);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public boolean remove(Object o){
+                boolean contained = entries.containsKey(o);
+                TimedMap.this.remove((K) o);
+                return contained;
+            }
+        };
     }
 
     /**
@@ -124,7 +343,17 @@ public class TimedMap<K, V> {
      */
     public Collection<V> values() {
         clean();
-        return a.values();
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator(){
+                return new EntryIterator<>(e -> e.value);
+            }
+
+            @Override
+            public int size(){
+                return entries.size();
+            }
+        };
     }
 
     /**
@@ -132,8 +361,33 @@ public class TimedMap<K, V> {
      * @param map a timed map
      */
     public void putAll(TimedMap<K, V> map){
-        this.a.putAll(map.a);
-        this.b.putAll(map.b);
+        for(Entry<K, V> e : map.entries.values()){
+            putEntry(e.key, e.value, e.expiry);
+        }
+    }
+
+    /**
+     * Gets the total weight of all entries (see {@link #setMaxWeight(long, Weigher)})
+     * @return the weight
+     */
+    public long getWeight(){
+        return this.weight;
+    }
+
+    /**
+     * Gets the amount of keys which were evicted because the map was full
+     * @return the amount
+     */
+    public long getEvictionCount(){
+        return this.evictions;
+    }
+
+    /**
+     * Gets the amount of keys which were removed because they expired
+     * @return the amount
+     */
+    public long getExpirationCount(){
+        return this.expirations;
     }
 
     @Override
@@ -141,8 +395,7 @@ public class TimedMap<K, V> {
         if(o != null && o.getClass() == this.getClass()){
             TimedMap m = (TimedMap) o;
             return new EqualsBuilder()
-                    .append(m.a, this.a)
-                    .append(m.b, this.b)
+                    .append(m.entries, this.entries)
                     .build();
         }
         return false;
@@ -151,6 +404,69 @@ public class TimedMap<K, V> {
     @Override
     public int hashCode(){
         return new HashCodeBuilder(21, 35)
-                .append(this.a).append(this.b).toHashCode();
+                .append(this.entries).toHashCode();
+    }
+
+    // an iterator of the entries which keeps the weight correct if an entry is removed
+    private class EntryIterator<T> implements Iterator<T> {
+        private Iterator<Entry<K, V>> it = entries.values().iterator();
+        private Function<Entry<K, V>, T> mapper;
+        private Entry<K, V> current;
+
+        private EntryIterator(Function<Entry<K, V>, T> mapper){
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext(){
+            return it.hasNext();
+        }
+
+        @Override
+        public T next(){
+            current = it.next();
+            return mapper.apply(current);
+        }
+
+        @Override
+        public void remove(){
+            it.remove();
+            unlink(current);
+            weight -= current.weight;
+        }
+    }
+
+    private static class Entry<K, V> {
+        private K key;
+        private V value;
+        private long expiry;
+        private long weight;
+        private Entry<K, V> prev;
+        private Entry<K, V> next;
+
+        private Entry(K key, V value, long expiry){
+            this.key = key;
+            this.value = value;
+            this.expiry = expiry;
+        }
+
+        @Override
+        public boolean equals(Object o){
+            if(o != null && o.getClass() == this.getClass()){
+                Entry<?, ?> e = (Entry<?, ?>) o;
+                return new EqualsBuilder()
+                        .append(e.key, this.key)
+                        .append(e.value, this.value)
+                        .append(e.expiry, this.expiry)
+                        .build();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode(){
+            return new HashCodeBuilder(23, 37)
+                    .append(this.key).append(this.value).append(this.expiry).toHashCode();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package org.anhcraft.spaciouslib.utils;
+
+public interface Weigher<K, V> {
+    /**
+     * Gets the weight of the given entry (e.g: its size in bytes).<br>
+     * The weight of an entry shouldn't change while it is in the map.
+     * @param key the key
+     * @param value the value of the key
+     * @return the weight, it shouldn't be negative
+     */
+    long weigh(K key, V value);
+}
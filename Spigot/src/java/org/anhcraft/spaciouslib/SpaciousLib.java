@@ -1,13 +1,17 @@
 package org.anhcraft.spaciouslib;
 
 import org.anhcraft.spaciouslib.bungee.BungeeAPI;
+import org.anhcraft.spaciouslib.io.AsyncFileManager;
 import org.anhcraft.spaciouslib.io.DirectoryManager;
 import org.anhcraft.spaciouslib.io.FileManager;
 import org.anhcraft.spaciouslib.listeners.*;
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
 import org.anhcraft.spaciouslib.mojang.SkinAPI;
 import org.anhcraft.spaciouslib.placeholder.PlaceholderAPI;
+import org.anhcraft.spaciouslib.socket.web.WebServerManager;
 import org.anhcraft.spaciouslib.tasks.ArmorEquipEventTask;
 import org.anhcraft.spaciouslib.tasks.CachedSkinTask;
+import org.anhcraft.spaciouslib.tasks.TickMonitorTask;
 import org.anhcraft.spaciouslib.utils.Chat;
 import org.anhcraft.spaciouslib.utils.VaultUtils;
 import org.apache.commons.io.IOUtils;
@@ -26,6 +30,8 @@ public final class SpaciousLib extends JavaPlugin {
     public static SpaciousLib instance;
     public static FileConfiguration config;
     public static Chat chat;
+    public static WebServerManager metricsServer;
+    public static AsyncFileManager fileManager;
 
     @Override
     public void onEnable(){
@@ -48,6 +54,8 @@ public final class SpaciousLib extends JavaPlugin {
 
         config = YamlConfiguration.loadConfiguration(CONFIG_FILE);
         chat = new Chat("&f[&bSpaciousLib&f] ");
+        // reads and writes the cache files without blocking the main thread
+        fileManager = new AsyncFileManager();
         ////////////////////////////////////////////////////////////////////////////////////////////
 
         chat.sendSender("&eStarting the tasks...");
@@ -75,6 +83,20 @@ public final class SpaciousLib extends JavaPlugin {
         getServer().getPluginManager().registerEvents(new ServerListener(), this);
         getServer().getPluginManager().registerEvents(new NPCInteractEventListener(), this);
 
+        if(config.getBoolean("metrics.enabled", false)){
+            chat.sendSender("&eStarting the metrics endpoint...");
+            MetricsRegistry registry = MetricsRegistry.getDefault();
+            new TickMonitorTask().runTaskTimer(this, 0, 1);
+            TickMonitorTask.registerMetrics(registry);
+            PacketListener.registerMetrics(registry);
+            // only the metrics are served, other paths are not found
+            // the endpoint has no authentication, so it is only reachable from this machine by default
+            metricsServer = new WebServerManager(config.getString("metrics.host", "127.0.0.1"), config.getInt("metrics.port", 9225),
+                    (client, request, response) -> response.setStatusCode(404));
+            metricsServer.setMetricsEndpoint(config.getString("metrics.path", "/metrics"), registry);
+            metricsServer.registerMetrics(registry, "metrics");
+        }
+
         PlayerCleaner.add(AnvilListener.data);
         if(Bukkit.getServer().getPluginManager().isPluginEnabled("Vault") && VaultUtils.init()){
             chat.sendSender("&aHooked to Vault plugin...");
@@ -83,5 +105,20 @@ public final class SpaciousLib extends JavaPlugin {
 
     @Override
     public void onDisable() {
+        if(metricsServer != null){
+            try {
+                metricsServer.close();
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+            metricsServer = null;
+        }
+        SkinAPI.stopWatching();
+        if(fileManager != null){
+            // the pending writes must be finished before the server stops
+            fileManager.flush().join();
+            fileManager.close();
+            fileManager = null;
+        }
     }
 }
\ No newline at end of file
@@ -5,7 +5,9 @@ import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import org.anhcraft.spaciouslib.events.PacketHandleEvent;
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
 import org.anhcraft.spaciouslib.utils.GameVersion;
+import org.anhcraft.spaciouslib.utils.Histogram;
 import org.anhcraft.spaciouslib.utils.ReflectionUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
@@ -14,8 +16,18 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+import java.util.concurrent.atomic.LongAdder;
+
 public class PacketListener implements Listener {
     private final static String PACKET_HANDLER = "SpaciousLib";
+    private final static LongAdder SENT_PACKETS = new LongAdder();
+    private final static LongAdder RECEIVED_PACKETS = new LongAdder();
+    private final static LongAdder CANCELLED_PACKETS = new LongAdder();
+    // the time which the listeners of PacketHandleEvent took, from 1 microsecond to 10 milliseconds
+    private final static Histogram HANDLE_TIME = new Histogram(new long[]{
+            1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L,
+            250_000L, 500_000L, 1_000_000L, 2_500_000L, 10_000_000L
+    });
 
     public PacketListener(){
         for(Player p : Bukkit.getServer().getOnlinePlayers()){
@@ -41,6 +53,19 @@ public class PacketListener implements Listener {
         return null;
     }
 
+    /**
+     * Registers the packet metrics to the given registry
+     * @param registry the registry
+     */
+    public static void registerMetrics(MetricsRegistry registry){
+        registry.counter("spaciouslib_packets_total", "The amount of packets which were handled",
+                new String[]{"direction", "clientbound"}, SENT_PACKETS::sum)
+                .counter("spaciouslib_packets_total", "The amount of packets which were handled",
+                        new String[]{"direction", "serverbound"}, RECEIVED_PACKETS::sum)
+                .counter("spaciouslib_packets_cancelled_total", "The amount of packets which were cancelled", null, CANCELLED_PACKETS::sum)
+                .histogram("spaciouslib_packet_handle_duration_seconds", "The time which the listeners of packets took", null, HANDLE_TIME);
+    }
+
     public static void remove(Player player){
         Channel channel = getChannel(player);
         if(channel.pipeline().get(PACKET_HANDLER) != null) {
@@ -65,19 +90,29 @@ public class PacketListener implements Listener {
                 new ChannelDuplexHandler() {
                     @Override
                     public void write(ChannelHandlerContext c, Object o, ChannelPromise p) throws Exception {
+                        long start = System.nanoTime();
                         PacketHandleEvent ev = new PacketHandleEvent(player, o, PacketHandleEvent.Type.CLIENT_BOUND);
                         Bukkit.getServer().getPluginManager().callEvent(ev);
+                        HANDLE_TIME.record(System.nanoTime() - start);
+                        SENT_PACKETS.increment();
                         if(!ev.isCancelled()) {
                             super.write(c, ev.getPacket(), p);
+                        } else {
+                            CANCELLED_PACKETS.increment();
                         }
                     }
 
                     @Override
                     public void channelRead(ChannelHandlerContext c, Object o) throws Exception {
+                        long start = System.nanoTime();
                         PacketHandleEvent ev = new PacketHandleEvent(player, o, PacketHandleEvent.Type.SERVER_BOUND);
                         Bukkit.getServer().getPluginManager().callEvent(ev);
+                        HANDLE_TIME.record(System.nanoTime() - start);
+                        RECEIVED_PACKETS.increment();
                         if(!ev.isCancelled()) {
                             super.channelRead(c, ev.getPacket());
+                        } else {
+                            CANCELLED_PACKETS.increment();
                         }
                     }
                 });
@@ -4,43 +4,118 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
 import org.anhcraft.spaciouslib.SpaciousLib;
-import org.anhcraft.spaciouslib.io.FileManager;
+import org.anhcraft.spaciouslib.io.DirectoryChange;
+import org.anhcraft.spaciouslib.io.DirectoryManager;
+import org.anhcraft.spaciouslib.io.DirectoryWatcher;
 import org.anhcraft.spaciouslib.utils.GZipUtils;
 import org.anhcraft.spaciouslib.utils.Group;
 import org.anhcraft.spaciouslib.utils.TimeUnit;
+import org.bukkit.Bukkit;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * A class helps you to manage player skins
  */
 public class SkinAPI {
     private static LinkedHashMap<UUID, CachedSkin> cachedSkins;
+    private static DirectoryWatcher watcher;
 
     /**
-     * Initializes SkinAPI
+     * Initializes SkinAPI<br>
+     * The cache files are read without blocking the main thread, each skin is added after its file was read.<br>
+     * After that, the cache files which are changed are read again.
      */
     public SkinAPI() {
+        stopWatching();
+        cachedSkins = new LinkedHashMap<>();
+        loadSkins(false);
+        // the cache files can be changed by other servers which share the folder
         try {
-            cachedSkins = new LinkedHashMap<>();
-            for(File file : SpaciousLib.SKINS_FOLDER.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return name.endsWith(".skin");
-                }
-            })) {
-                CachedSkin cs = fromJSON(new String(GZipUtils.decompress(new FileManager(file).read())));
-                cachedSkins.put(cs.getOwner(), cs);
-            }
+            watcher = new DirectoryManager(SpaciousLib.SKINS_FOLDER).watch(SkinAPI::reloadSkins, 500);
         } catch(IOException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Stops reloading the cache files which are changed
+     */
+    public static void stopWatching(){
+        if(watcher != null){
+            try {
+                watcher.close();
+            } catch(IOException e) {
+                e.printStackTrace();
+            }
+            watcher = null;
+        }
+    }
+
+    private static void loadSkins(boolean replace){
+        File[] files = SpaciousLib.SKINS_FOLDER.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".skin");
+            }
+        });
+        if(files != null){
+            for(File file : files){
+                loadSkin(file, replace);
+            }
+        }
+    }
+
+    private static void reloadSkins(List<DirectoryChange> changes){
+        for(DirectoryChange change : changes){
+            if(change.getType() == DirectoryChange.Type.OVERFLOW){
+                loadSkins(true);
+                return;
+            }
+            // a deleted file is written again by CachedSkinTask, so the cached skin is kept
+            if(change.getType() != DirectoryChange.Type.DELETED && change.getPath().toString().endsWith(".skin")){
+                loadSkin(change.getPath().toFile(), true);
+            }
+        }
+    }
+
+    /**
+     * Reads the given cache file without blocking the current thread, then adds its skin on the main thread
+     * @param file the cache file
+     * @param replace true if the skin which is cached already should be replaced
+     * @return the future of the skin
+     */
+    public static CompletableFuture<CachedSkin> loadSkin(File file, boolean replace){
+        CompletableFuture<CachedSkin> future = SpaciousLib.fileManager.read(file).thenApply(data -> {
+            try {
+                return fromJSON(new String(GZipUtils.decompress(data), StandardCharsets.UTF_8));
+            } catch(IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        future.whenComplete((cs, e) -> {
+            if(e != null){
+                e.printStackTrace();
+                return;
+            }
+            Bukkit.getScheduler().runTask(SpaciousLib.instance, () -> {
+                // a skin which was downloaded while reading is newer
+                if(replace || !cachedSkins.containsKey(cs.getOwner())){
+                    cachedSkins.put(cs.getOwner(), cs);
+                }
+            });
+        });
+        return future;
+    }
+
     /**
      * Downloads a skin from Mojang server and gets the result as a CachedSkin object.<br>
      * Warning: The limit request is 1 request/minute
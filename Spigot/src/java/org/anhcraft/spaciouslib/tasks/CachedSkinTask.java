@@ -1,6 +1,6 @@
 package org.anhcraft.spaciouslib.tasks;
 
-import org.anhcraft.spaciouslib.io.FileManager;
+import org.anhcraft.spaciouslib.SpaciousLib;
 import org.anhcraft.spaciouslib.mojang.CachedSkin;
 import org.anhcraft.spaciouslib.mojang.SkinAPI;
 import org.anhcraft.spaciouslib.utils.GZipUtils;
@@ -17,16 +17,25 @@ public class CachedSkinTask extends BukkitRunnable {
         try {
             // clones...
             List<CachedSkin> a = new ArrayList<>(SkinAPI.getSkins().values());
-            for(CachedSkin skin : a){
+            for(CachedSkin cs : a){
+                CachedSkin skin = cs;
                 boolean save = false;
                 if(skin.isExpired()){
-                    SkinAPI.renewSkin(skin.getOwner());
+                    CachedSkin renewed = SkinAPI.renewSkin(skin.getOwner());
+                    if(renewed != null){
+                        skin = renewed;
+                    }
                     save = true;
                 }
                 File file = SkinAPI.getSkinFile(skin);
                 if(save || !file.exists()) {
-                    new FileManager(file).delete().initFile(GZipUtils.compress(SkinAPI.toJSON(skin)
-                            .getBytes(StandardCharsets.UTF_8)));
+                    // the file is replaced atomically, so it is never read half-written
+                    SpaciousLib.fileManager.writeAtomic(file, GZipUtils.compress(SkinAPI.toJSON(skin)
+                            .getBytes(StandardCharsets.UTF_8))).whenComplete((r, e) -> {
+                        if(e != null){
+                            e.printStackTrace();
+                        }
+                    });
                 }
             }
         } catch(Exception e) {
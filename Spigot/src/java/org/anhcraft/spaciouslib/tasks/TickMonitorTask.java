@@ -0,0 +1,59 @@
+package org.anhcraft.spaciouslib.tasks;
+
+import org.anhcraft.spaciouslib.metrics.MetricsRegistry;
+import org.anhcraft.spaciouslib.utils.Histogram;
+import org.bukkit.scheduler.BukkitRunnable;
+
+/**
+ * A task which runs every tick to measure the time between ticks
+ */
+public class TickMonitorTask extends BukkitRunnable {
+    // a tick should take 50 milliseconds
+    private static final Histogram TICK_INTERVAL = new Histogram(new long[]{
+            45_000_000L, 50_000_000L, 55_000_000L, 60_000_000L, 75_000_000L,
+            100_000_000L, 150_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L
+    });
+    // the intervals of the last 20 ticks
+    private static final long[] RECENT = new long[20];
+    private static volatile int recentCount;
+    private static int recentIndex;
+    private long last;
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if(last != 0){
+            long interval = now - last;
+            TICK_INTERVAL.record(interval);
+            RECENT[recentIndex] = interval;
+            recentIndex = (recentIndex + 1) % RECENT.length;
+            recentCount = Math.min(recentCount + 1, RECENT.length);
+        }
+        last = now;
+    }
+
+    /**
+     * Gets the amount of ticks per second, based on the last 20 ticks
+     * @return the TPS (at most 20)
+     */
+    public static double getTPS(){
+        int count = recentCount;
+        if(count == 0){
+            return 20;
+        }
+        long total = 0;
+        for(int i = 0; i < count; i++){
+            total += RECENT[i];
+        }
+        return Math.min(20, 1e9 / (total / (double) count));
+    }
+
+    /**
+     * Registers the tick metrics to the given registry
+     * @param registry the registry
+     */
+    public static void registerMetrics(MetricsRegistry registry){
+        registry.histogram("spaciouslib_tick_interval_seconds", "The time between two ticks of the server", null, TICK_INTERVAL)
+                .gauge("spaciouslib_tps", "The amount of ticks per second in the last 20 ticks", null, TickMonitorTask::getTPS);
+    }
+}
@@ -0,0 +1,201 @@
+package org.anhcraft.spaciouslibtest;
+
+import org.anhcraft.spaciouslib.io.DirectoryManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the old recursive copy (one thread, each file is loaded into the heap)
+ * with the parallel channel-based copy of DirectoryManager on a synthetic tree.<br>
+ * Arguments: [directories] [files per directory] [max file size in KB] [large files] [large file size in MB]
+ */
+public class DirectoryCopyBenchmark {
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int directories = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int filesPerDirectory = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int maxFileSize = (args.length > 2 ? Integer.parseInt(args[2]) : 512) * 1024;
+        int largeFiles = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int largeFileSize = (args.length > 4 ? Integer.parseInt(args[4]) : 64) * 1048576;
+
+        Path root = Files.createTempDirectory("spaciouslib-copy");
+        Path source = root.resolve("source");
+        long size = createTree(source, directories, filesPerDirectory, maxFileSize, largeFiles, largeFileSize);
+        System.out.println(String.format("Tree: %d files, %.1f MB", directories * filesPerDirectory + largeFiles, size / 1048576.0));
+
+        try {
+            int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+            // the first runs also warm up the page cache, so every variant reads from the memory
+            for(int i = 0; i < RUNS; i++){
+                run("old (recursive, in heap)", root, size, target -> legacyCopy(source.toFile(), target.toFile()));
+                run("DirectoryManager, 1 thread", root, size, target ->
+                        new DirectoryManager(source.toFile()).copy(target.toFile(), f -> true, 1, null));
+                run("DirectoryManager, " + threads + " threads", root, size, target ->
+                        new DirectoryManager(source.toFile()).copy(target.toFile(), f -> true, threads, null));
+                System.out.println();
+            }
+        } finally {
+            deleteTree(root);
+        }
+    }
+
+    private static long createTree(Path source, int directories, int filesPerDirectory, int maxFileSize,
+                                   int largeFiles, int largeFileSize) throws IOException {
+        Random random = new Random(0);
+        byte[] data = new byte[Math.max(maxFileSize, 1048576)];
+        random.nextBytes(data);
+        long size = 0;
+        for(int d = 0; d < directories; d++){
+            // region files of a world are a few levels deep
+            Path dir = source.resolve("world" + (d % 4)).resolve("region" + d);
+            Files.createDirectories(dir);
+            for(int f = 0; f < filesPerDirectory; f++){
+                int length = 1 + random.nextInt(maxFileSize);
+                try(FileOutputStream out = new FileOutputStream(dir.resolve("r." + f + ".mca").toFile())){
+                    out.write(data, 0, length);
+                }
+                size += length;
+            }
+        }
+        for(int i = 0; i < largeFiles; i++){
+            try(FileOutputStream out = new FileOutputStream(source.resolve("backup" + i + ".zip").toFile())){
+                for(int written = 0; written < largeFileSize; written += 1048576){
+                    out.write(data, 0, Math.min(1048576, largeFileSize - written));
+                }
+            }
+            size += largeFileSize;
+        }
+        return size;
+    }
+
+    private static void run(String name, Path root, long size, CopyTask task) throws Exception {
+        Path target = root.resolve("target");
+        deleteTree(target);
+        long gcCount = 0;
+        long gcTime = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+            gcCount -= gc.getCollectionCount();
+            gcTime -= gc.getCollectionTime();
+        }
+        AllocationMeter meter = new AllocationMeter();
+        meter.start();
+        long start = System.nanoTime();
+        task.copy(target);
+        long time = System.nanoTime() - start;
+        long allocated = meter.finish();
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+            gcCount += gc.getCollectionCount();
+            gcTime += gc.getCollectionTime();
+        }
+        System.out.println(String.format("%-32s %8.0f ms %8.1f MB/s %10.1f MB allocated %4d GCs (%d ms)",
+                name, time / 1e6, size / 1048576.0 / (time / 1e9), allocated / 1048576.0, gcCount, gcTime));
+    }
+
+    // the implementation before the parallel copy
+    private static void legacyCopy(File directory, File output) throws IOException {
+        output.mkdir();
+        for(File f : directory.listFiles()){
+            File out = new File(output, f.getName());
+            if(f.isFile()){
+                byte[] content = new byte[(int) f.length()];
+                try(FileInputStream in = new FileInputStream(f)){
+                    int n = 0;
+                    while(n < content.length){
+                        n += in.read(content, n, content.length - n);
+                    }
+                }
+                try(FileOutputStream stream = new FileOutputStream(out)){
+                    stream.write(content);
+                }
+            } else if(f.isDirectory()){
+                legacyCopy(f, out);
+            }
+        }
+    }
+
+    private static void deleteTree(Path root) throws IOException {
+        if(!Files.exists(root)){
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // sums the bytes which were allocated by all threads, the worker threads are sampled while they run
+    // since the amount of a thread can't be read anymore after it stopped
+    private static class AllocationMeter extends Thread {
+        private com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // the threads which were started later begin at 0
+        private HashMap<Long, Long> initial = new HashMap<>();
+        private HashMap<Long, Long> last = new HashMap<>();
+        private volatile boolean running = true;
+
+        private AllocationMeter(){
+            setDaemon(true);
+            sample();
+            initial.putAll(last);
+        }
+
+        private synchronized void sample(){
+            long[] ids = bean.getAllThreadIds();
+            long[] bytes = bean.getThreadAllocatedBytes(ids);
+            for(int i = 0; i < ids.length; i++){
+                if(0 <= bytes[i] && ids[i] != getId()){
+                    last.put(ids[i], bytes[i]);
+                }
+            }
+        }
+
+        @Override
+        public void run(){
+            while(running){
+                sample();
+                try {
+                    Thread.sleep(5);
+                } catch(InterruptedException e){
+                    return;
+                }
+            }
+        }
+
+        private long finish() throws InterruptedException {
+            running = false;
+            join();
+            sample();
+            long total = 0;
+            for(Map.Entry<Long, Long> e : last.entrySet()){
+                total += e.getValue() - initial.getOrDefault(e.getKey(), 0L);
+            }
+            return total;
+        }
+    }
+
+    private interface CopyTask {
+        void copy(Path target) throws Exception;
+    }
+}
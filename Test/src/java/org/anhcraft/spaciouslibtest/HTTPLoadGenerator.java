@@ -0,0 +1,485 @@
+package org.anhcraft.spaciouslibtest;
+
+import org.anhcraft.spaciouslib.socket.web.HTTPRequestMethod;
+import org.anhcraft.spaciouslib.socket.web.HTTPRouter;
+import org.anhcraft.spaciouslib.socket.web.StaticFileHandler;
+import org.anhcraft.spaciouslib.socket.web.WebServerManager;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A load generator which measures the capacity of a web server.<br>
+ * It starts a local WebServerManager (unless "host" is given) and lets many clients send requests to it
+ * for a while, then it reports the throughput, the latency percentiles, the CPU time and the allocation rate.<br>
+ * Options are given as "key=value" arguments:
+ * <ul>
+ *     <li>host, port: the target server (default: a local server at the port 18080)</li>
+ *     <li>concurrency: the amount of clients, each of them has its own connection (default: 16)</li>
+ *     <li>keepAlive: false to open a new connection for every request (default: true)</li>
+ *     <li>warmup, duration: the time in seconds before and while measuring (default: 5, 15)</li>
+ *     <li>mix: the weighted requests, e.g: "GET /hello/steve:70,GET /static/page.html:20,POST /echo:10"</li>
+ *     <li>body: the size of the body of POST requests in bytes (default: 1024)</li>
+ *     <li>workers: the size of the worker pool of the local server (default: 0, no pool)</li>
+ * </ul>
+ * The same options on the same machine give a baseline which later changes of the HTTP stack can be compared with.<br>
+ * The CPU time and the allocations are counted per thread, the threads which ended while measuring
+ * (e.g: the connection threads if keep-alive is disabled) are missing, the process CPU still includes them.
+ */
+public class HTTPLoadGenerator {
+    private static final String DEFAULT_MIX = "GET /hello/steve:70,GET /static/page.html:20,GET /static/data.bin:5,POST /echo:5";
+    private static final String CLIENT_THREAD = "SpaciousLib load client #";
+
+    private static volatile boolean running = true;
+    // the latencies are only recorded between these times
+    private static volatile long measureStart = Long.MAX_VALUE;
+    private static volatile long measureEnd = Long.MAX_VALUE;
+    private static LongAdder errors = new LongAdder();
+    private static LongAdder connects = new LongAdder();
+    private static LongAdder received = new LongAdder();
+
+    public static void main(String[] args) throws Exception {
+        HashMap<String, String> options = new HashMap<>();
+        for(String arg : args){
+            int i = arg.indexOf('=');
+            if(i < 0){
+                System.out.println("Invalid option: " + arg + " (it must be key=value)");
+                return;
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        String host = options.getOrDefault("host", "127.0.0.1");
+        int port = Integer.parseInt(options.getOrDefault("port", "18080"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        boolean keepAlive = Boolean.parseBoolean(options.getOrDefault("keepAlive", "true"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "15"));
+        int bodySize = Integer.parseInt(options.getOrDefault("body", "1024"));
+        int workers = Integer.parseInt(options.getOrDefault("workers", "0"));
+        RequestMix mix = new RequestMix(options.getOrDefault("mix", DEFAULT_MIX), host, keepAlive, bodySize);
+
+        WebServerManager server = null;
+        Path root = null;
+        if(!options.containsKey("host")){
+            root = Files.createTempDirectory("spaciouslib-load");
+            server = startServer(port, root, workers);
+        }
+
+        System.out.println(String.format("Target %s:%d, %d clients, keep-alive %s, warmup %ds, duration %ds",
+                host, port, concurrency, keepAlive, warmup, duration));
+        System.out.println("Mix: " + mix);
+
+        List<Client> clients = new ArrayList<>();
+        for(int i = 0; i < concurrency; i++){
+            Client client = new Client(new InetSocketAddress(host, port), mix, keepAlive);
+            Thread thread = new Thread(client, CLIENT_THREAD + (i + 1));
+            thread.setDaemon(true);
+            client.thread = thread;
+            clients.add(client);
+            thread.start();
+        }
+
+        Thread.sleep(warmup * 1000L);
+        Snapshot before = new Snapshot();
+        long requestsBefore = countRequests(clients);
+        long receivedBefore = received.sum();
+        long errorsBefore = errors.sum();
+        long connectsBefore = connects.sum();
+        measureStart = System.nanoTime();
+        Thread.sleep(duration * 1000L);
+        measureEnd = System.nanoTime();
+        Snapshot after = new Snapshot();
+        long requests = countRequests(clients) - requestsBefore;
+        long bytes = received.sum() - receivedBefore;
+        long failed = errors.sum() - errorsBefore;
+        long connections = connects.sum() - connectsBefore;
+
+        running = false;
+        for(Client client : clients){
+            client.close();
+            client.thread.join(5000);
+        }
+        if(server != null){
+            server.close();
+            deleteDirectory(root);
+        }
+
+        double seconds = (measureEnd - measureStart) / 1e9;
+        long[] latencies = mergeLatencies(clients);
+        System.out.println();
+        System.out.println(String.format("Requests      %12d (%d errors, %d new connections)", requests, failed, connections));
+        System.out.println(String.format("Throughput    %12.1f req/s %10.2f MB/s", requests / seconds, bytes / seconds / 1048576));
+        System.out.println(String.format("Latency       p50 %s  p90 %s  p99 %s  p999 %s  max %s",
+                formatNanos(percentile(latencies, 0.5)), formatNanos(percentile(latencies, 0.9)),
+                formatNanos(percentile(latencies, 0.99)), formatNanos(percentile(latencies, 0.999)),
+                formatNanos(latencies.length == 0 ? 0 : latencies[latencies.length - 1])));
+        System.out.println(String.format("Process CPU   %12.1f %% of one core", (after.processCpu - before.processCpu) / 1e7 / seconds));
+        report("Server", before, after, false, seconds, requests);
+        if(server == null){
+            System.out.println("(the server is remote, the numbers above are the other threads of this process)");
+        }
+        report("Clients", before, after, true, seconds, requests);
+        System.out.println(String.format("GC            %12d collections %8d ms", after.gcCount - before.gcCount, after.gcTime - before.gcTime));
+    }
+
+    private static WebServerManager startServer(int port, Path root, int workers) throws IOException {
+        byte[] page = new byte[4096];
+        Arrays.fill(page, (byte) 'a');
+        Files.write(root.resolve("page.html"), page);
+        byte[] data = new byte[262144];
+        new Random(0).nextBytes(data);
+        Files.write(root.resolve("data.bin"), data);
+        StaticFileHandler files = new StaticFileHandler(root);
+        WebServerManager server = new WebServerManager(port, new HTTPRouter()
+                .register(HTTPRequestMethod.GET, "/hello/{name}", (client, in, out) -> {
+                    out.setField("content-type", "text/plain; charset=UTF-8");
+                    out.addData("Hello " + in.getPathParameter("name") + "!");
+                })
+                .register(HTTPRequestMethod.POST, "/echo", (client, in, out) -> {
+                    out.setField("content-type", "text/plain");
+                    out.addData(Integer.toString(in.getBody().length));
+                })
+                .register(HTTPRequestMethod.GET, "/static/*", (client, in, out) -> files.request(client, in, out)));
+        server.setMaxKeepAliveRequests(Integer.MAX_VALUE);
+        if(0 < workers){
+            server.setWorkerPool(workers, 1024);
+        }
+        // the server thread needs a moment to bind the port
+        long deadline = System.currentTimeMillis() + 5000;
+        while(System.currentTimeMillis() < deadline){
+            try(Socket socket = new Socket()){
+                socket.connect(new InetSocketAddress("127.0.0.1", port), 100);
+                break;
+            } catch(IOException e){
+                try {
+                    Thread.sleep(50);
+                } catch(InterruptedException ignored) { }
+            }
+        }
+        return server;
+    }
+
+    private static void report(String name, Snapshot before, Snapshot after, boolean clients, double seconds, long requests){
+        long cpu = 0;
+        long allocated = 0;
+        for(int i = 0; i < after.ids.length; i++){
+            if(after.names[i].startsWith(CLIENT_THREAD) != clients){
+                continue;
+            }
+            // the threads which started while measuring are counted from 0
+            long[] old = before.get(after.ids[i]);
+            cpu += Math.max(0, after.cpu[i] - (old == null ? 0 : old[0]));
+            allocated += Math.max(0, after.allocated[i] - (old == null ? 0 : old[1]));
+        }
+        System.out.println(String.format("%-13s %12.1f %% of one core %8.1f us CPU/req %10.2f MB/s allocated %10d B/req",
+                name + " CPU", cpu / 1e7 / seconds, requests == 0 ? 0 : cpu / 1e3 / requests,
+                allocated / seconds / 1048576, requests == 0 ? 0 : allocated / requests));
+    }
+
+    private static long countRequests(List<Client> clients){
+        long n = 0;
+        for(Client client : clients){
+            n += client.requests;
+        }
+        return n;
+    }
+
+    private static long[] mergeLatencies(List<Client> clients){
+        int n = 0;
+        for(Client client : clients){
+            n += client.latencyCount;
+        }
+        long[] all = new long[n];
+        int i = 0;
+        for(Client client : clients){
+            System.arraycopy(client.latencies, 0, all, i, client.latencyCount);
+            i += client.latencyCount;
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static long percentile(long[] sorted, double p){
+        if(sorted.length == 0){
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static String formatNanos(long nanos){
+        if(nanos < 1000000){
+            return String.format("%.1fus", nanos / 1e3);
+        }
+        return String.format("%.2fms", nanos / 1e6);
+    }
+
+    private static void deleteDirectory(Path root) throws IOException {
+        for(Path file : Files.newDirectoryStream(root)){
+            Files.delete(file);
+        }
+        Files.delete(root);
+    }
+
+    /**
+     * The CPU time and the allocated bytes of all threads at a moment
+     */
+    private static class Snapshot {
+        private long[] ids;
+        private String[] names;
+        private long[] cpu;
+        private long[] allocated;
+        private HashMap<Long, long[]> byId = new HashMap<>();
+        private long processCpu;
+        private long gcCount;
+        private long gcTime;
+
+        private Snapshot(){
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            ids = bean.getAllThreadIds();
+            names = new String[ids.length];
+            cpu = bean.getThreadCpuTime(ids);
+            allocated = bean.getThreadAllocatedBytes(ids);
+            for(int i = 0; i < ids.length; i++){
+                java.lang.management.ThreadInfo info = bean.getThreadInfo(ids[i]);
+                names[i] = info == null ? "" : info.getThreadName();
+                byId.put(ids[i], new long[]{cpu[i], allocated[i]});
+            }
+            processCpu = ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+            for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcTime += Math.max(0, gc.getCollectionTime());
+            }
+        }
+
+        private long[] get(long id){
+            return byId.get(id);
+        }
+    }
+
+    /**
+     * The requests which are sent, each of them is chosen randomly by its weight
+     */
+    private static class RequestMix {
+        private List<String> names = new ArrayList<>();
+        private List<byte[]> requests = new ArrayList<>();
+        private int[] weights;
+        private int total;
+
+        private RequestMix(String mix, String host, boolean keepAlive, int bodySize){
+            String[] entries = mix.split(",");
+            weights = new int[entries.length];
+            for(String entry : entries){
+                int colon = entry.lastIndexOf(':');
+                String request = colon < 0 ? entry.trim() : entry.substring(0, colon).trim();
+                int weight = colon < 0 ? 1 : Integer.parseInt(entry.substring(colon + 1).trim());
+                String[] parts = request.split(" ", 2);
+                boolean post = parts[0].equalsIgnoreCase("POST");
+                StringBuilder head = new StringBuilder()
+                        .append(parts[0].toUpperCase()).append(' ').append(parts[1]).append(" HTTP/1.1\r\n")
+                        .append("Host: ").append(host).append("\r\n")
+                        .append("User-Agent: SpaciousLib load generator\r\n")
+                        .append("Accept: */*\r\n");
+                if(!keepAlive){
+                    head.append("Connection: close\r\n");
+                }
+                if(post){
+                    head.append("Content-Type: application/octet-stream\r\n")
+                            .append("Content-Length: ").append(bodySize).append("\r\n");
+                }
+                head.append("\r\n");
+                byte[] bytes = head.toString().getBytes(StandardCharsets.US_ASCII);
+                if(post){
+                    bytes = Arrays.copyOf(bytes, bytes.length + bodySize);
+                }
+                weights[requests.size()] = weight;
+                total += weight;
+                names.add(request + " (" + weight + ")");
+                requests.add(bytes);
+            }
+        }
+
+        private byte[] next(){
+            int r = ThreadLocalRandom.current().nextInt(total);
+            for(int i = 0; i < weights.length; i++){
+                r -= weights[i];
+                if(r < 0){
+                    return requests.get(i);
+                }
+            }
+            return requests.get(requests.size() - 1);
+        }
+
+        @Override
+        public String toString(){
+            return String.join(", ", names);
+        }
+    }
+
+    /**
+     * A client which sends one request after another and reads the whole response before sending the next one
+     */
+    private static class Client implements Runnable {
+        private InetSocketAddress address;
+        private RequestMix mix;
+        private boolean keepAlive;
+        private Thread thread;
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        private byte[] skip = new byte[65536];
+        private volatile long requests;
+        private long[] latencies = new long[65536];
+        private volatile int latencyCount;
+
+        private Client(InetSocketAddress address, RequestMix mix, boolean keepAlive){
+            this.address = address;
+            this.mix = mix;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public void run(){
+            while(running){
+                try {
+                    if(socket == null){
+                        connect();
+                    }
+                    long start = System.nanoTime();
+                    out.write(mix.next());
+                    out.flush();
+                    int status = readResponse();
+                    long end = System.nanoTime();
+                    if(status < 200 || 400 <= status){
+                        errors.increment();
+                    }
+                    if(measureStart <= start && end <= measureEnd){
+                        record(end - start);
+                    }
+                    requests++;
+                } catch(IOException e){
+                    if(running){
+                        errors.increment();
+                    }
+                    close();
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address, 5000);
+            socket.setSoTimeout(30000);
+            in = new BufferedInputStream(socket.getInputStream(), 65536);
+            out = socket.getOutputStream();
+            connects.increment();
+        }
+
+        private void record(long latency){
+            if(latencyCount == latencies.length){
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount] = latency;
+            latencyCount++;
+        }
+
+        // reads a response and returns its status code
+        private int readResponse() throws IOException {
+            String statusLine = readLine();
+            if(statusLine.length() < 12){
+                throw new IOException("Invalid status line: " + statusLine);
+            }
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            long length = -1;
+            boolean chunked = false;
+            boolean close = !keepAlive || statusLine.startsWith("HTTP/1.0");
+            String line;
+            while(!(line = readLine()).isEmpty()){
+                int colon = line.indexOf(':');
+                if(colon < 0){
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if(name.equalsIgnoreCase("content-length")){
+                    length = Long.parseLong(value);
+                } else if(name.equalsIgnoreCase("transfer-encoding")){
+                    chunked = value.toLowerCase().endsWith("chunked");
+                } else if(name.equalsIgnoreCase("connection")){
+                    close |= value.equalsIgnoreCase("close");
+                }
+            }
+            if(chunked){
+                long size;
+                while(0 < (size = Long.parseLong(readLine().split(";")[0].trim(), 16))){
+                    skip(size);
+                    readLine();
+                }
+                // trailers
+                while(!readLine().isEmpty());
+            } else if(0 <= length){
+                skip(length);
+            } else {
+                // the body ends with the connection
+                while(in.read(skip) != -1);
+                close = true;
+            }
+            if(close){
+                close();
+            }
+            return status;
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int b;
+            while((b = in.read()) != '\n'){
+                if(b == -1){
+                    throw new EOFException();
+                }
+                if(b != '\r'){
+                    sb.append((char) b);
+                }
+            }
+            received.add(sb.length() + 2);
+            return sb.toString();
+        }
+
+        private void skip(long n) throws IOException {
+            received.add(n);
+            while(0 < n){
+                int r = in.read(skip, 0, (int) Math.min(skip.length, n));
+                if(r == -1){
+                    throw new EOFException();
+                }
+                n -= r;
+            }
+        }
+
+        private void close(){
+            if(socket != null){
+                try {
+                    socket.close();
+                } catch(IOException ignored) { }
+                socket = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.anhcraft.spaciouslibtest;
+
+import org.anhcraft.spaciouslib.socket.web.HTTPParseException;
+import org.anhcraft.spaciouslib.socket.web.HTTPRequestParser;
+import org.anhcraft.spaciouslib.socket.web.HTTPRequestReader;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the string-based HTTPRequestReader with the incremental HTTPRequestParser
+ */
+public class HTTPRequestParserBenchmark {
+    private static final String REQUEST = "GET /map/index.html?world=lobby&zoom=3 HTTP/1.1\r\n" +
+            "Host: localhost\r\n" +
+            "User-Agent: Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:59.0) Gecko/20100101 Firefox/59.0\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+            "Accept-Language: en-US,en;q=0.5\r\n" +
+            "Accept-Encoding: gzip, deflate\r\n" +
+            "Cookie: session=3f2a9c1d; theme=dark\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Upgrade-Insecure-Requests: 1\r\n" +
+            "\r\n";
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 100000;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        byte[] raw = REQUEST.getBytes(StandardCharsets.UTF_8);
+        HTTPRequestParser parser = new HTTPRequestParser();
+
+        for(int i = 0; i < WARMUP; i++){
+            readString(raw);
+            readBuffer(parser, raw);
+        }
+
+        run("HTTPRequestReader(String)", () -> readString(raw));
+        run("HTTPRequestParser", () -> readBuffer(parser, raw));
+        // the request arrives in small pieces, as it may happen on a slow connection
+        run("HTTPRequestParser (16-byte reads)", () -> readPieces(parser, raw, 16));
+    }
+
+    private static void readString(byte[] raw){
+        HTTPRequestReader reader = new HTTPRequestReader(new String(raw, StandardCharsets.UTF_8));
+        sink += reader.getPath().length() + reader.getRequestMethod().ordinal() + reader.getCookies().size();
+    }
+
+    private static void readBuffer(HTTPRequestParser parser, byte[] raw) throws HTTPParseException {
+        parser.reset();
+        parser.parse(ByteBuffer.wrap(raw));
+        HTTPRequestReader reader = parser.getRequest();
+        sink += reader.getPath().length() + reader.getRequestMethod().ordinal() + reader.getCookies().size();
+    }
+
+    private static void readPieces(HTTPRequestParser parser, byte[] raw, int size) throws HTTPParseException {
+        parser.reset();
+        for(int i = 0; i < raw.length; i += size){
+            parser.parse(raw, i, Math.min(size, raw.length - i));
+        }
+        HTTPRequestReader reader = parser.getRequest();
+        sink += reader.getPath().length() + reader.getRequestMethod().ordinal() + reader.getCookies().size();
+    }
+
+    private static void run(String name, Task task) throws Exception {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = bean.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for(int i = 0; i < ITERATIONS; i++){
+            task.run();
+        }
+        long time = System.nanoTime() - start;
+        allocated = bean.getThreadAllocatedBytes(thread) - allocated;
+        System.out.println(String.format("%-36s %10.1f ns/op %10d B/op", name,
+                time / (double) ITERATIONS, allocated / ITERATIONS));
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -1,95 +1,58 @@
 package org.anhcraft.spaciouslibtest;
 
 import net.pieroxy.ua.detection.Browser;
-import org.anhcraft.spaciouslib.io.FileManager;
 import org.anhcraft.spaciouslib.socket.ServerSocketClientManager;
 import org.anhcraft.spaciouslib.socket.ServerSocketHandler;
 import org.anhcraft.spaciouslib.socket.ServerSocketManager;
+import org.anhcraft.spaciouslib.socket.web.HTTPRequestHandler;
+import org.anhcraft.spaciouslib.socket.web.HTTPRequestMethod;
 import org.anhcraft.spaciouslib.socket.web.HTTPRequestReader;
+import org.anhcraft.spaciouslib.socket.web.HTTPResponseCache;
 import org.anhcraft.spaciouslib.socket.web.HTTPResponseWriter;
+import org.anhcraft.spaciouslib.socket.web.HTTPRouter;
+import org.anhcraft.spaciouslib.socket.web.StaticFileHandler;
 import org.anhcraft.spaciouslib.socket.web.WebServerManager;
 import org.anhcraft.spaciouslib.utils.TimedList;
 import org.anhcraft.spaciouslib.utils.TimedMap;
 import org.anhcraft.spaciouslib.utils.TimedSet;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 
 public class SpaciousLibTestProgram {
     public static void main(String[] args){
         // creates a web server
-        new WebServerManager(new ServerSocketHandler() {
-            @Override
-            public void request(ServerSocketClientManager client, byte[] data) {
-                // [WARNING] the browser only requests the data one time
-                // it means we allowed to use this method
-
-                try {
-                    // uses HTTPRequestReader to read the request
-                    HTTPRequestReader in = new HTTPRequestReader(new String(data));
-                    // gets the result of user agent detection
-                    // we can use that result to check what is that browser
-                    Browser browser = in.getUserAgentDetection().getBrowser();
-
-                    // gets the requested file object
-                    // uses the current working directory as the root directory of the website
-                    Path root = Paths.get("").normalize().toAbsolutePath();
-                    File requestedFile = new File(root + "/Test/src/website/" + in.getPath());
-
-                    // prints something to the console....
-                    System.out.println(client.getInetAddress().getHostAddress()+" has requested: "+requestedFile.getAbsolutePath()+" [Using " + browser.getFamily().getLabel() + " v"+browser.getFullVersion()+"]");
-
-                    HTTPResponseWriter output = new HTTPResponseWriter();
-                    output.setGZip(true); // enables GZip compression
-                    output.setField("content-language", "en");
-                    output.setField("server", "HTTP server (unknown)");
-
-                    if(requestedFile.exists()) {
+        // uses the current working directory as the root directory of the website
+        // the files are streamed from the disk and browsers can cache them (ETag, Last-Modified)
+        final StaticFileHandler website = new StaticFileHandler(Paths.get("Test/src/website"))
+                .setResponseCache(new HTTPResponseCache(16777216));
+        // the connections are kept alive, so a browser can request many files through one connection
+        new WebServerManager(80, new HTTPRouter()
+                .register(HTTPRequestMethod.GET, "/hello/{name}", new HTTPRequestHandler() {
+                    @Override
+                    public void request(ServerSocketClientManager client, HTTPRequestReader in, HTTPResponseWriter output) {
+                        // gets the value of {name}
+                        output.setField("content-type", "text/plain; charset=UTF-8");
+                        output.addData("Hello " + in.getPathParameter("name") + "!");
+                    }
+                })
+                .register(HTTPRequestMethod.GET, "/*", new HTTPRequestHandler() {
+                    @Override
+                    public void request(ServerSocketClientManager client, HTTPRequestReader in, HTTPResponseWriter output) {
+                        // gets the result of user agent detection
+                        // we can use that result to check what is that browser
+                        Browser browser = in.getUserAgentDetection().getBrowser();
+
+                        // prints something to the console....
+                        System.out.println(client.getInetAddress().getHostAddress()+" has requested: "+in.getPath()+" [Using " + browser.getFamily().getLabel() + " v"+browser.getFullVersion()+"]");
+
+                        output.setField("content-language", "en");
+                        output.setField("server", "HTTP server (unknown)");
                         // if a browser requests with the path of a directory,
-                        // maybe it wants to get the index.html file.
-                        // https://en.wikipedia.org/wiki/Webserver_directory_index
-                        if(requestedFile.isDirectory()) {
-                            File file = new File(requestedFile, "index.html");
-                            output.setField("content-type", "text/html; charset=UTF-8");
-                            if(file.exists()) {
-                                // reads the requested file
-                                output.addData(new FileManager(file).read());
-                            } else {
-                                output.addData("You cannot access this directory!");
-                                output.setStatusCode(403);
-                            }
-                        } else if(requestedFile.isFile() && !requestedFile.isHidden()){
-                            if(requestedFile.getName().endsWith(".html")){
-                                output.setField("content-type", "text/html; charset=UTF-8");
-                            } else if(requestedFile.getName().endsWith(".js")){
-                                output.setField(
-                                        "content-type", "text/javascript; charset=UTF-8");
-                            } else if(requestedFile.getName().endsWith(".css")){
-                                output.setField("content-type", "text/css; charset=UTF-8");
-                            }
-                            // reads the requested file
-                            output.addData(new FileManager(requestedFile).read());
-                        }
-                    } else {
-                        output.addData("Couldn't found the requested file or directory");
-                        output.setStatusCode(404);
+                        // the index.html file will be sent
+                        website.request(client, in, output);
                     }
-
-                    client.send(output.write());
-
-                    // closes the connection to tell the browser handles the response
-                    client.close();
-                } catch(IOException e) {
-                    e.printStackTrace();
-                }
-            }
-
-            @Override
-            public void connect(ServerSocketClientManager client) {
-            }
-        });
+                }));
 
         //////////////////////////////////////////////////////////////////////
 
@@ -0,0 +1,165 @@
+package org.anhcraft.spaciouslibtest;
+
+import org.anhcraft.spaciouslib.utils.TimedMap;
+
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compares the old TimedMap (every operation scans all keys) with the current one
+ * at 1k, 100k and 1M entries.<br>
+ * Each operation is repeated for a fixed time after a warm-up, the result is the average time of an operation.<br>
+ * Arguments: [sizes separated by commas] [milliseconds per measurement]
+ */
+public class TimedMapBenchmark {
+    // the results are added to this field so the operations can't be optimized away
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        String[] sizes = (args.length > 0 ? args[0] : "1000,100000,1000000").split(",");
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        for(String s : sizes){
+            int size = Integer.parseInt(s.trim());
+            Integer[] keys = new Integer[size];
+            for(int i = 0; i < size; i++){
+                keys[i] = i;
+            }
+            System.out.println(size + " entries");
+
+            TimedMap<Integer, Integer> map = new TimedMap<>();
+            for(Integer key : keys){
+                map.put(key, key, 3600);
+            }
+            LegacyTimedMap<Integer, Integer> legacy = new LegacyTimedMap<>();
+            legacy.fill(keys, 3600);
+
+            print("get", measure(millis, () -> sink += map.get(randomKey(keys))),
+                    measure(millis, () -> sink += legacy.get(randomKey(keys))));
+            print("put (replace)", measure(millis, () -> {
+                        Integer key = randomKey(keys);
+                        map.put(key, key, 3600);
+                    }),
+                    measure(millis, () -> {
+                        Integer key = randomKey(keys);
+                        legacy.put(key, key, 3600);
+                    }));
+            print("isExpired", measure(millis, () -> sink += map.isExpired(randomKey(keys)) ? 1 : 0),
+                    measure(millis, () -> sink += legacy.isExpired(randomKey(keys)) ? 1 : 0));
+
+            // all entries expire at the same time, then the first operation removes them
+            map.clear();
+            for(Integer key : keys){
+                map.put(key, key, 1);
+            }
+            legacy.clear();
+            legacy.fill(keys, 1);
+            Thread.sleep(1100);
+            long start = System.nanoTime();
+            int left = map.size();
+            long time = System.nanoTime() - start;
+            String old;
+            try {
+                start = System.nanoTime();
+                legacy.size();
+                old = String.format("%.3f ms", (System.nanoTime() - start) / 1e6);
+            } catch(ConcurrentModificationException e) {
+                old = "ConcurrentModificationException";
+            }
+            System.out.println(String.format("  %-16s %14.3f ms (%d left) | old: %s", "expire all", time / 1e6, left, old));
+            System.out.println();
+        }
+    }
+
+    private static Integer randomKey(Integer[] keys){
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    private static void print(String name, double time, double legacyTime){
+        System.out.println(String.format("  %-16s %14.1f ns/op | old: %14.1f ns/op (%.0fx)", name, time, legacyTime, legacyTime / time));
+    }
+
+    // runs the operation for the given time after a warm-up, returns the average time in nanoseconds
+    private static double measure(long millis, Runnable operation){
+        run(millis / 2, operation);
+        return run(millis, operation);
+    }
+
+    private static double run(long millis, Runnable operation){
+        long start = System.nanoTime();
+        long end = start + millis * 1000000L;
+        long count = 0;
+        long now;
+        // the time is checked after a batch which gets bigger while the operation is fast
+        int batch = 1;
+        do {
+            for(int i = 0; i < batch; i++){
+                operation.run();
+            }
+            count += batch;
+            now = System.nanoTime();
+            if(batch < 4096 && now - start < (end - start) / 100){
+                batch <<= 1;
+            }
+        } while(now < end);
+        return (now - start) / (double) count;
+    }
+
+    // the implementation before the rewrite
+    private static class LegacyTimedMap<K, V> {
+        private LinkedHashMap<K, V> a = new LinkedHashMap<>();
+        private LinkedHashMap<K, Long> b = new LinkedHashMap<>();
+
+        private void clean(){
+            for(K key : a.keySet()){
+                if(isExpired(key)){
+                    remove(key);
+                }
+            }
+        }
+
+        private boolean isExpired(K key){
+            return !(a.containsKey(key) && b.containsKey(key)) || System.currentTimeMillis() > b.get(key);
+        }
+
+        private int size(){
+            clean();
+            return a.size();
+        }
+
+        private boolean containsKey(K key){
+            clean();
+            return a.containsKey(key) && b.containsKey(key);
+        }
+
+        private V get(K key){
+            return (containsKey(key) && !isExpired(key)) ? a.get(key) : null;
+        }
+
+        private void put(K key, V value, long seconds){
+            clean();
+            a.put(key, value);
+            b.put(key, System.currentTimeMillis() + (seconds * 1000L));
+        }
+
+        private void remove(K key){
+            a.remove(key);
+            b.remove(key);
+        }
+
+        private void clear(){
+            a = new LinkedHashMap<>();
+            b = new LinkedHashMap<>();
+        }
+
+        // puts the keys without cleaning, filling a big map by put() would take hours
+        @SuppressWarnings("unchecked")
+        private void fill(K[] keys, long seconds){
+            long expiry = System.currentTimeMillis() + seconds * 1000L;
+            for(K key : keys){
+                a.put(key, (V) key);
+                b.put(key, expiry);
+            }
+        }
+    }
+}